@@ -0,0 +1,305 @@
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP server on the loopback interface that serves a recorded site, so pages load
+ * the same way every time and without network. Requests for every host are sent to
+ * it, the host they are for is given by their Host header.
+ * <p>
+ * A recording is a directory with a directory per host, laid out the way
+ * {@code wget --page-requisites --span-hosts} saves pages: {@code http://example.com/a/b.css}
+ * is served from {@code example.com/a/b.css} and urls ending with a slash from their
+ * {@code index.html}. Only plain HTTP is served, links to HTTPS in recorded text
+ * files are served as HTTP links instead.
+ */
+final class LocalServer implements Closeable {
+
+    private final File mRoot;
+    private final long mLatency;
+    private final Map<String, byte[]> mFiles = new ConcurrentHashMap<>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mNotFoundCount = new AtomicInteger();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LocalServer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @Nullable
+    private ServerSocket mSocket;
+
+    /**
+     * @param root    directory of the recording.
+     * @param latency milliseconds each response is delayed by, to mimic a network.
+     */
+    LocalServer(@NonNull File root, long latency) {
+        mRoot = root;
+        mLatency = latency;
+    }
+
+    /**
+     * @return port the server listens on.
+     */
+    int start() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mSocket = socket;
+        mExecutor.execute(() -> {
+            while (!socket.isClosed()) {
+                try {
+                    Socket connection = socket.accept();
+                    mExecutor.execute(() -> serve(connection));
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        });
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return number of requests received.
+     */
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return number of requests for files missing from the recording.
+     */
+    int getNotFoundCount() {
+        return mNotFoundCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mSocket != null) {
+            mSocket.close();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    private void serve(@NonNull Socket connection) {
+        try (Socket socket = connection) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            // connections are kept alive until the client closes them
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                long contentLength = 0;
+                String host = null;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon < 0) {
+                        continue;
+                    }
+                    String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equals("host")) {
+                        host = value;
+                    } else if (name.equals("content-length")) {
+                        contentLength = Long.parseLong(value);
+                    }
+                }
+                while (contentLength > 0) {
+                    long skipped = in.skip(contentLength);
+                    if (skipped <= 0) {
+                        return;
+                    }
+                    contentLength -= skipped;
+                }
+                mRequestCount.incrementAndGet();
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 3 || parts[0].equals("CONNECT")) {
+                    // HTTPS is not served
+                    respondWithError(out, 405, "Method Not Allowed", true);
+                    return;
+                }
+                byte[] body = find(parts[1], host);
+                if (mLatency > 0) {
+                    Thread.sleep(mLatency);
+                }
+                if (body == null) {
+                    mNotFoundCount.incrementAndGet();
+                    respondWithError(out, 404, "Not Found", !parts[0].equals("HEAD"));
+                } else {
+                    respond(out, 200, "OK", contentTypeOf(parts[1]), body,
+                            !parts[0].equals("HEAD"));
+                }
+            }
+        } catch (IOException | InterruptedException | NumberFormatException e) {
+            // the connection is dropped
+        }
+    }
+
+    /**
+     * @param target absolute url as proxies receive it or the path of the url.
+     */
+    @Nullable
+    private byte[] find(@NonNull String target, @Nullable String host) throws IOException {
+        String path = target;
+        if (target.startsWith("http://")) {
+            int slash = target.indexOf('/', 7);
+            host = slash < 0 ? target.substring(7) : target.substring(7, slash);
+            path = slash < 0 ? "/" : target.substring(slash);
+        }
+        if (host == null) {
+            return null;
+        }
+        int colon = host.indexOf(':');
+        if (colon >= 0) {
+            host = host.substring(0, colon);
+        }
+        String key = host.toLowerCase(Locale.US) + path;
+        byte[] cached = mFiles.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        File file = fileOf(key);
+        if (file == null) {
+            int query = key.indexOf('?');
+            file = query >= 0 ? fileOf(key.substring(0, query)) : null;
+        }
+        if (file == null) {
+            return null;
+        }
+        byte[] body = read(file);
+        if (isText(file.getName())) {
+            body = new String(body, StandardCharsets.UTF_8).replace("https://", "http://")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        mFiles.put(key, body);
+        return body;
+    }
+
+    @Nullable
+    private File fileOf(@NonNull String key) {
+        File file;
+        try {
+            file = new File(mRoot, URLDecoder.decode(key.replace("+", "%2B"), "UTF-8"));
+            if (file.isDirectory()) {
+                file = new File(file, "index.html");
+            }
+            // paths such as /../ must stay inside the recording
+            if (!file.getCanonicalPath().startsWith(mRoot.getCanonicalPath())) {
+                return null;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        return file.isFile() ? file : null;
+    }
+
+    private static void respondWithError(@NonNull OutputStream out, int status,
+                                         @NonNull String reason, boolean withBody)
+            throws IOException {
+        respond(out, status, reason, "text/plain",
+                reason.getBytes(StandardCharsets.US_ASCII), withBody);
+    }
+
+    private static void respond(@NonNull OutputStream out, int status, @NonNull String reason,
+                                @NonNull String contentType, @NonNull byte[] body,
+                                boolean withBody) throws IOException {
+        String header = "HTTP/1.1 " + status + " " + reason + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                // every load must reach the server to be measured
+                "Cache-Control: no-store\r\n" +
+                "Connection: keep-alive\r\n\r\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        if (withBody) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    @NonNull
+    private static String contentTypeOf(@NonNull String target) {
+        int end = target.indexOf('?');
+        String path = end < 0 ? target : target.substring(0, end);
+        if (path.endsWith("/")) {
+            return "text/html";
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.US);
+        if (name.endsWith(".js") || name.endsWith(".mjs")) {
+            return "application/javascript";
+        } else if (name.endsWith(".css")) {
+            return "text/css";
+        } else if (name.endsWith(".json")) {
+            return "application/json";
+        } else if (name.endsWith(".svg")) {
+            return "image/svg+xml";
+        } else if (name.endsWith(".webp")) {
+            return "image/webp";
+        } else if (name.endsWith(".woff2")) {
+            return "font/woff2";
+        } else if (name.endsWith(".woff")) {
+            return "font/woff";
+        }
+        String type = URLConnection.guessContentTypeFromName(name);
+        if (type != null) {
+            return type;
+        }
+        // wget saves pages without an extension under their own name
+        return name.indexOf('.') < 0 ? "text/html" : "application/octet-stream";
+    }
+
+    private static boolean isText(@NonNull String name) {
+        String type = contentTypeOf(name);
+        return type.startsWith("text/") || type.equals("application/javascript") ||
+                type.equals("application/json") || type.equals("image/svg+xml");
+    }
+
+    @Nullable
+    private static String readLine(@NonNull InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return c == -1 && line.size() == 0 ? null : line.toString("ISO-8859-1");
+    }
+
+    @NonNull
+    private static byte[] read(@NonNull File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
\ No newline at end of file
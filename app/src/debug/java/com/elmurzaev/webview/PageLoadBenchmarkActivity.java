@@ -0,0 +1,412 @@
+package com.elmurzaev.webview;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.webkit.WebViewCompat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads recorded pages from {@link LocalServer} over and over and writes how long
+ * they took to a JSON report, so the effect of a configuration can be compared
+ * between runs and versions. Requests that pass the interceptors of the view are
+ * relayed to the server on 127.0.0.1, the only host cleartext traffic is permitted
+ * to, and none go to the network. Debug builds only, started with adb, for example:
+ * <pre>
+ * adb push recording /sdcard/Android/data/com.elmurzaev.webview/files/recording
+ * adb shell am start -W -n com.elmurzaev.webview/.PageLoadBenchmarkActivity \
+ *     --es label blocker --es blocklist /sdcard/Download/hosts.txt --ei iterations 20
+ * adb pull /sdcard/Android/data/com.elmurzaev.webview/files/pageload-blocker.json
+ * </pre>
+ * Extras:
+ * <ul>
+ *     <li>{@code recording}: directory served by {@link LocalServer}, default is
+ *     {@code recording} in the external files directory.</li>
+ *     <li>{@code urls}: comma separated pages to load, default is the root page of
+ *     every host in the recording.</li>
+ *     <li>{@code iterations}: measured loads of each page, default is 10.</li>
+ *     <li>{@code warmup}: loads of each page before measuring, default is 1.</li>
+ *     <li>{@code blocklist}: list given to {@link ContentBlocker}, none by default.</li>
+ *     <li>{@code desktop}: true to load pages in desktop mode.</li>
+ *     <li>{@code latency}: milliseconds each response is delayed by, default is 0.</li>
+ *     <li>{@code label}: name of the run, the report is written to
+ *     {@code pageload-<label>.json} in the external files directory.</li>
+ * </ul>
+ */
+public class PageLoadBenchmarkActivity extends Activity {
+
+    private static final String TAG = "PageLoadBenchmark";
+    // a page that didn't finish loading by then is recorded as failed
+    private static final long LOAD_TIMEOUT = 30_000;
+    // lets requests made after the page finished end before the next load
+    private static final long SETTLE_DELAY = 500;
+
+    private WebView mWebView;
+    private LocalServer mServer;
+    private int mPort;
+    private RequestLog mRequestLog;
+    private final List<Page> mPages = new ArrayList<>();
+    private final Runnable mTimeout = () -> finishLoad(false);
+    private int mIterations;
+    private int mWarmup;
+    private int mLoad;
+    private long mLoadStart;
+    private int mRequestsAtStart;
+    private boolean mLoading;
+    private String mLabel;
+    private String mBlocklist;
+    private boolean mDesktop;
+    private long mLatency;
+    private int mBlocklistSize;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        Intent intent = getIntent();
+        String recording = intent.getStringExtra("recording");
+        File root = recording != null ? new File(recording)
+                : new File(getExternalFilesDir(null), "recording");
+        mIterations = intent.getIntExtra("iterations", 10);
+        mWarmup = intent.getIntExtra("warmup", 1);
+        mBlocklist = intent.getStringExtra("blocklist");
+        mDesktop = intent.getBooleanExtra("desktop", false);
+        mLatency = intent.getIntExtra("latency", 0);
+        mLabel = intent.getStringExtra("label") != null ? intent.getStringExtra("label") : "run";
+
+        String urls = intent.getStringExtra("urls");
+        if (urls != null) {
+            for (String url : urls.split(",")) {
+                mPages.add(new Page(url.trim()));
+            }
+        } else {
+            String[] hosts = root.list();
+            if (hosts != null) {
+                Arrays.sort(hosts);
+                for (String host : hosts) {
+                    if (new File(root, host + "/index.html").isFile()) {
+                        mPages.add(new Page("http://" + host + "/"));
+                    }
+                }
+            }
+        }
+        if (mPages.isEmpty()) {
+            fail("No pages found in " + root);
+            return;
+        }
+        mWebView = new WebView(this);
+        setContentView(mWebView);
+        mWebView.setWebViewClient(mWebView.new WebViewClient() {
+            @Override
+            public void onPageFinished(android.webkit.WebView view, String url) {
+                super.onPageFinished(view, url);
+                finishLoad(true);
+            }
+
+            @Override
+            public WebResourceResponse shouldInterceptRequest(android.webkit.WebView view,
+                                                              WebResourceRequest request) {
+                WebResourceResponse response = super.shouldInterceptRequest(view, request);
+                return response != null ? response : relay(request);
+            }
+        });
+        mRequestLog = new RequestLog(4096);
+        mWebView.setRequestLog(mRequestLog);
+        if (mBlocklist != null) {
+            try (InputStream in = new FileInputStream(mBlocklist)) {
+                mWebView.setContentBlocker(new ContentBlocker(in));
+            } catch (IOException e) {
+                fail("Can't read " + mBlocklist + ": " + e);
+                return;
+            }
+            mBlocklistSize = countLines(mBlocklist);
+        }
+        if (mDesktop) {
+            mWebView.setDesktopMode(true);
+        }
+
+        mServer = new LocalServer(root, mLatency);
+        try {
+            mPort = mServer.start();
+        } catch (IOException e) {
+            fail("Can't start the server: " + e);
+            return;
+        }
+        nextLoad();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mServer != null) {
+            try {
+                mServer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (mWebView != null) {
+            mWebView.removeCallbacks(mTimeout);
+            mWebView.destroy();
+        }
+    }
+
+    private void nextLoad() {
+        int loadsPerPage = mWarmup + mIterations;
+        if (mLoad >= loadsPerPage * mPages.size()) {
+            writeReport();
+            return;
+        }
+        Page page = mPages.get(mLoad % mPages.size());
+        mWebView.clearCache(true);
+        mRequestLog.clear();
+        mRequestsAtStart = mServer.getRequestCount();
+        mLoading = true;
+        mWebView.postDelayed(mTimeout, LOAD_TIMEOUT);
+        mLoadStart = SystemClock.elapsedRealtimeNanos();
+        mWebView.loadUrl(page.url);
+    }
+
+    /**
+     * Fetches the request from the server, which looks the file up by the host the
+     * page asked for. Called on a WebView thread.
+     */
+    @NonNull
+    private WebResourceResponse relay(@NonNull WebResourceRequest request) {
+        Uri url = request.getUrl();
+        String target = url.getEncodedPath() != null ? url.getEncodedPath() : "/";
+        if (url.getEncodedQuery() != null) {
+            target += "?" + url.getEncodedQuery();
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http", "127.0.0.1", mPort, target).openConnection();
+            connection.setRequestMethod(request.getMethod());
+            connection.setRequestProperty("Host", url.getHost() != null ? url.getHost() : "");
+            connection.setUseCaches(false);
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream()
+                    : connection.getErrorStream();
+            String type = connection.getContentType();
+            return new WebResourceResponse(type != null ? type : "text/plain", null, status,
+                    connection.getResponseMessage(),
+                    Collections.singletonMap("Cache-Control", "no-store"), in);
+        } catch (IOException e) {
+            return new WebResourceResponse("text/plain", null, 502, "Bad Gateway",
+                    Collections.singletonMap("Cache-Control", "no-store"),
+                    new ByteArrayInputStream(new byte[0]));
+        }
+    }
+
+    private void finishLoad(boolean finished) {
+        if (!mLoading) {
+            return;
+        }
+        long time = SystemClock.elapsedRealtimeNanos() - mLoadStart;
+        mLoading = false;
+        mWebView.removeCallbacks(mTimeout);
+        Page page = mPages.get(mLoad % mPages.size());
+        boolean measured = mLoad / mPages.size() >= mWarmup;
+        mLoad++;
+        if (!finished) {
+            mWebView.stopLoading();
+        }
+        // counted once the requests made after the page finished have ended too
+        mWebView.postDelayed(() -> {
+            if (measured) {
+                Load load = new Load();
+                load.time = finished ? time / 1000 : -1;
+                load.serverRequests = mServer.getRequestCount() - mRequestsAtStart;
+                for (RequestLog.Record record : mRequestLog.getRecords()) {
+                    load.requests++;
+                    if (record.isBlocked()) {
+                        load.blocked++;
+                    }
+                    if (record.getInterceptTime() > 0) {
+                        page.interceptTimes.add(record.getInterceptTime() / 1000);
+                    }
+                }
+                page.loads.add(load);
+            }
+            nextLoad();
+        }, SETTLE_DELAY);
+    }
+
+    private void writeReport() {
+        File file = new File(getExternalFilesDir(null), "pageload-" + mLabel + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"label\": " + quote(mLabel) + ",\n");
+            writer.write("  \"device\": " + quote(Build.MANUFACTURER + " " + Build.MODEL) + ",\n");
+            writer.write("  \"sdk\": " + Build.VERSION.SDK_INT + ",\n");
+            PackageInfo webView = WebViewCompat.getCurrentWebViewPackage(this);
+            writer.write("  \"webView\": " +
+                    quote(webView != null ? webView.versionName : "unknown") + ",\n");
+            writer.write("  \"config\": {\"blocklist\": " +
+                    (mBlocklist != null ? quote(mBlocklist) : "null") +
+                    ", \"blocklistLines\": " + mBlocklistSize +
+                    ", \"desktop\": " + mDesktop +
+                    ", \"latencyMs\": " + mLatency +
+                    ", \"iterations\": " + mIterations +
+                    ", \"warmup\": " + mWarmup + "},\n");
+            writer.write("  \"pages\": [");
+            List<Long> allTimes = new ArrayList<>();
+            List<Long> allInterceptTimes = new ArrayList<>();
+            for (int i = 0; i < mPages.size(); i++) {
+                Page page = mPages.get(i);
+                List<Long> times = new ArrayList<>();
+                int failed = 0;
+                long requests = 0;
+                long serverRequests = 0;
+                long blocked = 0;
+                for (Load load : page.loads) {
+                    if (load.time < 0) {
+                        failed++;
+                    } else {
+                        times.add(load.time);
+                    }
+                    requests += load.requests;
+                    serverRequests += load.serverRequests;
+                    blocked += load.blocked;
+                }
+                allTimes.addAll(times);
+                allInterceptTimes.addAll(page.interceptTimes);
+                int loads = Math.max(1, page.loads.size());
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("    {\"url\": " + quote(page.url) +
+                        ", \"loads\": " + page.loads.size() +
+                        ", \"failed\": " + failed +
+                        ", \"requestsPerLoad\": " + format((double) requests / loads) +
+                        ", \"serverRequestsPerLoad\": " + format((double) serverRequests / loads) +
+                        ", \"blockedPerLoad\": " + format((double) blocked / loads) +
+                        ",\n      \"loadTimeUs\": " + distribution(times) +
+                        ",\n      \"interceptTimeUs\": " + distribution(page.interceptTimes) +
+                        "}");
+            }
+            writer.write("\n  ],\n");
+            writer.write("  \"loadTimeUs\": " + distribution(allTimes) + ",\n");
+            writer.write("  \"interceptTimeUs\": " + distribution(allInterceptTimes) + ",\n");
+            writer.write("  \"notFound\": " + mServer.getNotFoundCount() + "\n");
+            writer.write("}\n");
+        } catch (IOException e) {
+            fail("Can't write " + file + ": " + e);
+            return;
+        }
+        Log.i(TAG, "Report written to " + file);
+        finish();
+    }
+
+    private void fail(@NonNull String message) {
+        Log.e(TAG, message);
+        finish();
+    }
+
+    @NonNull
+    private static String distribution(@NonNull List<Long> values) {
+        if (values.isEmpty()) {
+            return "null";
+        }
+        long[] sorted = new long[values.size()];
+        long sum = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = values.get(i);
+            sum += sorted[i];
+        }
+        Arrays.sort(sorted);
+        return "{\"count\": " + sorted.length +
+                ", \"mean\": " + format((double) sum / sorted.length) +
+                ", \"min\": " + sorted[0] +
+                ", \"p50\": " + percentile(sorted, 0.5) +
+                ", \"p90\": " + percentile(sorted, 0.9) +
+                ", \"p99\": " + percentile(sorted, 0.99) +
+                ", \"max\": " + sorted[sorted.length - 1] + "}";
+    }
+
+    private static long percentile(@NonNull long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    @NonNull
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    @NonNull
+    private static String quote(@NonNull String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static int countLines(@NonNull String path) {
+        int lines = 0;
+        try (InputStream in = new FileInputStream(path)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return lines;
+    }
+
+    private static final class Page {
+
+        final String url;
+        final List<Load> loads = new ArrayList<>();
+        final List<Long> interceptTimes = new ArrayList<>();
+
+        Page(String url) {
+            this.url = url;
+        }
+    }
+
+    private static final class Load {
+
+        long time;
+        int requests;
+        int serverRequests;
+        int blocked;
+    }
+}
\ No newline at end of file
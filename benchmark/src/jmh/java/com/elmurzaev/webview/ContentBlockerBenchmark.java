@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link ContentBlocker#isBlocked(String)} for the hosts of a request trace,
+ * one host per operation in trace order.
+ * */
+@State(Scope.Benchmark)
+public class ContentBlockerBenchmark {
+
+    /**
+     * {@code trie} reads the list into the heap, {@code compiled} maps a compiled list.
+     * */
+    @Param({"trie", "compiled"})
+    public String list;
+
+    @Param({"0", "512"})
+    public int cacheSize;
+
+    /**
+     * False positive rate of the prefilter, 0 to disable it.
+     * */
+    @Param({"0", "0.01"})
+    public double prefilter;
+
+    private ContentBlocker blocker;
+    private File compiledList;
+    private String[] hosts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (list.equals("compiled")) {
+            compiledList = File.createTempFile("blocklist", ".bin");
+            ContentBlocker.compile(Datasets.openBlocklist(), compiledList);
+            blocker = new ContentBlocker(compiledList);
+        } else {
+            blocker = new ContentBlocker(Datasets.openBlocklist());
+        }
+        blocker.setCacheSize(cacheSize);
+        if (prefilter > 0) {
+            blocker.enablePrefilter(prefilter);
+        }
+        hosts = Datasets.traceHosts();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (compiledList != null) {
+            //noinspection ResultOfMethodCallIgnored
+            compiledList.delete();
+        }
+    }
+
+    @Benchmark
+    public boolean isBlocked(Cursor cursor) {
+        return blocker.isBlocked(hosts[cursor.next(hosts.length)]);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,461 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Inputs shared by the benchmarks. Each dataset can be replaced by a real one
+ * through a system property, {@code build.gradle} passes them on from the
+ * project properties of the same name:
+ * <ul>
+ *     <li>{@code blocklist}: block list in any format {@link ContentBlocker} reads,
+ *     such as a hosts file. Otherwise 500k hosts are generated.</li>
+ *     <li>{@code trace}: request urls, one per line, or a HAR file such as the one
+ *     written by {@link RequestLog#writeHar(java.io.Writer)}. Otherwise a trace
+ *     of 100k requests is generated, a fifth of them to blocked hosts.</li>
+ *     <li>{@code omnibox}: text typed into the address bar, one input per line.
+ *     Otherwise the inputs bundled with the benchmarks are used.</li>
+ * </ul>
+ * Generated datasets use a fixed seed, so every run measures the same inputs.
+ * */
+final class Datasets {
+
+    static final int BLOCKLIST_SIZE = 500_000;
+    static final int TRACE_SIZE = 100_000;
+    static final int HISTORY_SIZE = 100_000;
+
+    private static final long SEED = 0x5745425649455721L;
+    private static final String[] TLDS = {
+            "com", "com", "com", "com", "com", "net", "net", "org", "io", "ru",
+            "de", "info", "co.uk", "fr", "jp", "xyz", "top", "online", "site", "com.br"};
+    private static final String[] SUBDOMAINS = {
+            "ads", "ad", "adserver", "track", "tracking", "tracker", "pixel", "metrics",
+            "stats", "analytics", "telemetry", "log", "beacon", "collect", "cdn", "static",
+            "img", "sync", "cm", "rtb", "bid", "delivery", "serve", "click", "events", "tag"};
+    private static final String[] FIRST_PARTY = {
+            "www", "m", "api", "static", "img", "cdn", "assets", "media", "fonts", "apis"};
+    private static final String CONSONANTS = "bcdfghklmnprstvwxz";
+    private static final String VOWELS = "aeiou";
+    // history ends at a fixed time, so ranks do not change between runs
+    private static final long HISTORY_END = 1_700_000_000_000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final Pattern HAR_URL = Pattern.compile("\"url\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static byte[] sBlocklist;
+    private static List<String> sBlockedHosts;
+    private static List<Visit> sHistory;
+
+    private Datasets() {
+    }
+
+    /**
+     * @return block list in hosts file format.
+     * */
+    static synchronized byte[] blocklist() throws IOException {
+        if (sBlocklist == null) {
+            String path = System.getProperty("blocklist");
+            if (path != null) {
+                sBlocklist = Files.readAllBytes(Paths.get(path));
+            } else {
+                StringBuilder builder = new StringBuilder(BLOCKLIST_SIZE * 32);
+                builder.append("# generated, ").append(BLOCKLIST_SIZE).append(" hosts\n");
+                for (String host : blockedHosts()) {
+                    builder.append("0.0.0.0 ").append(host).append('\n');
+                }
+                sBlocklist = builder.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return sBlocklist;
+    }
+
+    static InputStream openBlocklist() throws IOException {
+        return new ByteArrayInputStream(blocklist());
+    }
+
+    /**
+     * @return hosts of the requests in the trace, in request order.
+     * */
+    static String[] traceHosts() throws IOException {
+        List<String> urls = trace();
+        List<String> hosts = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            try {
+                String host = new URI(url).getHost();
+                if (host != null) {
+                    hosts.add(host);
+                }
+            } catch (Exception e) {
+                // not a url, skipped
+            }
+        }
+        return hosts.toArray(new String[0]);
+    }
+
+    /**
+     * @return request urls in request order.
+     * */
+    static List<String> trace() throws IOException {
+        String path = System.getProperty("trace");
+        if (path == null) {
+            return generateTrace();
+        }
+        List<String> urls = new ArrayList<>();
+        if (path.endsWith(".har")) {
+            String har = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            Matcher matcher = HAR_URL.matcher(har);
+            while (matcher.find()) {
+                urls.add(matcher.group(1));
+            }
+        } else {
+            for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+                if (line.startsWith("http://") || line.startsWith("https://")) {
+                    urls.add(line.trim());
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * @return text typed into the address bar.
+     * */
+    static String[] omniboxInputs() throws IOException {
+        String path = System.getProperty("omnibox");
+        List<String> lines;
+        if (path != null) {
+            lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        } else {
+            lines = new ArrayList<>();
+            try (InputStream in = Datasets.class.getResourceAsStream("/omnibox.txt")) {
+                for (String line : new String(readAll(in), StandardCharsets.UTF_8).split("\n")) {
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * @return every prefix of every input, as the address bar sees them while typing.
+     * */
+    static String[] keystrokes(String[] inputs) {
+        List<String> prefixes = new ArrayList<>();
+        for (String input : inputs) {
+            for (int i = 1; i <= input.length(); i++) {
+                prefixes.add(input.substring(0, i));
+            }
+        }
+        return prefixes.toArray(new String[0]);
+    }
+
+    /**
+     * @return context serving the search engine arrays of the library.
+     * */
+    static Context context() throws Exception {
+        Map<Integer, String[]> arrays = new HashMap<>();
+        arrays.put(R.array.search_engine_names, stringArray("search_engine_names"));
+        arrays.put(R.array.search_engine_urls, stringArray("search_engine_urls"));
+        Resources resources = new Resources(arrays);
+        return new Context() {
+            @Override
+            public Resources getResources() {
+                return resources;
+            }
+        };
+    }
+
+    private static String[] stringArray(String name) throws Exception {
+        Document document;
+        try (InputStream in = Datasets.class.getResourceAsStream("/arrays.xml")) {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        }
+        NodeList arrays = document.getElementsByTagName("string-array");
+        for (int i = 0; i < arrays.getLength(); i++) {
+            Element array = (Element) arrays.item(i);
+            if (name.equals(array.getAttribute("name"))) {
+                NodeList items = array.getElementsByTagName("item");
+                String[] values = new String[items.getLength()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = items.item(j).getTextContent();
+                }
+                return values;
+            }
+        }
+        throw new IllegalArgumentException("No string array " + name);
+    }
+
+    /**
+     * Visits of a history of {@link #HISTORY_SIZE} pages over half a year, oldest
+     * first. Sites, their pages and the words of their titles follow Zipf's law,
+     * so like in real histories a few sites are visited daily and most once.
+     * */
+    static synchronized List<Visit> history() {
+        if (sHistory == null) {
+            Random random = new Random(SEED + 2);
+            String[] sites = new String[5000];
+            for (int i = 0; i < sites.length; i++) {
+                sites[i] = domain(random);
+            }
+            String[] vocabulary = new String[20_000];
+            for (int i = 0; i < vocabulary.length; i++) {
+                vocabulary[i] = word(random);
+            }
+            double[] siteWeights = zipf(sites.length);
+            double[] wordWeights = zipf(vocabulary.length);
+            Map<String, String> pages = new LinkedHashMap<>(HISTORY_SIZE * 2);
+            while (pages.size() < HISTORY_SIZE) {
+                String site = sites[pick(siteWeights, random)];
+                StringBuilder slug = new StringBuilder();
+                StringBuilder title = new StringBuilder();
+                int words = 2 + random.nextInt(5);
+                for (int i = 0; i < words; i++) {
+                    String word = vocabulary[pick(wordWeights, random)];
+                    slug.append(i > 0 ? "-" : "").append(word);
+                    title.append(i > 0 ? " " : "")
+                            .append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                }
+                if (random.nextInt(4) == 0) {
+                    slug.append("?id=").append(random.nextInt(100_000));
+                }
+                title.append(" | ").append(site, 0, site.indexOf('.'));
+                pages.put("https://www." + site + "/" + slug, title.toString());
+            }
+            List<Visit> visits = new ArrayList<>();
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                do {
+                    long time = HISTORY_END - (long) (random.nextDouble() * 180 * DAY);
+                    visits.add(new Visit(page.getKey(), page.getValue(), time));
+                } while (random.nextInt(3) == 0);
+            }
+            visits.sort((a, b) -> Long.compare(a.time, b.time));
+            sHistory = visits;
+        }
+        return sHistory;
+    }
+
+    /**
+     * @return text typed to get back to pages of {@link #history()}: the start of
+     * their host, or words of their title.
+     * */
+    static String[] historyQueries(int count) {
+        List<Visit> history = history();
+        Random random = new Random(SEED + 3);
+        double[] weights = zipf(history.size());
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            // recent visits are more likely to be looked for
+            Visit visit = history.get(history.size() - 1 - pick(weights, random));
+            String host = visit.url.substring("https://www.".length(), visit.url.indexOf('/', 12));
+            String[] words = visit.title.toLowerCase(Locale.ROOT).split(" ");
+            switch (random.nextInt(3)) {
+                case 0:
+                    queries[i] = host.substring(0, Math.min(host.length(), 3 + random.nextInt(8)));
+                    break;
+                case 1:
+                    queries[i] = words[random.nextInt(words.length - 2)];
+                    break;
+                default:
+                    queries[i] = words[0] + " " + words[1];
+                    break;
+            }
+        }
+        return queries;
+    }
+
+    private static synchronized List<String> blockedHosts() {
+        if (sBlockedHosts == null) {
+            Random random = new Random(SEED);
+            Set<String> hosts = new LinkedHashSet<>(BLOCKLIST_SIZE * 2);
+            while (hosts.size() < BLOCKLIST_SIZE) {
+                String domain = domain(random);
+                // lists name tracking subdomains of otherwise harmless sites as often as whole domains
+                if (random.nextInt(10) < 6) {
+                    domain = SUBDOMAINS[random.nextInt(SUBDOMAINS.length)] +
+                            (random.nextInt(4) == 0 ? random.nextInt(100) : "") + '.' + domain;
+                }
+                hosts.add(domain);
+            }
+            sBlockedHosts = new ArrayList<>(hosts);
+        }
+        return sBlockedHosts;
+    }
+
+    /**
+     * Requests of page loads: most go to the page's own hosts and a few popular
+     * CDNs, the rest to third parties. Popularity of hosts follows Zipf's law, so
+     * like in real traces a small set of hosts takes most requests.
+     * */
+    private static List<String> generateTrace() {
+        List<String> blocked = blockedHosts();
+        Random random = new Random(SEED + 1);
+        String[] sites = new String[1000];
+        for (int i = 0; i < sites.length; i++) {
+            sites[i] = domain(random);
+        }
+        String[] thirdParties = new String[2000];
+        for (int i = 0; i < thirdParties.length; i++) {
+            thirdParties[i] = FIRST_PARTY[random.nextInt(FIRST_PARTY.length)] + '.' + domain(random);
+        }
+        double[] siteWeights = zipf(sites.length);
+        double[] thirdPartyWeights = zipf(thirdParties.length);
+        double[] blockedWeights = zipf(10_000);
+        List<String> urls = new ArrayList<>(TRACE_SIZE);
+        String site = null;
+        for (int i = 0; i < TRACE_SIZE; i++) {
+            // a page load every 60 requests on average
+            if (site == null || random.nextInt(60) == 0) {
+                site = sites[pick(siteWeights, random)];
+                urls.add("https://www." + site + "/");
+                continue;
+            }
+            int kind = random.nextInt(100);
+            String host;
+            if (kind < 45) {
+                host = FIRST_PARTY[random.nextInt(FIRST_PARTY.length)] + '.' + site;
+            } else if (kind < 80) {
+                host = thirdParties[pick(thirdPartyWeights, random)];
+            } else {
+                host = blocked.get(pick(blockedWeights, random) * (blocked.size() / 10_000));
+            }
+            urls.add("https://" + host + path(random));
+        }
+        return urls;
+    }
+
+    private static String domain(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            builder.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            builder.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+            if (random.nextInt(4) == 0) {
+                builder.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            }
+        }
+        if (random.nextInt(8) == 0) {
+            builder.append(random.nextBoolean() ? "-" : "").append(random.nextInt(1000));
+        }
+        return builder.append('.').append(TLDS[random.nextInt(TLDS.length)]).toString();
+    }
+
+    private static String word(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int syllables = 1 + random.nextInt(4);
+        for (int i = 0; i < syllables; i++) {
+            builder.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            builder.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+        }
+        return builder.toString();
+    }
+
+    private static String path(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return "/static/js/main." + Long.toHexString(random.nextLong()) + ".js";
+            case 1:
+                return "/images/" + random.nextInt(100_000) + ".jpg?w=640";
+            case 2:
+                return "/pixel.gif?uid=" + Long.toHexString(random.nextLong()) + "&ev=pageview";
+            default:
+                return "/api/v1/items?page=" + random.nextInt(50);
+        }
+    }
+
+    private static double[] zipf(int n) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulative, Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    /**
+     * Visit of a page of the history.
+     * */
+    static final class Visit {
+
+        final String url;
+        final String title;
+        final long time;
+
+        Visit(String url, String title, long time) {
+            this.url = url;
+            this.title = title;
+            this.time = time;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.elmurzaev.webview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * {@link HistoryStore#suggest(String, int)} for every keystroke of text typed
+ * to get back to pages of the history, one keystroke per operation.
+ * */
+@State(Scope.Benchmark)
+public class HistoryStoreBenchmark {
+
+    private static final int SUGGESTIONS = 6;
+
+    /**
+     * Pages visited since the index was built are searched one by one,
+     * 63 is the most there can be.
+     * */
+    @Param({"0", "63"})
+    public int pending;
+
+    private File file;
+    private HistoryStore history;
+    private String[] keystrokes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = File.createTempFile("history", null);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        history = new HistoryStore(file, Datasets.HISTORY_SIZE);
+        List<Datasets.Visit> visits = Datasets.history();
+        for (Datasets.Visit visit : visits) {
+            history.addVisit(visit.url, visit.title, visit.time);
+        }
+        history.rebuildIndex().get();
+        for (int i = 0; i < pending; i++) {
+            Datasets.Visit visit = visits.get(visits.size() - 1 - i * 7);
+            history.addVisit(visit.url, visit.title, visit.time);
+        }
+        keystrokes = Datasets.keystrokes(Datasets.historyQueries(1000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Benchmark
+    public List<HistoryStore.Entry> suggest(Cursor cursor) {
+        return history.suggest(keystrokes[cursor.next(keystrokes.length)], SUGGESTIONS);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.util.Patterns;
+import android.webkit.URLUtil;
+
+import java.util.regex.Pattern;
+
+/**
+ * The classification {@link WebView#loadUrl(String)} did before {@link Omnibox}
+ * scanned input by hand, kept as a baseline for its benchmark and corpus check.
+ * */
+final class LegacyOmnibox {
+
+    private LegacyOmnibox() {
+    }
+
+    /**
+     * @return type {@link Omnibox#classify(String)} returns for input that's
+     * handled the same way.
+     * */
+    static int classify(String input) {
+        if (URLUtil.isValidUrl(input)) {
+            return Omnibox.INPUT_URL;
+        }
+        if (isLocalHost(input)) {
+            return Omnibox.INPUT_LOCALHOST;
+        }
+        if (Patterns.WEB_URL.matcher(input).matches()) {
+            // loadUrl didn't upgrade IP addresses to HTTPS
+            String host = hostOf(input);
+            return host != null && Patterns.IP_ADDRESS.matcher(host).matches()
+                    ? Omnibox.INPUT_IP : Omnibox.INPUT_WEB_URL;
+        }
+        return Omnibox.INPUT_SEARCH;
+    }
+
+    static boolean isLocalHost(String input) {
+        return Pattern.matches("(?:https?://)?localhost(?::\\d+)?(?![^/])", input);
+    }
+
+    /**
+     * Host as {@code Uri.getHost()} returned it for {@code "http://" + input}.
+     * */
+    private static String hostOf(String input) {
+        int end = 0;
+        while (end < input.length() && "/?#".indexOf(input.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = input.substring(0, end);
+        int colon = authority.lastIndexOf(':');
+        return colon >= 0 ? authority.substring(0, colon) : authority;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Classification of address bar input done by {@link WebView#loadUrl(String)},
+ * one input per operation.
+ * */
+@State(Scope.Benchmark)
+public class OmniboxBenchmark {
+
+    /**
+     * {@code full} classifies whole inputs as when they are submitted,
+     * {@code keystrokes} every prefix of them as when they are typed.
+     * */
+    @Param({"full", "keystrokes"})
+    public String inputs;
+
+    private String[] input;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] full = Datasets.omniboxInputs();
+        input = inputs.equals("keystrokes") ? Datasets.keystrokes(full) : full;
+    }
+
+    @Benchmark
+    public int classify(Cursor cursor) {
+        return Omnibox.classify(input[cursor.next(input.length)]);
+    }
+
+    @Benchmark
+    public int legacyClassify(Cursor cursor) {
+        return LegacyOmnibox.classify(input[cursor.next(input.length)]);
+    }
+
+    /**
+     * {@link WebView#isLocalHost(String)} delegates to this.
+     * */
+    @Benchmark
+    public boolean isLocalHost(Cursor cursor) {
+        return Omnibox.isLocalHost(input[cursor.next(input.length)]);
+    }
+
+    @Benchmark
+    public boolean legacyIsLocalHost(Cursor cursor) {
+        return LegacyOmnibox.isLocalHost(input[cursor.next(input.length)]);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies a corpus of address bar input with {@link Omnibox} and with the
+ * regular expressions it replaced, and fails if they disagree in a way that's
+ * not intended. Intended are:
+ * <ul>
+ *     <li>local addresses that used to be searched for: localhost with a path,
+ *     IPv6 literals and intranet hosts such as {@code router/}.</li>
+ *     <li>hosts under private suffixes such as {@code nas.local}, which are no
+ *     longer upgraded to HTTPS.</li>
+ *     <li>hosts whose last label is not a top-level domain, such as
+ *     {@code index.html}, which are searched for.</li>
+ * </ul>
+ * Run with {@code ./gradlew :benchmark:checkOmnibox}, the corpus is made of the
+ * benchmark datasets.
+ * */
+public final class OmniboxCorpusCheck {
+
+    private static final String[] NAMES = {"url", "localhost", "web url", "search", "ip", "intranet"};
+    private static final int EXAMPLES = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<String> corpus = new ArrayList<>();
+        String[] inputs = Datasets.omniboxInputs();
+        for (String input : inputs) {
+            corpus.add(input);
+        }
+        for (String input : Datasets.keystrokes(inputs)) {
+            corpus.add(input);
+        }
+        for (String url : Datasets.trace()) {
+            corpus.add(url);
+            corpus.add(url.substring(url.indexOf("://") + 3));
+        }
+
+        int agreed = 0;
+        int unexpected = 0;
+        Map<String, List<String>> differences = new LinkedHashMap<>();
+        for (String input : corpus) {
+            int legacy = LegacyOmnibox.classify(input);
+            int current = Omnibox.classify(input);
+            if (legacy == current) {
+                agreed++;
+                continue;
+            }
+            boolean intended = isIntended(input, legacy, current);
+            if (!intended) {
+                unexpected++;
+            }
+            String key = (intended ? "" : "UNEXPECTED ") + NAMES[legacy] + " -> " + NAMES[current];
+            List<String> examples = differences.get(key);
+            if (examples == null) {
+                examples = new ArrayList<>();
+                differences.put(key, examples);
+            }
+            examples.add(input);
+        }
+
+        System.out.printf("%d inputs, %d classified the same (%.2f%%)%n",
+                corpus.size(), agreed, 100.0 * agreed / corpus.size());
+        for (Map.Entry<String, List<String>> entry : differences.entrySet()) {
+            List<String> examples = entry.getValue();
+            System.out.printf("%s: %d, e.g. %s%n", entry.getKey(), examples.size(),
+                    examples.subList(0, Math.min(EXAMPLES, examples.size())));
+        }
+        if (unexpected > 0) {
+            System.out.println(unexpected + " unexpected differences");
+            System.exit(1);
+        }
+    }
+
+    private static boolean isIntended(String input, int legacy, int current) {
+        if (legacy == Omnibox.INPUT_SEARCH) {
+            return current == Omnibox.INPUT_LOCALHOST || current == Omnibox.INPUT_IP ||
+                    current == Omnibox.INPUT_INTRANET;
+        }
+        if (legacy == Omnibox.INPUT_WEB_URL) {
+            if (current == Omnibox.INPUT_INTRANET) {
+                return true;
+            }
+            if (current == Omnibox.INPUT_SEARCH) {
+                int end = 0;
+                while (end < input.length() && ":/?#".indexOf(input.charAt(end)) < 0) {
+                    end++;
+                }
+                int tld = input.lastIndexOf('.', end - 1) + 1;
+                return !TopLevelDomains.contains(input, tld, end);
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SearchEngines#getSearchUrlFor(Context, String, String)} for the address
+ * bar inputs that are searched for, one query per operation.
+ * */
+@State(Scope.Benchmark)
+public class SearchEnginesBenchmark {
+
+    /**
+     * Engines are looked up in order, so the last one is the slowest to find.
+     * */
+    @Param({"Google", "DuckDuckGo"})
+    public String engine;
+
+    private Context context;
+    private String[] queries;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = Datasets.context();
+        List<String> searches = new ArrayList<>();
+        for (String input : Datasets.omniboxInputs()) {
+            if (Omnibox.classify(input) == Omnibox.INPUT_SEARCH) {
+                searches.add(input);
+            }
+        }
+        queries = searches.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String getSearchUrlFor(Cursor cursor) {
+        return SearchEngines.getSearchUrlFor(context, engine, queries[cursor.next(queries.length)]);
+    }
+
+}
\ No newline at end of file
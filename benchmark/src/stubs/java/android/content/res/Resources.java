@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package android.content.res;
+
+import java.util.Map;
+
+/**
+ * Stand-in for the framework class that serves string arrays from a map.
+ * Like on a device, every call returns a new array.
+ * */
+public class Resources {
+
+    private final Map<Integer, String[]> stringArrays;
+
+    public Resources(Map<Integer, String[]> stringArrays) {
+        this.stringArrays = stringArrays;
+    }
+
+    public String[] getStringArray(int id) {
+        String[] array = stringArrays.get(id);
+        if (array == null) {
+            throw new IllegalArgumentException("No string array " + Integer.toHexString(id));
+        }
+        return array.clone();
+    }
+
+}
\ No newline at end of file
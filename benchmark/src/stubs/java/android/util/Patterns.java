@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package android.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the framework class with the patterns of API 28 and newer,
+ * so matching costs the same as on a device.
+ * */
+public final class Patterns {
+
+    private static final String IP_ADDRESS_STRING =
+            "((25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}|[1-9][0-9]|[1-9])\\.(25[0-5]|2[0-4]"
+                    + "[0-9]|[0-1][0-9]{2}|[1-9][0-9]|[1-9]|0)\\.(25[0-5]|2[0-4][0-9]|[0-1]"
+                    + "[0-9]{2}|[1-9][0-9]|[1-9]|0)\\.(25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}"
+                    + "|[1-9][0-9]|[0-9]))";
+    public static final Pattern IP_ADDRESS = Pattern.compile(IP_ADDRESS_STRING);
+
+    private static final String UCS_CHAR = "["
+            + "\u00A0-\uD7FF"
+            + "\uF900-\uFDCF"
+            + "\uFDF0-\uFFEF"
+            + "\uD800\uDC00-\uD83F\uDFFD"
+            + "\uD840\uDC00-\uD87F\uDFFD"
+            + "\uD880\uDC00-\uD8BF\uDFFD"
+            + "\uD8C0\uDC00-\uD8FF\uDFFD"
+            + "\uD900\uDC00-\uD93F\uDFFD"
+            + "\uD940\uDC00-\uD97F\uDFFD"
+            + "\uD980\uDC00-\uD9BF\uDFFD"
+            + "\uD9C0\uDC00-\uD9FF\uDFFD"
+            + "\uDA00\uDC00-\uDA3F\uDFFD"
+            + "\uDA40\uDC00-\uDA7F\uDFFD"
+            + "\uDA80\uDC00-\uDABF\uDFFD"
+            + "\uDAC0\uDC00-\uDAFF\uDFFD"
+            + "\uDB00\uDC00-\uDB3F\uDFFD"
+            + "\uDB44\uDC00-\uDB7F\uDFFD"
+            + "&&[^\u00A0[\u2000-\u200A]\u2028\u2029\u202F\u3000]]";
+    private static final String LABEL_CHAR = "a-zA-Z0-9" + UCS_CHAR;
+    private static final String TLD_CHAR = "a-zA-Z" + UCS_CHAR;
+    private static final String IRI_LABEL =
+            "[" + LABEL_CHAR + "](?:[" + LABEL_CHAR + "_\\-]{0,61}[" + LABEL_CHAR + "]){0,1}";
+    private static final String PUNYCODE_TLD = "xn\\-\\-[\\w\\-]{0,58}\\w";
+    private static final String TLD = "(" + PUNYCODE_TLD + "|" + "[" + TLD_CHAR + "]{2,63}" + ")";
+    private static final String HOST_NAME = "(" + IRI_LABEL + "\\.)+" + TLD;
+    private static final String DOMAIN_NAME_STR = "(" + HOST_NAME + "|" + IP_ADDRESS_STRING + ")";
+    private static final String PROTOCOL = "(?i:http|https|rtsp)://";
+    private static final String WORD_BOUNDARY = "(?:\\b|$|^)";
+    private static final String USER_INFO = "(?:[a-zA-Z0-9\\$\\-\\_\\.\\+\\!\\*\\'\\(\\)"
+            + "\\,\\;\\?\\&\\=]|(?:\\%[a-fA-F0-9]{2})){1,64}(?:\\:(?:[a-zA-Z0-9\\$\\-\\_"
+            + "\\.\\+\\!\\*\\'\\(\\)\\,\\;\\?\\&\\=]|(?:\\%[a-fA-F0-9]{2})){1,25})?\\@";
+    private static final String PORT_NUMBER = "\\:\\d{1,5}";
+    private static final String PATH_AND_QUERY = "[/\\?](?:(?:[" + LABEL_CHAR
+            + ";/\\?:@&=#~"
+            + "\\-\\.\\+!\\*'\\(\\),_\\$])|(?:%[a-fA-F0-9]{2}))*";
+
+    public static final Pattern WEB_URL = Pattern.compile("("
+            + "("
+            + "(?:" + PROTOCOL + "(?:" + USER_INFO + ")?" + ")?"
+            + "(?:" + DOMAIN_NAME_STR + ")"
+            + "(?:" + PORT_NUMBER + ")?"
+            + ")"
+            + "(" + PATH_AND_QUERY + ")?"
+            + WORD_BOUNDARY
+            + ")");
+
+    private Patterns() {
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package android.webkit;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Stand-in for the framework class with the methods the library uses
+ * implemented as they are on a device.
+ * */
+public final class URLUtil {
+
+    private static final String ASSET_BASE = "file:///android_asset/";
+    private static final String RESOURCE_BASE = "file:///android_res/";
+    private static final String FILE_BASE = "file://";
+    private static final String PROXY_BASE = "file:///cookieless_proxy/";
+    private static final String CONTENT_BASE = "content:";
+
+    private URLUtil() {
+    }
+
+    public static String composeSearchUrl(String inQuery, String template,
+                                          String queryPlaceHolder) {
+        int placeHolderIndex = template.indexOf(queryPlaceHolder);
+        if (placeHolderIndex < 0) {
+            return null;
+        }
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(template.substring(0, placeHolderIndex));
+        try {
+            buffer.append(URLEncoder.encode(inQuery, "utf-8"));
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+        buffer.append(template.substring(placeHolderIndex + queryPlaceHolder.length()));
+        return buffer.toString();
+    }
+
+    public static boolean isAssetUrl(String url) {
+        return (null != url) && url.startsWith(ASSET_BASE);
+    }
+
+    public static boolean isResourceUrl(String url) {
+        return (null != url) && url.startsWith(RESOURCE_BASE);
+    }
+
+    public static boolean isFileUrl(String url) {
+        return (null != url) && (url.startsWith(FILE_BASE) &&
+                !url.startsWith(ASSET_BASE) &&
+                !url.startsWith(PROXY_BASE));
+    }
+
+    public static boolean isAboutUrl(String url) {
+        return (null != url) && url.startsWith("about:");
+    }
+
+    public static boolean isJavaScriptUrl(String url) {
+        return (null != url) && url.startsWith("javascript:");
+    }
+
+    public static boolean isHttpUrl(String url) {
+        return (null != url) &&
+                (url.length() > 6) &&
+                url.substring(0, 7).equalsIgnoreCase("http://");
+    }
+
+    public static boolean isHttpsUrl(String url) {
+        return (null != url) &&
+                (url.length() > 7) &&
+                url.substring(0, 8).equalsIgnoreCase("https://");
+    }
+
+    public static boolean isNetworkUrl(String url) {
+        if (url == null || url.length() == 0) {
+            return false;
+        }
+        return isHttpUrl(url) || isHttpsUrl(url);
+    }
+
+    public static boolean isContentUrl(String url) {
+        return (null != url) && url.startsWith(CONTENT_BASE);
+    }
+
+    public static boolean isValidUrl(String url) {
+        if (url == null || url.length() == 0) {
+            return false;
+        }
+        return (isAssetUrl(url) ||
+                isResourceUrl(url) ||
+                isFileUrl(url) ||
+                isAboutUrl(url) ||
+                isHttpUrl(url) ||
+                isHttpsUrl(url) ||
+                isJavaScriptUrl(url) ||
+                isContentUrl(url));
+    }
+
+}
\ No newline at end of file
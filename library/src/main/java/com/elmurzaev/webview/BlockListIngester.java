@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Merges several block lists into one {@link ContentBlocker}. Sources are read
+ * concurrently and their lines are normalized in chunks on all cores, while the
+ * calling thread merges the results and drops duplicates. Each source may be in
+ * any format supported by {@link ContentBlocker#ContentBlocker(InputStream)}.
+ * <pre>
+ * BlockListIngester.Result result = new BlockListIngester()
+ *         .addSource("hosts", hostsStream)
+ *         .addSource("easylist", easyListStream)
+ *         .ingest();
+ * ContentBlocker.setDefault(result.getContentBlocker());
+ * </pre>
+ * */
+public final class BlockListIngester {
+
+    private static final int CHUNK_LINES = 8192;
+
+    private final List<String> mNames = new ArrayList<>();
+    private final List<InputStream> mStreams = new ArrayList<>();
+    private final int mThreads;
+
+    public BlockListIngester() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads number of threads used to read and normalize sources.
+     * */
+    public BlockListIngester(int threads) {
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * @param name used to identify the source in {@link Result#getSourceStats()}.
+     * @param stream block list, closed once it's read.
+     * */
+    @NonNull
+    public BlockListIngester addSource(@NonNull String name, @NonNull InputStream stream) {
+        mNames.add(name);
+        mStreams.add(stream);
+        return this;
+    }
+
+    /**
+     * Reads all sources and merges them. Blocks until done, so never call
+     * this on the main thread.
+     * */
+    @NonNull
+    @WorkerThread
+    public Result ingest() throws InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        int sourceCount = mStreams.size();
+        SourceStats[] stats = new SourceStats[sourceCount];
+        BlockingQueue<Chunk> results = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        HostTrie trie = new HostTrie();
+        try {
+            for (int i = 0; i < sourceCount; i++) {
+                stats[i] = new SourceStats(mNames.get(i));
+                int source = i;
+                executor.execute(() -> read(source, mStreams.get(source), executor, results));
+            }
+            // every source ends with an empty chunk telling how many chunks it had
+            int[] expected = new int[sourceCount];
+            int[] merged = new int[sourceCount];
+            Arrays.fill(expected, -1);
+            int finished = 0;
+            while (finished < sourceCount) {
+                Chunk chunk = results.take();
+                SourceStats s = stats[chunk.source];
+                if (chunk.hosts == null) {
+                    expected[chunk.source] = chunk.index;
+                    s.error = chunk.error;
+                } else {
+                    if (s.error == null) {
+                        s.error = chunk.error;
+                    }
+                    s.lines += chunk.lines;
+                    s.invalid += chunk.invalid;
+                    for (String host : chunk.hosts) {
+                        if (trie.add(host)) {
+                            s.hosts++;
+                        } else {
+                            s.duplicates++;
+                        }
+                    }
+                    merged[chunk.source]++;
+                }
+                if (merged[chunk.source] == expected[chunk.source]) {
+                    s.millis = SystemClock.elapsedRealtime() - start;
+                    finished++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        trie.trimToSize();
+        List<SourceStats> list = new ArrayList<>(sourceCount);
+        Collections.addAll(list, stats);
+        return new Result(trie, list, SystemClock.elapsedRealtime() - start);
+    }
+
+    private static void read(int source, InputStream stream, ExecutorService executor,
+                             BlockingQueue<Chunk> results) {
+        int index = 0;
+        // replaced unless an Error stops the reader, which still has to end the source
+        String error = "Reading stopped unexpectedly";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            List<String> lines = new ArrayList<>(CHUNK_LINES);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == CHUNK_LINES) {
+                    submit(source, lines, executor, results);
+                    lines = new ArrayList<>(CHUNK_LINES);
+                    index++;
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(source, lines, executor, results);
+                index++;
+            }
+            error = null;
+        } catch (IOException | RuntimeException e) {
+            error = e.toString();
+        } finally {
+            results.add(new Chunk(source, index, null, 0, 0, error));
+        }
+    }
+
+    private static void submit(int source, List<String> lines, ExecutorService executor,
+                               BlockingQueue<Chunk> results) {
+        executor.execute(() -> {
+            List<String> hosts = new ArrayList<>(lines.size());
+            int invalid = 0;
+            // a chunk that failed is merged empty, so the source still ends
+            String error = "Normalizing stopped unexpectedly";
+            try {
+                for (String line : lines) {
+                    if (HostNormalizer.normalize(line, hosts) < 0) {
+                        invalid++;
+                    }
+                }
+                error = null;
+            } catch (RuntimeException e) {
+                error = e.toString();
+            } finally {
+                results.add(new Chunk(source, 0,
+                        error == null ? hosts : Collections.<String>emptyList(),
+                        lines.size(), invalid, error));
+            }
+        });
+    }
+
+    private static final class Chunk {
+        final int source;
+        final int index;
+        @Nullable
+        final List<String> hosts;
+        final int lines;
+        final int invalid;
+        @Nullable
+        final String error;
+
+        Chunk(int source, int index, @Nullable List<String> hosts, int lines, int invalid,
+              @Nullable String error) {
+            this.source = source;
+            this.index = index;
+            this.hosts = hosts;
+            this.lines = lines;
+            this.invalid = invalid;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Statistics of a single source.
+     * */
+    public static final class SourceStats {
+
+        private final String name;
+        private long lines;
+        private long hosts;
+        private long duplicates;
+        private long invalid;
+        private long millis;
+        @Nullable
+        private String error;
+
+        SourceStats(@NonNull String name) {
+            this.name = name;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of lines read, including comments and blank lines.
+         * */
+        public long getLineCount() {
+            return lines;
+        }
+
+        /**
+         * @return number of hosts this source added to the merged list.
+         * */
+        public long getHostCount() {
+            return hosts;
+        }
+
+        /**
+         * @return number of hosts that were already added by this or another source.
+         * */
+        public long getDuplicateCount() {
+            return duplicates;
+        }
+
+        /**
+         * @return number of lines that were neither hosts nor comments.
+         * */
+        public long getInvalidLineCount() {
+            return invalid;
+        }
+
+        /**
+         * @return time from the start of ingestion until this source was merged.
+         * */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return description of the first error that stopped reading or
+         * normalizing part of this source, or null if it was merged completely.
+         * */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name + ": " + lines + " lines, " + hosts + " hosts, " + duplicates
+                    + " duplicates, " + invalid + " invalid, " + millis + " ms"
+                    + (error != null ? ", " + error : "");
+        }
+    }
+
+    /**
+     * Merged block list together with statistics.
+     * */
+    public static final class Result {
+
+        private final HostTrie hosts;
+        private final List<SourceStats> stats;
+        private final long millis;
+
+        Result(@NonNull HostTrie hosts, @NonNull List<SourceStats> stats, long millis) {
+            this.hosts = hosts;
+            this.stats = Collections.unmodifiableList(stats);
+            this.millis = millis;
+        }
+
+        /**
+         * @return new blocker with the merged list.
+         * */
+        @NonNull
+        public ContentBlocker getContentBlocker() {
+            return ContentBlocker.fromHosts(hosts);
+        }
+
+        /**
+         * Writes the merged list in the format opened by {@link ContentBlocker#ContentBlocker(File)}.
+         *
+         * @return number of hosts written.
+         * */
+        public int compile(@NonNull File output) throws IOException {
+            return CompiledHostList.write(hosts, output);
+        }
+
+        /**
+         * @return number of unique hosts in the merged list.
+         * */
+        public int getHostCount() {
+            return hosts.size();
+        }
+
+        @NonNull
+        public List<SourceStats> getSourceStats() {
+            return stats;
+        }
+
+        /**
+         * @return time it took to read and merge all sources.
+         * */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return number of lines read per second over all sources.
+         * */
+        public long getLinesPerSecond() {
+            long lines = 0;
+            for (SourceStats s : stats) {
+                lines += s.lines;
+            }
+            return millis > 0 ? lines * 1000 / millis : lines;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Response stored by {@link ResponseCache}, one file per url.
+ * <p>
+ * File layout, all integers are big-endian:
+ * <pre>
+ * int magic         'WVRC'
+ * int version
+ * long expiresAt    time until which it's fresh, 0 if it must be revalidated
+ * int headerLength
+ * header            url, status, reason, mime type, encoding and headers
+ * body              the rest of the file
+ * </pre>
+ * {@code expiresAt} has a fixed position, so revalidation rewrites 8 bytes.
+ * */
+final class CachedResponse {
+
+    private static final int MAGIC = 0x57565243;
+    private static final int VERSION = 1;
+    private static final int EXPIRES_OFFSET = 8;
+    private static final int PREFIX_LENGTH = 20;
+
+    @NonNull
+    final String url;
+    final int statusCode;
+    @NonNull
+    final String reasonPhrase;
+    @NonNull
+    final String mimeType;
+    @Nullable
+    final String encoding;
+    @NonNull
+    final Map<String, String> headers;
+    long expiresAt;
+    long bodyOffset;
+    // set when the response is read to be served
+    @Nullable
+    MappedByteBuffer body;
+
+    CachedResponse(@NonNull String url, int statusCode, @NonNull String reasonPhrase,
+                   @NonNull String mimeType, @Nullable String encoding,
+                   @NonNull Map<String, String> headers, long expiresAt) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.mimeType = mimeType;
+        this.encoding = encoding;
+        this.headers = headers;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Reads everything but the body, {@link #bodyOffset} is set to where it starts.
+     * */
+    @NonNull
+    static CachedResponse read(@NonNull RandomAccessFile file) throws IOException {
+        file.seek(0);
+        if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+            throw new IOException("Not a cached response");
+        }
+        long expiresAt = file.readLong();
+        int headerLength = file.readInt();
+        if (headerLength < 0 || headerLength > file.length() - PREFIX_LENGTH) {
+            throw new IOException("Corrupted cached response");
+        }
+        byte[] header = new byte[headerLength];
+        file.readFully(header);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        String url = in.readUTF();
+        int statusCode = in.readInt();
+        String reasonPhrase = in.readUTF();
+        String mimeType = in.readUTF();
+        String encoding = in.readUTF();
+        int count = in.readInt();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+        CachedResponse response = new CachedResponse(url, statusCode, reasonPhrase, mimeType,
+                encoding.isEmpty() ? null : encoding, headers, expiresAt);
+        response.bodyOffset = PREFIX_LENGTH + headerLength;
+        return response;
+    }
+
+    void write(@NonNull DataOutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeUTF(url);
+        header.writeInt(statusCode);
+        header.writeUTF(reasonPhrase);
+        header.writeUTF(mimeType);
+        header.writeUTF(encoding != null ? encoding : "");
+        header.writeInt(headers.size());
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            header.writeUTF(entry.getKey());
+            header.writeUTF(entry.getValue());
+        }
+        header.flush();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(expiresAt);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    static void writeExpiresAt(@NonNull File file, long expiresAt) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(EXPIRES_OFFSET);
+            out.writeLong(expiresAt);
+        }
+    }
+
+    @Nullable
+    String header(@NonNull String name) {
+        return get(headers, name);
+    }
+
+    /**
+     * Freshness according to RFC 9111 for a private cache.
+     *
+     * @return time until which a response with {@code headers} received at
+     * {@code now} is fresh, 0 if it may be stored but must be revalidated
+     * before use, or -1 if it must not be stored.
+     * */
+    static long expiresAt(@NonNull Map<String, String> headers, long now) {
+        String cacheControl = get(headers, "Cache-Control");
+        String vary = get(headers, "Vary");
+        if (vary != null && !vary.trim().equalsIgnoreCase("Accept-Encoding")) {
+            return -1;
+        }
+        long maxAge = -1;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    return -1;
+                } else if (directive.equals("no-cache")) {
+                    return 0;
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring(8));
+                }
+            }
+        }
+        if (maxAge >= 0) {
+            return maxAge == 0 ? 0 : now + maxAge * 1000;
+        }
+        long date = parseDate(get(headers, "Date"), now);
+        String expires = get(headers, "Expires");
+        if (expires != null) {
+            // an invalid date such as "0" means already expired
+            long expiresAt = parseDate(expires, 0);
+            return expiresAt > date ? now + (expiresAt - date) : 0;
+        }
+        String lastModified = get(headers, "Last-Modified");
+        if (lastModified != null) {
+            // heuristic freshness, 10% of the time since the last modification
+            long modified = parseDate(lastModified, date);
+            return date > modified ? now + (date - modified) / 10 : 0;
+        }
+        return get(headers, "ETag") != null ? 0 : -1;
+    }
+
+    @Nullable
+    private static String get(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseDate(@Nullable String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            return fallback;
+        }
+    }
+
+}
\ No newline at end of file
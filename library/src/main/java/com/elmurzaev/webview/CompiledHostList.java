@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Host list compiled into a binary index and memory-mapped, so opening it
+ * only checks the layout of the entries and no memory is held on the heap
+ * per host.
+ * <p>
+ * File layout, all integers are big-endian:
+ * <pre>
+ * int magic     'WVBL'
+ * int version
+ * int count
+ * int checksum  CRC32 of everything after the header
+ * int[count]    offset of every entry, relative to the first entry
+ * entries       unsigned byte length followed by the host in reverse
+ *               character order, sorted by unsigned byte value
+ * </pre>
+ * Storing hosts reversed turns every parent domain of a host into a prefix
+ * of it, so {@code moc.elpmaxe} is found by binary searching the prefixes
+ * of {@code moc.elpmaxe.sda} that end on a label boundary.
+ * */
+final class CompiledHostList implements HostSet {
+
+    private static final int MAGIC = 0x5756424C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int entriesStart;
+
+    private CompiledHostList(@NonNull ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+        this.entriesStart = HEADER_SIZE + count * 4;
+    }
+
+    /**
+     * Maps the compiled list. The header and the bounds of every entry are
+     * validated, so a truncated or corrupted file fails here rather than
+     * while looking hosts up. Use {@link #verify(File)} to validate the checksum.
+     * */
+    @NonNull
+    static CompiledHostList open(@NonNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a compiled host list: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a compiled host list: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported host list version: " + buffer.getInt(4));
+            }
+            int count = buffer.getInt(8);
+            if (count < 0 || HEADER_SIZE + count * 4L > length) {
+                throw new IOException("Truncated host list: " + file);
+            }
+            // entries follow each other in the order of the offsets and fill the rest of the file
+            long position = HEADER_SIZE + count * 4L;
+            for (int i = 0; i < count; i++) {
+                int offset = buffer.getInt(HEADER_SIZE + i * 4);
+                if (offset != position - HEADER_SIZE - count * 4L || position >= length) {
+                    throw new IOException("Corrupted host list: " + file);
+                }
+                position += 1 + (buffer.get((int) position) & 0xFF);
+            }
+            if (position != length) {
+                throw new IOException("Corrupted host list: " + file);
+            }
+            return new CompiledHostList(buffer, count);
+        }
+    }
+
+    /**
+     * @return true if {@code file} is a compiled host list and its checksum matches.
+     * */
+    static boolean verify(@NonNull File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                return false;
+            }
+            raf.readInt();
+            int checksum = raf.readInt();
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = raf.read(chunk)) != -1) {
+                crc.update(chunk, 0, read);
+            }
+            return (int) crc.getValue() == checksum;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads one host per line from {@code stream} and writes the compiled list
+     * to {@code output}.
+     *
+     * @return number of hosts written.
+     * @see #write(HostTrie, File)
+     * */
+    static int compile(@NonNull InputStream stream, @NonNull File output) throws IOException {
+        HostTrie trie = new HostTrie();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+        List<String> hosts = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            hosts.clear();
+            HostNormalizer.normalize(line, hosts);
+            for (String host : hosts) {
+                trie.add(host);
+            }
+        }
+        return write(trie, output);
+    }
+
+    /**
+     * Writes the hosts of {@code trie} as a compiled list to {@code output}.
+     * Hosts already covered by one of their parent domains are dropped.
+     * The file is replaced atomically, so a list that is currently
+     * mapped keeps working until it's reopened.
+     *
+     * @return number of hosts written.
+     * */
+    static int write(@NonNull HostTrie trie, @NonNull File output) throws IOException {
+        List<String> reversed = new ArrayList<>(trie.size());
+        trie.forEach(host -> {
+            int end = host.length();
+            int dot = -1;
+            for (int i = 0; i < end && dot < 0; i++) {
+                if (host.charAt(i) == '.') {
+                    dot = i;
+                }
+            }
+            if (dot >= 0 && dot + 1 < end && trie.matches(host, dot + 1, end)) {
+                return;
+            }
+            char[] chars = new char[end];
+            for (int i = 0; i < end; i++) {
+                chars[i] = host.charAt(end - 1 - i);
+            }
+            reversed.add(new String(chars));
+        });
+        // hosts are ASCII, so natural order equals unsigned byte order
+        Collections.sort(reversed);
+        int[] offsets = new int[reversed.size()];
+        int offset = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = offset;
+            offset += 1 + reversed.get(i).length();
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = ByteBuffer.allocate(offsets.length * 4 + offset);
+        for (int o : offsets) {
+            body.putInt(o);
+        }
+        for (String host : reversed) {
+            body.put((byte) host.length());
+            for (int i = 0; i < host.length(); i++) {
+                body.put((byte) host.charAt(i));
+            }
+        }
+        crc.update(body.array(), 0, body.position());
+
+        File temp = new File(output.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body.array(), 0, body.position());
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("Unable to write " + output);
+        }
+        return offsets.length;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean matches(@NonNull CharSequence sequence, int start, int end) {
+        end = HostTrie.trimEnd(sequence, start, end);
+        // try every parent domain, from the top-level one down to the host itself
+        for (int i = end - 1; i >= start; i--) {
+            if ((i == start || sequence.charAt(i - 1) == '.') && contains(sequence, i, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addTo(@NonNull HostBloomFilter filter) {
+        int position = entriesStart;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.get(position) & 0xFF;
+            filter.addReversed(buffer, position + 1, length);
+            position += 1 + length;
+        }
+    }
+
+    private boolean contains(CharSequence sequence, int start, int end) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, sequence, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the entry at {@code index} with the host between {@code start}
+     * and {@code end} read in reverse.
+     * */
+    private int compare(int index, CharSequence sequence, int start, int end) {
+        int position = entriesStart + buffer.getInt(HEADER_SIZE + index * 4);
+        int length = buffer.get(position) & 0xFF;
+        int other = end - start;
+        int n = Math.min(length, other);
+        for (int i = 0; i < n; i++) {
+            int a = buffer.get(position + 1 + i) & 0xFF;
+            int b = HostTrie.lower(sequence.charAt(end - 1 - i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - other;
+    }
+
+}
\ No newline at end of file
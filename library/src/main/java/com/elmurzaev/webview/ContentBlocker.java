@@ -25,63 +25,453 @@
 package com.elmurzaev.webview;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is used to hold hosts that should be blocked by {@link WebView}.
+ * A blocked host also blocks all of its subdomains, so {@code example.com}
+ * in the list blocks {@code ads.example.com} as well.
+ * <p>
+ * The block list never changes once loaded and the whitelist is replaced as a
+ * whole on every change, so a blocker can be used from any thread and shared
+ * by any number of {@link WebView}s, see {@link #setDefault(ContentBlocker)}.
+ * Use {@link Builder} to derive a blocker with more hosts.
  * */
 public class ContentBlocker {
 
-    private final Set<String> blockedList = new HashSet<>();
-    private final Set<String> whiteList = new HashSet<>();
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
+    @Nullable
+    private static volatile ContentBlocker sDefault;
+
+    private final HostSet blockedList;
+    private volatile HostTrie whiteList;
+    @Nullable
+    private volatile HostBloomFilter prefilter;
+    @Nullable
+    private volatile HostDecisionCache cache = new HostDecisionCache(DEFAULT_CACHE_SIZE);
+    private final AtomicLong blockedCount = new AtomicLong();
 
     /**
-     * @param stream used to prepopulate block list.
+     * @param stream used to prepopulate block list. Besides one host per line,
+     *               hosts files ({@code 0.0.0.0 example.com}) and host-only Adblock
+     *               Plus rules ({@code ||example.com^}) are understood. Comments
+     *               are skipped and hosts are lower-cased, internationalized
+     *               hosts are converted to punycode. Use {@link BlockListIngester}
+     *               to merge several lists.
      * */
     public ContentBlocker(@NonNull InputStream stream) {
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                blockedList.add(line);
+        HostTrie trie = new HostTrie();
+        readHosts(stream, trie);
+        trie.trimToSize();
+        blockedList = trie;
+        whiteList = new HostTrie();
+    }
+
+    /**
+     * Opens a block list previously written by {@link #compile(InputStream, File)}.
+     * The file is memory-mapped instead of being read, so this takes the same
+     * time for any list size and hosts are not copied to the heap.
+     *
+     * @param compiledList file written by {@link #compile(InputStream, File)}.
+     * @throws IOException if the file can't be read or is not a compiled list.
+     * */
+    public ContentBlocker(@NonNull File compiledList) throws IOException {
+        blockedList = CompiledHostList.open(compiledList);
+        whiteList = new HostTrie();
+    }
+
+    private ContentBlocker(@NonNull HostSet blockedList, @NonNull HostTrie whiteList) {
+        this.blockedList = blockedList;
+        this.whiteList = whiteList;
+    }
+
+    /**
+     * @return blocker used by every {@link WebView} that has no blocker of its own.
+     * */
+    @Nullable
+    public static ContentBlocker getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Sets a blocker shared by every {@link WebView} that has no blocker of its
+     * own, so the list is held in memory only once. Calling this again, for example
+     * after the list is reloaded, swaps the blocker atomically: requests already
+     * being checked finish with the old one, later requests use the new one.
+     * Can be called from any thread.
+     * */
+    public static void setDefault(@Nullable ContentBlocker blocker) {
+        sDefault = blocker;
+    }
+
+    /**
+     * Same as {@link #ContentBlocker(InputStream)}, but the list is read on a
+     * background thread, so this returns immediately. The stream is closed
+     * once it's read.
+     * */
+    @NonNull
+    public static ContentBlockerLoader loadAsync(@NonNull InputStream stream) {
+        return loadAsync(stream, null);
+    }
+
+    /**
+     * @param executor used to read the list, or null to use a shared
+     *                 low priority background thread.
+     * @see #loadAsync(InputStream)
+     * */
+    @NonNull
+    public static ContentBlockerLoader loadAsync(@NonNull InputStream stream,
+                                                 @Nullable Executor executor) {
+        return new ContentBlockerLoader(() -> {
+            try (InputStream in = stream) {
+                return new ContentBlocker(in);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        }, executor);
+    }
+
+    /**
+     * Same as {@link #ContentBlocker(File)}, but the list is opened on
+     * a background thread, so this returns immediately.
+     * */
+    @NonNull
+    public static ContentBlockerLoader loadAsync(@NonNull File compiledList) {
+        return loadAsync(compiledList, null);
+    }
+
+    /**
+     * @param executor used to open the list, or null to use a shared
+     *                 low priority background thread.
+     * @see #loadAsync(File)
+     * */
+    @NonNull
+    public static ContentBlockerLoader loadAsync(@NonNull File compiledList,
+                                                 @Nullable Executor executor) {
+        return new ContentBlockerLoader(() -> new ContentBlocker(compiledList), executor);
+    }
+
+    /**
+     * Compiles a block list in any format supported by
+     * {@link #ContentBlocker(InputStream)} into a binary file that
+     * can be opened by {@link #ContentBlocker(File)}. Do this once, for example
+     * when the list is downloaded, and not on every start.
+     *
+     * @return number of hosts written. Hosts that are already blocked by one
+     * of their parent domains are not written.
+     * */
+    public static int compile(@NonNull InputStream stream, @NonNull File output)
+            throws IOException {
+        return CompiledHostList.compile(stream, output);
+    }
+
+    /**
+     * Reads the whole {@code compiledList} and validates its checksum.
+     *
+     * @return false if the file is missing, corrupted or was not
+     * written by {@link #compile(InputStream, File)}.
+     * */
+    public static boolean verifyCompiled(@NonNull File compiledList) {
+        return CompiledHostList.verify(compiledList);
+    }
+
+    /**
+     * Builds a Bloom filter over the block list that is checked before the list
+     * itself. Most hosts are not blocked, and the filter rejects them with a few
+     * bit tests. Building it reads the whole list, so for large lists call this
+     * on a background thread, for example from the executor passed to
+     * {@link #loadAsync(InputStream, Executor)}.
+     *
+     * @param falsePositiveRate probability of a host that is not blocked still
+     *                          being checked against the list. Lower rates use
+     *                          more memory, 0.01 takes about 1.2 bytes per host.
+     * */
+    public void enablePrefilter(double falsePositiveRate) {
+        HostBloomFilter filter = new HostBloomFilter(blockedList.size(), falsePositiveRate);
+        blockedList.addTo(filter);
+        prefilter = filter;
+    }
+
+    /**
+     * Removes the filter built by {@link #enablePrefilter(double)}.
+     * */
+    public void disablePrefilter() {
+        prefilter = null;
+    }
+
+    /**
+     * @return number of bytes used by the filter built by
+     * {@link #enablePrefilter(double)}, or 0 if it's not enabled.
+     * */
+    public long getPrefilterSizeInBytes() {
+        HostBloomFilter filter = prefilter;
+        return filter != null ? filter.sizeInBytes() : 0;
+    }
+
+    /**
+     * Pages request the same few hosts over and over, so decisions made by
+     * {@link #isBlocked(String)} are cached per host. The cache is cleared
+     * whenever the whitelist changes.
+     *
+     * @param entries maximum number of cached hosts, rounded up to a power
+     *                of two, or 0 to disable caching. Default is 512.
+     * */
+    public void setCacheSize(int entries) {
+        cache = entries > 0 ? new HostDecisionCache(entries) : null;
+    }
+
+    /**
+     * @return number of {@link #isBlocked(String)} calls answered from the cache.
+     * */
+    public long getCacheHitCount() {
+        HostDecisionCache c = cache;
+        return c != null ? c.hitCount() : 0;
+    }
+
+    /**
+     * @return number of {@link #isBlocked(String)} calls that missed the cache.
+     * */
+    public long getCacheMissCount() {
+        HostDecisionCache c = cache;
+        return c != null ? c.missCount() : 0;
     }
 
     /**
      * Add {@code host} to whitelist. It will not be
      * blocked if it's in this list, even if it's
-     * currently in the blocklist.
+     * currently in the blocklist. Subdomains of
+     * {@code host} are whitelisted too.
      * */
-    public void whiteList(String... host) {
-        whiteList.addAll(Arrays.asList(host));
+    public synchronized void whiteList(String... host) {
+        HostTrie copy = whiteList.copy();
+        for (String s : host) {
+            copy.add(s);
+        }
+        whiteList = copy;
+        clearCache();
     }
 
     /**
      * Remove {@code host} from whitelist if it was previously
      * added to it by {@link #whiteList(String...)}
      * */
-    public void removeFromWhiteList(@NonNull String... host) {
+    public synchronized void removeFromWhiteList(@NonNull String... host) {
+        HostTrie copy = whiteList.copy();
         for (String s : host) {
-            whiteList.remove(s);
+            copy.remove(s);
+        }
+        whiteList = copy;
+        clearCache();
+    }
+
+    /**
+     * @return true if {@code host} or any of its parent domains is
+     * blocked and neither of them is included in the whitelist.
+     * */
+    public boolean isBlocked(@Nullable String host) {
+        return host != null && isBlocked(host, 0, host.length());
+    }
+
+    /**
+     * @return number of times {@link #isBlocked(String)} returned true, including
+     * requests made by pages and by service workers.
+     * */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * Same as {@link #isBlocked(String)} for the host located between
+     * {@code start} and {@code end} of {@code sequence}.
+     * */
+    boolean isBlocked(@NonNull CharSequence sequence, int start, int end) {
+        boolean blocked = decide(sequence, start, end);
+        if (blocked) {
+            blockedCount.incrementAndGet();
+        }
+        return blocked;
+    }
+
+    private boolean decide(CharSequence sequence, int start, int end) {
+        HostDecisionCache c = cache;
+        if (c == null) {
+            return lookup(sequence, start, end);
+        }
+        int hash = HostDecisionCache.hash(sequence, start, end);
+        // read before the whitelist, so a decision racing with a whitelist change is discarded
+        int generation = c.generation();
+        int cached = c.get(sequence, start, end, hash);
+        if (cached != HostDecisionCache.MISS) {
+            return cached == HostDecisionCache.BLOCKED;
+        }
+        boolean blocked = lookup(sequence, start, end);
+        c.put(sequence, start, end, hash, generation, blocked);
+        return blocked;
+    }
+
+    private boolean lookup(CharSequence sequence, int start, int end) {
+        HostBloomFilter filter = prefilter;
+        if (filter != null && !filter.mightMatch(sequence, start, end)) {
+            return false;
+        }
+        return blockedList.matches(sequence, start, end)
+                && !whiteList.matches(sequence, start, end);
+    }
+
+    private void clearCache() {
+        HostDecisionCache c = cache;
+        if (c != null) {
+            c.clear();
+        }
+    }
+
+    private static void readHosts(@NonNull InputStream stream, @NonNull HostTrie trie) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            List<String> hosts = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                hosts.clear();
+                HostNormalizer.normalize(line, hosts);
+                for (String host : hosts) {
+                    trie.add(host);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
     /**
-     * @return true if {@code host} is blocked and not
-     * included in the whitelist.
+     * @return blocker backed by {@code blockedList}, which must not be modified afterwards.
+     * */
+    @NonNull
+    static ContentBlocker fromHosts(@NonNull HostTrie blockedList) {
+        return new ContentBlocker(blockedList, new HostTrie());
+    }
+
+    /**
+     * Creates new {@link ContentBlocker}s. A builder created from an existing
+     * blocker shares its block list instead of copying it, so adding a few hosts
+     * to a large list is cheap. The blocker it was created from is not changed.
      * */
-    public boolean isBlocked(String host) {
-        return blockedList.contains(host) && !whiteList.contains(host);
+    public static final class Builder {
+
+        @Nullable
+        private final HostSet base;
+        private final HostTrie blocked = new HostTrie();
+        private final HostTrie whiteList;
+
+        public Builder() {
+            base = null;
+            whiteList = new HostTrie();
+        }
+
+        /**
+         * @param blocker whose block list and whitelist are used as a starting point.
+         * */
+        public Builder(@NonNull ContentBlocker blocker) {
+            base = blocker.blockedList;
+            whiteList = blocker.whiteList.copy();
+        }
+
+        /**
+         * Blocks {@code host} and its subdomains. Invalid hosts are ignored.
+         * */
+        @NonNull
+        public Builder block(@NonNull String... host) {
+            for (String s : host) {
+                String normalized = HostNormalizer.normalizeHost(s);
+                if (normalized != null) {
+                    blocked.add(normalized);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Blocks every host from {@code stream}, in any format
+         * supported by {@link ContentBlocker#ContentBlocker(InputStream)}.
+         * */
+        @NonNull
+        public Builder block(@NonNull InputStream stream) {
+            readHosts(stream, blocked);
+            return this;
+        }
+
+        /**
+         * @see ContentBlocker#whiteList(String...)
+         * */
+        @NonNull
+        public Builder whiteList(@NonNull String... host) {
+            for (String s : host) {
+                whiteList.add(s);
+            }
+            return this;
+        }
+
+        /**
+         * @see ContentBlocker#removeFromWhiteList(String...)
+         * */
+        @NonNull
+        public Builder removeFromWhiteList(@NonNull String... host) {
+            for (String s : host) {
+                whiteList.remove(s);
+            }
+            return this;
+        }
+
+        /**
+         * @return new blocker, the builder can be used again afterwards.
+         * */
+        @NonNull
+        public ContentBlocker build() {
+            HostSet blockedList;
+            if (blocked.size() == 0 && base != null) {
+                blockedList = base;
+            } else {
+                HostTrie trie = blocked.copy();
+                trie.trimToSize();
+                blockedList = base != null ? new UnionHostSet(base, trie) : trie;
+            }
+            return new ContentBlocker(blockedList, whiteList.copy());
+        }
+    }
+
+    private static final class UnionHostSet implements HostSet {
+
+        private final HostSet first;
+        private final HostSet second;
+
+        UnionHostSet(@NonNull HostSet first, @NonNull HostSet second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+
+        @Override
+        public boolean matches(@NonNull CharSequence sequence, int start, int end) {
+            return first.matches(sequence, start, end) || second.matches(sequence, start, end);
+        }
+
+        @Override
+        public void addTo(@NonNull HostBloomFilter filter) {
+            first.addTo(filter);
+            second.addTo(filter);
+        }
     }
 
 }
\ No newline at end of file
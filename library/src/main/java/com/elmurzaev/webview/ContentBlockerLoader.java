@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.ValueCallback;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle of a {@link ContentBlocker} that is being loaded in the background.
+ * Obtain one from {@link ContentBlocker#loadAsync(java.io.InputStream)} or
+ * {@link ContentBlocker#loadAsync(java.io.File)} and pass it to
+ * {@link WebView#setContentBlockerLoader(ContentBlockerLoader)}.
+ * */
+public final class ContentBlockerLoader {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    @Nullable
+    private static ExecutorService sDefaultExecutor;
+
+    private final FutureTask<ContentBlocker> mTask;
+    private final List<ValueCallback<ContentBlocker>> mCallbacks = new ArrayList<>();
+
+    ContentBlockerLoader(@NonNull Callable<ContentBlocker> callable, @Nullable Executor executor) {
+        mTask = new FutureTask<ContentBlocker>(callable) {
+            @Override
+            protected void done() {
+                dispatchCallbacks();
+            }
+        };
+        (executor != null ? executor : defaultExecutor()).execute(mTask);
+    }
+
+    /**
+     * @return true if loading has finished, whether it succeeded or not.
+     * */
+    public boolean isDone() {
+        return mTask.isDone();
+    }
+
+    /**
+     * @return loaded blocker, or null if it's still loading or loading failed.
+     * */
+    @Nullable
+    public ContentBlocker getNow() {
+        return mTask.isDone() ? result() : null;
+    }
+
+    /**
+     * Blocks the calling thread until the blocker is loaded. Never call
+     * this on the main thread.
+     *
+     * @return loaded blocker, or null if loading failed or didn't finish in time.
+     * */
+    @Nullable
+    public ContentBlocker await(long timeout, @NonNull TimeUnit unit) {
+        try {
+            return mTask.get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // fall through
+        }
+        return null;
+    }
+
+    /**
+     * Adds a callback that is invoked on the main thread once loading finishes.
+     * It receives the loaded blocker, or null if loading failed. If loading has
+     * already finished, the callback is posted right away.
+     * */
+    public void addCallback(@NonNull ValueCallback<ContentBlocker> callback) {
+        synchronized (mCallbacks) {
+            if (!mTask.isDone()) {
+                mCallbacks.add(callback);
+                return;
+            }
+        }
+        sMainHandler.post(() -> callback.onReceiveValue(result()));
+    }
+
+    /**
+     * Cancels loading if it has not finished yet.
+     * */
+    public void cancel() {
+        mTask.cancel(true);
+    }
+
+    private void dispatchCallbacks() {
+        List<ValueCallback<ContentBlocker>> callbacks;
+        synchronized (mCallbacks) {
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+        }
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        ContentBlocker blocker = result();
+        sMainHandler.post(() -> {
+            for (ValueCallback<ContentBlocker> callback : callbacks) {
+                callback.onReceiveValue(blocker);
+            }
+        });
+    }
+
+    @Nullable
+    private ContentBlocker result() {
+        try {
+            return mTask.get();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static synchronized Executor defaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ContentBlockerLoader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+}
\ No newline at end of file
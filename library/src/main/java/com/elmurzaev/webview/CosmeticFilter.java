@@ -0,0 +1,312 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hides page elements using element hiding rules of Adblock Plus filter lists,
+ * such as {@code example.com##.ad-banner} or the generic {@code ##.ad-banner}.
+ * Rules are turned into style sheets that {@link WebView} injects once at
+ * document start, so pages don't lay out ad containers and there is no script
+ * work after the page loads.
+ * <p>
+ * The script with generic rules is built once and is the same for every page.
+ * Style sheets of sites are built on first use and cached.
+ * */
+public class CosmeticFilter {
+
+    private static final String HIDE = "{display:none!important}\n";
+    private static final int SITE_CACHE_SIZE = 64;
+    private static final String STYLE_INJECTION =
+            "if(!c)return;var s=document.createElement('style');s.textContent=c;"
+                    + "(document.head||document.documentElement).appendChild(s)})();";
+    private static final String[] UNSUPPORTED_SELECTORS = {
+            ":-abp-", ":has-text(", ":matches-css", ":upward(", ":xpath(", ":style(",
+            ":remove(", ":watch-attr(", ":min-text-length(", "+js("};
+
+    private final List<String> genericSelectors = new ArrayList<>();
+    // domain -> selectors, and domain -> selectors excluded on that domain
+    private final Map<String, List<String>> siteSelectors = new HashMap<>();
+    private final Map<String, Set<String>> exceptions = new HashMap<>();
+    private final Map<String, String> siteStyleSheets =
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > SITE_CACHE_SIZE;
+                }
+            };
+    @Nullable
+    private String genericScript;
+    private int ruleCount;
+
+    /**
+     * @param stream filter list, lines that are not element hiding rules are skipped.
+     * */
+    public CosmeticFilter(@NonNull InputStream stream) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addRule(line.trim());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return number of element hiding rules in use.
+     * */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return script that adds the style sheet of generic rules to any page,
+     * skipping rules disabled on the page's site by exception rules.
+     * */
+    @NonNull
+    synchronized String getGenericScript() {
+        if (genericScript == null) {
+            StringBuilder css = new StringBuilder();
+            Map<String, List<Integer>> lines = new HashMap<>();
+            for (int i = 0; i < genericSelectors.size(); i++) {
+                String selector = genericSelectors.get(i);
+                css.append(selector).append(HIDE);
+                List<Integer> list = lines.get(selector);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    lines.put(selector, list);
+                }
+                list.add(i);
+            }
+            // sites that disable some generic rules get the lines of those rules,
+            // which are dropped from the style sheet on their pages
+            StringBuilder overrides = new StringBuilder("{");
+            for (String domain : exceptions.keySet()) {
+                StringBuilder excluded = new StringBuilder();
+                for (String selector : exceptionsOf(domain)) {
+                    List<Integer> list = lines.get(selector);
+                    if (list == null) {
+                        continue;
+                    }
+                    for (int line : list) {
+                        excluded.append(excluded.length() > 0 ? "," : "").append(line);
+                    }
+                }
+                if (excluded.length() == 0) {
+                    continue;
+                }
+                if (overrides.length() > 1) {
+                    overrides.append(',');
+                }
+                overrides.append(quote(domain)).append(":[").append(excluded).append(']');
+            }
+            overrides.append('}');
+            genericScript = "(function(){var c=" + quote(css) + ",x=" + overrides
+                    + ",h=location.hostname;"
+                    + "while(h){if(Object.prototype.hasOwnProperty.call(x,h)){"
+                    + "var r=c.split('\\n'),d=x[h];"
+                    + "for(var j=0;j<d.length;j++)r[d[j]]='';c=r.join('\\n');break}"
+                    + "var i=h.indexOf('.');h=i<0?'':h.substring(i+1)}"
+                    + STYLE_INJECTION;
+        }
+        return genericScript;
+    }
+
+    /**
+     * @return script that adds the style sheet of rules specific to {@code host},
+     * or null if there are no such rules.
+     * */
+    @Nullable
+    String getSiteScript(@NonNull String host) {
+        String css = getSiteStyleSheet(host);
+        return css.isEmpty() ? null : "(function(){var c=" + quote(css) + ";" + STYLE_INJECTION;
+    }
+
+    /**
+     * @return style sheet hiding the elements matched by rules of
+     * {@code host} and its parent domains.
+     * */
+    @NonNull
+    public synchronized String getSiteStyleSheet(@NonNull String host) {
+        host = host.toLowerCase();
+        String css = siteStyleSheets.get(host);
+        if (css != null) {
+            return css;
+        }
+        Set<String> excluded = exceptionsOf(host);
+        List<String> selectors = new ArrayList<>();
+        for (String domain = host; domain != null; domain = parentOf(domain)) {
+            List<String> s = siteSelectors.get(domain);
+            if (s != null) {
+                selectors.addAll(s);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String selector : selectors) {
+            if (!excluded.contains(selector)) {
+                builder.append(selector).append(HIDE);
+            }
+        }
+        css = builder.toString();
+        siteStyleSheets.put(host, css);
+        return css;
+    }
+
+    private void addRule(String line) {
+        int separator = line.indexOf("##");
+        boolean isException = false;
+        if (separator < 0) {
+            separator = line.indexOf("#@#");
+            isException = separator >= 0;
+        }
+        if (separator < 0 || line.startsWith("!")) {
+            return;
+        }
+        String selector = line.substring(separator + (isException ? 3 : 2)).trim();
+        if (selector.isEmpty() || !isSupported(selector)) {
+            return;
+        }
+        String[] domains = separator > 0 ? line.substring(0, separator).toLowerCase().split(",")
+                : new String[0];
+        List<String> included = new ArrayList<>();
+        for (String domain : domains) {
+            domain = domain.trim();
+            if (domain.startsWith("~")) {
+                // hiding is disabled on this domain, same as an exception rule
+                add(exceptions, domain.substring(1), selector);
+            } else if (!domain.isEmpty() && !domain.endsWith(".*")) {
+                included.add(domain);
+            }
+        }
+        if (isException) {
+            for (String domain : included) {
+                add(exceptions, domain, selector);
+            }
+        } else if (domains.length == 0 || (included.isEmpty() && allExcluded(domains))) {
+            genericSelectors.add(selector);
+        } else {
+            for (String domain : included) {
+                List<String> list = siteSelectors.get(domain);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    siteSelectors.put(domain, list);
+                }
+                list.add(selector);
+            }
+        }
+        ruleCount++;
+    }
+
+    private Set<String> exceptionsOf(String host) {
+        Set<String> excluded = new HashSet<>();
+        for (String domain = host; domain != null; domain = parentOf(domain)) {
+            Set<String> set = exceptions.get(domain);
+            if (set != null) {
+                excluded.addAll(set);
+            }
+        }
+        return excluded;
+    }
+
+    private static boolean allExcluded(String[] domains) {
+        for (String domain : domains) {
+            if (!domain.trim().startsWith("~")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(Map<String, Set<String>> map, String domain, String selector) {
+        Set<String> set = map.get(domain);
+        if (set == null) {
+            set = new HashSet<>();
+            map.put(domain, set);
+        }
+        set.add(selector);
+    }
+
+    private static boolean isSupported(String selector) {
+        for (String unsupported : UNSUPPORTED_SELECTORS) {
+            if (selector.contains(unsupported)) {
+                return false;
+            }
+        }
+        // a selector must not be able to close the declaration block
+        return selector.indexOf('{') < 0 && selector.indexOf('}') < 0;
+    }
+
+    @Nullable
+    private static String parentOf(String domain) {
+        int dot = domain.indexOf('.');
+        return dot < 0 ? null : domain.substring(dot + 1);
+    }
+
+    private static String quote(CharSequence value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    builder.append('\\').append(c);
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '<':
+                    builder.append("\\u003c");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    builder.append(String.format("\\u%04x", (int) c));
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,258 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.net.http.HttpResponseCache;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lite browsing mode for metered connections. Drops images larger than a
+ * threshold, web fonts, media or third-party scripts, and once the bytes
+ * loaded by a page exceed its budget, drops its further non-essential
+ * requests. Pages, frames, style sheets, first-party scripts, XHR and
+ * requests of unknown type are essential and never dropped.
+ * <p>
+ * To learn the size of images and count the bytes of non-essential requests,
+ * it makes those requests itself while a size limit or a budget is set. They
+ * bypass WebView's HTTP cache, so unless the app installs an
+ * {@link HttpResponseCache}, which they use, images are downloaded again on
+ * every visit. Requests it makes are not seen by interceptors of lower
+ * priority, such as {@link ResponseCache}.
+ * Use one instance per {@link WebView}, as it tracks the page being loaded.
+ *
+ * @see WebView#setDataSaver(DataSaver)
+ * */
+public final class DataSaver implements RequestInterceptor {
+
+    private static final int NON_ESSENTIAL_TYPES = ResourceType.IMAGE | ResourceType.FONT
+            | ResourceType.MEDIA;
+    // set by HttpURLConnection of Android on responses read from HttpResponseCache
+    private static final String RESPONSE_SOURCE_HEADER = "X-Android-Response-Source";
+
+    private volatile long maxImageSize = -1;
+    private volatile long pageBudget = -1;
+    private volatile boolean blockFonts;
+    private volatile boolean blockMedia;
+    private volatile boolean blockThirdPartyScripts;
+
+    private final AtomicLong pageBytes = new AtomicLong();
+    private final AtomicLong pageBytesAvoided = new AtomicLong();
+    private final AtomicLong pageDroppedCount = new AtomicLong();
+    private final AtomicLong bytesAvoided = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @param bytes images with a larger {@code Content-Length} are dropped,
+     *              -1 to load images of any size, which is the default.
+     *              Images are fetched by this class while it's set, see above.
+     * */
+    public void setMaxImageSize(long bytes) {
+        maxImageSize = bytes;
+    }
+
+    /**
+     * @param bytes once a page loads more than this, its further non-essential
+     *              requests are dropped. -1 for no budget, which is the default.
+     *              Non-essential requests are fetched by this class while it's
+     *              set, see above.
+     * */
+    public void setPageBudget(long bytes) {
+        pageBudget = bytes;
+    }
+
+    public void setBlockFonts(boolean block) {
+        blockFonts = block;
+    }
+
+    public void setBlockMedia(boolean block) {
+        blockMedia = block;
+    }
+
+    public void setBlockThirdPartyScripts(boolean block) {
+        blockThirdPartyScripts = block;
+    }
+
+    /**
+     * @return bytes of non-essential requests loaded by the current page.
+     * */
+    public long getPageBytes() {
+        return pageBytes.get();
+    }
+
+    /**
+     * @return bytes the current page didn't load, counting dropped responses of
+     * known size only, requests dropped before they were made have none.
+     * */
+    public long getPageBytesAvoided() {
+        return pageBytesAvoided.get();
+    }
+
+    /**
+     * @return number of requests of the current page that were dropped.
+     * */
+    public long getPageDroppedCount() {
+        return pageDroppedCount.get();
+    }
+
+    /**
+     * @return same as {@link #getPageBytesAvoided()} for all pages.
+     * */
+    public long getBytesAvoided() {
+        return bytesAvoided.get();
+    }
+
+    /**
+     * @return same as {@link #getPageDroppedCount()} for all pages.
+     * */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Nullable
+    @Override
+    public WebResourceResponse intercept(@NonNull RequestContext context) {
+        if (context.isForMainFrame()) {
+            pageBytes.set(0);
+            pageBytesAvoided.set(0);
+            pageDroppedCount.set(0);
+            return null;
+        }
+        String scheme = context.getScheme();
+        if (!"https".equals(scheme) && !"http".equals(scheme)) {
+            return null;
+        }
+        int type = context.getResourceType();
+        boolean isThirdPartyScript = type == ResourceType.SCRIPT && context.isThirdParty();
+        if ((type & NON_ESSENTIAL_TYPES) == 0 && !isThirdPartyScript) {
+            return null;
+        }
+        if ((type == ResourceType.FONT && blockFonts)
+                || (type == ResourceType.MEDIA && blockMedia)
+                || (isThirdPartyScript && blockThirdPartyScripts)) {
+            return drop(0);
+        }
+        long budget = pageBudget;
+        if (budget >= 0 && pageBytes.get() >= budget) {
+            return drop(0);
+        }
+        long maxSize = type == ResourceType.IMAGE ? maxImageSize : -1;
+        // media is loaded in ranges WebView has to request itself
+        if ((maxSize < 0 && budget < 0) || type == ResourceType.MEDIA
+                || context.getRequest().getRequestHeaders().containsKey("Range")
+                || !"GET".equals(context.getRequest().getMethod())) {
+            return null;
+        }
+        return fetch(context, maxSize);
+    }
+
+    @Nullable
+    private WebResourceResponse fetch(@NonNull RequestContext context, long maxSize) {
+        String url = context.getUrl();
+        HttpURLConnection connection = null;
+        try {
+            connection = HttpFetcher.open(context.getRequest(), url);
+            // repeat visits load from the app's cache rather than the network
+            connection.setUseCaches(HttpResponseCache.getInstalled() != null);
+            int statusCode = connection.getResponseCode();
+            if (HttpFetcher.isPassedToWebView(statusCode)) {
+                connection.disconnect();
+                return null;
+            }
+            long contentLength = HttpFetcher.contentLengthOf(connection);
+            if (maxSize >= 0 && contentLength > maxSize) {
+                connection.disconnect();
+                return drop(contentLength);
+            }
+            HttpFetcher.storeCookies(connection, url);
+            String contentType = connection.getContentType();
+            return new WebResourceResponse(HttpFetcher.mimeTypeOf(contentType),
+                    HttpFetcher.encodingOf(contentType), statusCode,
+                    HttpFetcher.reasonPhraseOf(connection, statusCode),
+                    HttpFetcher.headersOf(connection),
+                    isFromCache(connection) ? HttpFetcher.bodyOf(connection, statusCode)
+                            : new CountingInputStream(HttpFetcher.bodyOf(connection, statusCode)));
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the response was read from {@link HttpResponseCache},
+     * which costs no data.
+     * */
+    private static boolean isFromCache(@NonNull HttpURLConnection connection) {
+        String source = connection.getHeaderField(RESPONSE_SOURCE_HEADER);
+        return source != null && source.startsWith("CACHE");
+    }
+
+    @NonNull
+    private WebResourceResponse drop(long bytes) {
+        pageDroppedCount.incrementAndGet();
+        droppedCount.incrementAndGet();
+        if (bytes > 0) {
+            pageBytesAvoided.addAndGet(bytes);
+            bytesAvoided.addAndGet(bytes);
+        }
+        return WebView.BLOCKED_RESPONSE;
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                pageBytes.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                pageBytes.addAndGet(count);
+            }
+            return count;
+        }
+    }
+
+}
\ No newline at end of file
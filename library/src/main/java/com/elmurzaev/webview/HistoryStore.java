@@ -0,0 +1,1176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pages visited, to complete what is typed in the address bar. Every page that
+ * loads is recorded with its title and visit count. Suggestions are the pages
+ * with a word in their host, url or title starting with what is typed, ranked
+ * by frecency: visits count for less the older they are.
+ * <p>
+ * Words are looked up in a sorted index built on a background thread. Pages
+ * visited since it was built are in a small index of their own, rebuilt more
+ * often, and pages visited since that one was built are searched one by one.
+ * Visits are appended to a log off the main thread, the log is compacted once
+ * it grows much larger than the history.
+ *
+ * @see WebView#setHistoryStore(HistoryStore)
+ * */
+public final class HistoryStore {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private static final int MAGIC = 0x57564853;
+    private static final int VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte RECORD_VISIT = 1;
+    private static final byte RECORD_PAGE = 2;
+    private static final byte RECORD_REMOVE = 3;
+    // the log is compacted once it has this many records per page, plus the slack
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_SLACK = 1024;
+    // writeUTF is limited to 64K bytes
+    private static final int MAX_URL_LENGTH = 4096;
+    private static final int MAX_TITLE_LENGTH = 256;
+
+    // a visit counts for half as much after 30 days
+    private static final double HALF_LIFE = 30d * 24 * 60 * 60 * 1000;
+    // ranks are log2 of frecency, so a host match is worth 8 times as many visits
+    private static final int KIND_HOST = 0;
+    private static final int KIND_TITLE = 1;
+    private static final int KIND_PATH = 2;
+    private static final double[] KIND_BONUS = {3, 1, 0};
+
+    private static final int MAX_WORDS = 24;
+    private static final int MAX_WORD_LENGTH = 32;
+    // short prefixes match too many words to rank on each keystroke, their best
+    // pages are ranked when the index is built
+    private static final int SHORT_PREFIX = 2;
+    private static final int SHORT_PREFIX_PAGES = 32;
+    // pages visited since the recent index was built are searched one by one,
+    // it is rebuilt once there are this many
+    private static final int MAX_PENDING = 64;
+    // the whole index is rebuilt once this many pages were visited since it was
+    private static final int MAX_RECENT = 8192;
+    // pages matched against each term of a query of several, at most, the
+    // best of them are suggested if there are more
+    private static final int MAX_MATCHED_PAGES = 500;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HistoryStore");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final File file;
+    private final int maxEntries;
+    // url without fragment -> page
+    private final HashMap<String, Page> pages = new HashMap<>();
+    // pages visited since the index was built
+    private final List<Page> recent = new ArrayList<>();
+    // pages visited since the recent index was built
+    private final List<Page> pending = new ArrayList<>();
+    private Index index = Index.EMPTY;
+    private Index recentIndex = Index.EMPTY;
+    private boolean rebuildScheduled;
+    // counts changes, to skip those already written when the log is compacted
+    private long sequence;
+    private int clearCount;
+    private int queryMark;
+
+    // accessed on the executor only
+    private DataOutputStream out;
+    private int records;
+    private long compactedSequence;
+
+    /**
+     * @param file file used only by this store, created if needed.
+     * */
+    public HistoryStore(@NonNull File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param file       file used only by this store, created if needed.
+     * @param maxEntries number of pages kept, the least frecent are removed first.
+     * */
+    public HistoryStore(@NonNull File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        sExecutor.execute(this::load);
+    }
+
+    /**
+     * Records a visit to {@code url}, urls that differ only by fragment are the same page.
+     *
+     * @param title title of the page, or null if it has none.
+     * */
+    public void addVisit(@NonNull String url, @Nullable String title) {
+        addVisit(url, title, System.currentTimeMillis());
+    }
+
+    void addVisit(@NonNull String url, @Nullable String title, long time) {
+        String key = keyOf(url);
+        if (key == null) {
+            return;
+        }
+        String pageTitle = titleOf(title, key);
+        long sequence;
+        boolean rebuild = false;
+        synchronized (this) {
+            Page page = visit(key, pageTitle, time);
+            if (!page.recent) {
+                page.recent = true;
+                recent.add(page);
+            }
+            if (!page.pending) {
+                page.pending = true;
+                pending.add(page);
+            }
+            sequence = ++this.sequence;
+            if (pending.size() >= MAX_PENDING && !rebuildScheduled) {
+                rebuildScheduled = true;
+                rebuild = true;
+            }
+        }
+        sExecutor.execute(() -> write(sequence, out -> {
+            out.writeByte(RECORD_VISIT);
+            out.writeUTF(key);
+            out.writeUTF(pageTitle != null ? pageTitle : "");
+            out.writeLong(time);
+        }));
+        if (rebuild) {
+            sExecutor.execute(() -> rebuild(false, false));
+        }
+    }
+
+    /**
+     * Suggests pages for what is typed in the address bar. Each word typed has to
+     * start a word of the host, url or title of a page, or the url without scheme
+     * and {@code www.} has to start with it if it contains a slash. Pages rank by
+     * frecency, higher if the words start their host rather than words of their title
+     * or url. When several words are typed only the best pages with the least common
+     * of them are matched against the others.
+     *
+     * @param text  text typed so far.
+     * @param limit maximum number of pages to suggest.
+     * @return pages, the best suggestion first.
+     * */
+    @NonNull
+    public List<Entry> suggest(@NonNull String text, int limit) {
+        String[] terms = termsOf(text);
+        if (terms.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        synchronized (this) {
+            // pages are looked up by the term with the fewest, and matched against the rest
+            String term = null;
+            int fewest = Integer.MAX_VALUE;
+            for (String t : terms) {
+                int slash = t.indexOf('/');
+                if (slash == 0) {
+                    return Collections.emptyList();
+                }
+                // typed a url, look up its host
+                String lookup = slash > 0 ? t.substring(0, slash) : t;
+                int count = index.count(lookup) + recentIndex.count(lookup);
+                if (count < fewest) {
+                    term = lookup;
+                    fewest = count;
+                }
+            }
+            Ranking ranking = new Ranking(limit, terms, term, ++queryMark);
+            // the best pages of the term need not be the best of the query,
+            // those may rank lower by their other terms
+            boolean shortPrefix = ranking.isSingleTerm()
+                    && term.length() <= SHORT_PREFIX && limit <= SHORT_PREFIX_PAGES;
+            Page[] best = shortPrefix ? index.shortPrefixes.get(term) : null;
+            Page[] recentBest = shortPrefix ? recentIndex.shortPrefixes.get(term) : null;
+            int matched = ranking.offerAll(best);
+            int recentMatched = ranking.offerAll(recentBest);
+            for (Page page : pending) {
+                ranking.offer(page);
+            }
+            // pages that were not among the best of an index when it was built have not
+            // been visited since, so they cannot outrank those, unless too few of those match
+            if (!shortPrefix || best != null && best.length == SHORT_PREFIX_PAGES && matched < limit) {
+                index.search(term, ranking, false);
+            }
+            if (!shortPrefix || recentBest != null && recentBest.length == SHORT_PREFIX_PAGES
+                    && recentMatched < limit) {
+                recentIndex.search(term, ranking, true);
+            }
+            return ranking.toEntries();
+        }
+    }
+
+    /**
+     * @return page at {@code url}, or null if it was never visited.
+     * */
+    @Nullable
+    public synchronized Entry get(@NonNull String url) {
+        String key = keyOf(url);
+        Page page = key != null ? pages.get(key) : null;
+        return page != null ? page.toEntry() : null;
+    }
+
+    /**
+     * @return number of pages visited.
+     * */
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    /**
+     * Removes the page at {@code url} and its visits.
+     * */
+    public void remove(@NonNull String url) {
+        String key = keyOf(url);
+        if (key == null) {
+            return;
+        }
+        long sequence;
+        synchronized (this) {
+            Page page = pages.remove(key);
+            if (page == null) {
+                return;
+            }
+            page.removed = true;
+            sequence = ++this.sequence;
+        }
+        sExecutor.execute(() -> write(sequence, out -> {
+            out.writeByte(RECORD_REMOVE);
+            out.writeUTF(key);
+        }));
+    }
+
+    /**
+     * Removes all pages, the file is emptied too.
+     * */
+    public void clear() {
+        long sequence;
+        synchronized (this) {
+            for (Page page : pages.values()) {
+                page.removed = true;
+            }
+            pages.clear();
+            recent.clear();
+            pending.clear();
+            index = Index.EMPTY;
+            recentIndex = Index.EMPTY;
+            clearCount++;
+            sequence = ++this.sequence;
+        }
+        sExecutor.execute(() -> compact(new Entry[0], sequence));
+    }
+
+    /**
+     * Rebuilds the index now rather than once enough pages were visited.
+     * */
+    @NonNull
+    Future<?> rebuildIndex() {
+        return sExecutor.submit(() -> rebuild(true, false));
+    }
+
+    /**
+     * Applies a visit, under the lock.
+     * */
+    private Page visit(@NonNull String key, @Nullable String title, long time) {
+        Page page = pageOf(key);
+        if (time >= page.lastVisit) {
+            page.title = title;
+            page.lastVisit = time;
+        }
+        page.visitCount++;
+        page.score = addScores(page.score, time / HALF_LIFE);
+        return page;
+    }
+
+    private Page pageOf(@NonNull String key) {
+        Page page = pages.get(key);
+        if (page == null) {
+            page = new Page(key, Urls.findHost(key));
+            pages.put(key, page);
+        }
+        return page;
+    }
+
+    @WorkerThread
+    private void load() {
+        boolean intact = true;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Unknown history");
+                }
+                int type;
+                while ((type = in.read()) != -1) {
+                    read(in, type);
+                    records++;
+                }
+            } catch (IOException e) {
+                // the last record was cut short, or the log is damaged,
+                // rewrite what could be read before appending to it
+                intact = false;
+            }
+        }
+        rebuild(true, !intact);
+    }
+
+    @WorkerThread
+    private void read(@NonNull DataInputStream in, int type) throws IOException {
+        switch (type) {
+            case RECORD_VISIT: {
+                String key = in.readUTF();
+                String title = in.readUTF();
+                long time = in.readLong();
+                synchronized (this) {
+                    visit(key, title.isEmpty() ? null : title, time);
+                }
+                break;
+            }
+            case RECORD_PAGE: {
+                String key = in.readUTF();
+                String title = in.readUTF();
+                int visitCount = in.readInt();
+                long lastVisit = in.readLong();
+                double score = in.readDouble();
+                synchronized (this) {
+                    Page page = pageOf(key);
+                    if (lastVisit >= page.lastVisit) {
+                        page.title = title.isEmpty() ? null : title;
+                        page.lastVisit = lastVisit;
+                    }
+                    page.visitCount += visitCount;
+                    page.score = addScores(page.score, score);
+                }
+                break;
+            }
+            case RECORD_REMOVE: {
+                String key = in.readUTF();
+                synchronized (this) {
+                    Page page = pages.remove(key);
+                    if (page != null) {
+                        page.removed = true;
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record " + type);
+        }
+    }
+
+    /**
+     * @param full    true to rebuild the whole index, otherwise only the recent index
+     *                is unless too many pages were visited since the whole one was.
+     * @param compact true to compact the log even if it is not much larger than the history.
+     * */
+    @WorkerThread
+    private void rebuild(boolean full, boolean compact) {
+        Page[] snapshot;
+        String[] titles;
+        double[] scores;
+        Entry[] entries = null;
+        long sequence;
+        int clearCount;
+        synchronized (this) {
+            rebuildScheduled = false;
+            full |= recent.size() >= MAX_RECENT;
+            if (full) {
+                compact |= evict();
+                for (Page page : recent) {
+                    page.recent = false;
+                }
+                recent.clear();
+            }
+            Collection<Page> pages = full ? this.pages.values() : recent;
+            snapshot = pages.toArray(new Page[0]);
+            titles = new String[snapshot.length];
+            scores = new double[snapshot.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                titles[i] = snapshot[i].title;
+                scores[i] = snapshot[i].score;
+            }
+            for (Page page : pending) {
+                page.pending = false;
+            }
+            pending.clear();
+            sequence = this.sequence;
+            clearCount = this.clearCount;
+            compact |= records > COMPACT_RATIO * this.pages.size() + COMPACT_SLACK;
+            if (compact) {
+                entries = new Entry[this.pages.size()];
+                int i = 0;
+                for (Page page : this.pages.values()) {
+                    entries[i++] = page.toEntry();
+                }
+            }
+        }
+        if (entries != null) {
+            compact(entries, sequence);
+        }
+        Index index = new Index(snapshot, titles, scores);
+        synchronized (this) {
+            // unless cleared while the index was built
+            if (this.clearCount == clearCount) {
+                if (full) {
+                    // pages of the recent index are in this one
+                    this.index = index;
+                    recentIndex = Index.EMPTY;
+                } else {
+                    recentIndex = index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the least frecent pages over the limit, under the lock.
+     *
+     * @return true if any were removed.
+     * */
+    private boolean evict() {
+        int excess = pages.size() - maxEntries;
+        if (excess <= 0) {
+            return false;
+        }
+        double[] scores = new double[pages.size()];
+        int i = 0;
+        for (Page page : pages.values()) {
+            scores[i++] = page.score;
+        }
+        Arrays.sort(scores);
+        double threshold = scores[excess - 1];
+        for (Iterator<Page> iterator = pages.values().iterator();
+             iterator.hasNext() && excess > 0; ) {
+            Page page = iterator.next();
+            if (page.score <= threshold) {
+                iterator.remove();
+                page.removed = true;
+                excess--;
+            }
+        }
+        return true;
+    }
+
+    @WorkerThread
+    private void write(long sequence, @NonNull Record record) {
+        // already in the compacted log
+        if (sequence <= compactedSequence) {
+            return;
+        }
+        try {
+            if (out == null) {
+                boolean empty = file.length() == 0;
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (empty) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                }
+            }
+            record.writeTo(out);
+            out.flush();
+            records++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeLog();
+        }
+    }
+
+    @WorkerThread
+    private void compact(@NonNull Entry[] entries, long sequence) {
+        closeLog();
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Entry entry : entries) {
+                out.writeByte(RECORD_PAGE);
+                out.writeUTF(entry.url);
+                out.writeUTF(entry.title != null ? entry.title : "");
+                out.writeInt(entry.visitCount);
+                out.writeLong(entry.lastVisit);
+                out.writeDouble(entry.score);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (temp.renameTo(file)) {
+            records = entries.length;
+            compactedSequence = sequence;
+        }
+    }
+
+    @WorkerThread
+    private void closeLog() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * @return {@code url} without fragment, or null if it has no host or is too long to keep.
+     * */
+    @Nullable
+    private static String keyOf(@NonNull String url) {
+        int hash = url.indexOf('#');
+        String key = hash < 0 ? url : url.substring(0, hash);
+        if (key.length() > MAX_URL_LENGTH || Urls.findHost(key) == Urls.NO_HOST) {
+            return null;
+        }
+        return key;
+    }
+
+    @Nullable
+    private static String titleOf(@Nullable String title, @NonNull String url) {
+        if (title == null) {
+            return null;
+        }
+        title = title.trim();
+        // pages without a title are titled with their url
+        if (title.isEmpty() || url.endsWith(title)) {
+            return null;
+        }
+        return title.length() > MAX_TITLE_LENGTH ? title.substring(0, MAX_TITLE_LENGTH) : title;
+    }
+
+    /**
+     * @return words typed, lower case, without the scheme and {@code www.} of a url.
+     * */
+    @NonNull
+    static String[] termsOf(@NonNull String text) {
+        String query = text.trim().toLowerCase(Locale.ROOT);
+        if (query.startsWith("https://")) {
+            query = query.substring(8);
+        } else if (query.startsWith("http://")) {
+            query = query.substring(7);
+        }
+        if (query.startsWith("www.")) {
+            query = query.substring(4);
+        }
+        List<String> terms = new ArrayList<>(1);
+        int i = 0;
+        while (i < query.length()) {
+            int end = i;
+            while (end < query.length() && !Character.isWhitespace(query.charAt(end))) {
+                end++;
+            }
+            if (end > i) {
+                terms.add(query.substring(i, end));
+            }
+            i = end + 1;
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    /**
+     * @return sum of two frecencies, in log2.
+     * */
+    private static double addScores(double a, double b) {
+        double max = Math.max(a, b);
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        return max + Math.log(1 + Math.pow(2, Math.min(a, b) - max)) / Math.log(2);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * @return true if a word of {@code s} between {@code start} and {@code end}
+     * starts with {@code term}.
+     * */
+    private static boolean hasWord(@NonNull String s, int start, int end, @NonNull String term) {
+        int last = end - term.length();
+        for (int i = start; i <= last; i++) {
+            if ((i == start || !isWordChar(s.charAt(i - 1))) && isWordChar(s.charAt(i))
+                    && s.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Page of the history, as it was when returned.
+     * */
+    public static final class Entry {
+
+        private final String url;
+        private final String title;
+        private final int visitCount;
+        private final long lastVisit;
+        private final double score;
+
+        Entry(@NonNull String url, @Nullable String title, int visitCount, long lastVisit, double score) {
+            this.url = url;
+            this.title = title;
+            this.visitCount = visitCount;
+            this.lastVisit = lastVisit;
+            this.score = score;
+        }
+
+        @NonNull
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return title the page had on its last visit, or null if it had none.
+         * */
+        @Nullable
+        public String getTitle() {
+            return title;
+        }
+
+        public int getVisitCount() {
+            return visitCount;
+        }
+
+        /**
+         * @return wall clock time of the last visit.
+         * */
+        public long getLastVisit() {
+            return lastVisit;
+        }
+    }
+
+    private interface Record {
+
+        void writeTo(@NonNull DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Page of the history, mutable under the store lock.
+     * */
+    private static final class Page {
+
+        final String url;
+        // host without www.
+        final int hostStart;
+        final int hostEnd;
+        String title;
+        int visitCount;
+        long lastVisit = Long.MIN_VALUE;
+        // log2 of the sum of 2^(visit time / half life) over visits
+        double score = Double.NEGATIVE_INFINITY;
+        boolean recent;
+        boolean pending;
+        boolean removed;
+        // last query that matched this page, and whether it matched
+        int mark;
+        boolean matched;
+
+        Page(@NonNull String url, long host) {
+            this.url = url;
+            int start = Urls.hostStart(host);
+            this.hostStart = url.regionMatches(true, start, "www.", 0, 4) ? start + 4 : start;
+            this.hostEnd = Urls.hostEnd(host);
+        }
+
+        /**
+         * @return kind of the best word that starts with {@code term}, or -1 if
+         * none does.
+         * */
+        int match(@NonNull String term) {
+            if (term.indexOf('/') >= 0) {
+                return url.regionMatches(true, hostStart, term, 0, term.length()) ? KIND_HOST : -1;
+            }
+            // the host or any domain of it, except the top level
+            if (hostStartsWith(hostStart, term)) {
+                return KIND_HOST;
+            }
+            int lastDot = url.lastIndexOf('.', hostEnd - 1);
+            for (int i = hostStart; i < lastDot; i++) {
+                if (url.charAt(i) == '.' && hostStartsWith(i + 1, term)) {
+                    return KIND_HOST;
+                }
+            }
+            if (title != null && hasWord(title, 0, title.length(), term)) {
+                return KIND_TITLE;
+            }
+            if (hasWord(url, hostEnd, url.length(), term)) {
+                return KIND_PATH;
+            }
+            return -1;
+        }
+
+        private boolean hostStartsWith(int start, @NonNull String term) {
+            return start + term.length() <= hostEnd
+                    && url.regionMatches(true, start, term, 0, term.length());
+        }
+
+        Entry toEntry() {
+            return new Entry(url, title, visitCount, lastVisit, score);
+        }
+    }
+    /**
+     * Best pages of a query, best first. A page ranks by its frecency and the kind
+     * of word each term matched, the worst of them.
+     * */
+    private static final class Ranking {
+
+        private final String[] terms;
+        private final boolean singleTerm;
+        private final int mark;
+        private final Page[] pages;
+        private final double[] ranks;
+        private int size;
+        private int matchedPages;
+
+        /**
+         * @param term term pages are looked up by.
+         * */
+        Ranking(int limit, @NonNull String[] terms, @NonNull String term, int mark) {
+            this.terms = terms;
+            this.singleTerm = terms.length == 1 && terms[0].equals(term);
+            this.mark = mark;
+            this.pages = new Page[limit];
+            this.ranks = new double[limit];
+        }
+
+        boolean isFull() {
+            return size == pages.length;
+        }
+
+        /**
+         * @return true if pages are looked up by the only term of the query, so a word
+         * that starts with the term is all a page needs to match.
+         * */
+        boolean isSingleTerm() {
+            return singleTerm;
+        }
+
+        /**
+         * @return false if too many pages were matched against the query to look up more.
+         * */
+        boolean canMatchMore() {
+            return matchedPages < MAX_MATCHED_PAGES;
+        }
+
+        /**
+         * @return rank a page needs to exceed to be ranked.
+         * */
+        double getLowestRank() {
+            return isFull() ? ranks[size - 1] : Double.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * @return number of {@code pages} that match the query.
+         * */
+        int offerAll(@Nullable Page[] pages) {
+            int matched = 0;
+            if (pages != null) {
+                for (Page page : pages) {
+                    if (offer(page)) {
+                        matched++;
+                    }
+                }
+            }
+            return matched;
+        }
+
+        /**
+         * @return true if the page matches the query.
+         * */
+        boolean offer(@NonNull Page page) {
+            if (page.mark == mark) {
+                return page.matched;
+            }
+            page.mark = mark;
+            page.matched = false;
+            if (page.removed) {
+                return false;
+            }
+            matchedPages++;
+            int worst = KIND_HOST;
+            for (String term : terms) {
+                int kind = page.match(term);
+                if (kind < 0) {
+                    return false;
+                }
+                worst = Math.max(worst, kind);
+            }
+            page.matched = true;
+            add(page, page.score + KIND_BONUS[worst]);
+            return true;
+        }
+
+        /**
+         * Offers a page known to have a word of {@code kind} that starts with the
+         * term it was looked up by.
+         * */
+        void offer(@NonNull Page page, int kind) {
+            if (!singleTerm) {
+                offer(page);
+            } else if (!page.removed) {
+                // its other words may match better
+                add(page, page.score + KIND_BONUS[kind]);
+            }
+        }
+
+        private void add(@NonNull Page page, double rank) {
+            int i = 0;
+            while (i < size && pages[i] != page) {
+                i++;
+            }
+            if (i < size) {
+                // ranked already, by another of its words
+                if (rank <= ranks[i]) {
+                    return;
+                }
+            } else if (isFull()) {
+                if (rank <= ranks[size - 1]) {
+                    return;
+                }
+                i = size - 1;
+            } else {
+                i = size++;
+            }
+            while (i > 0 && ranks[i - 1] < rank) {
+                pages[i] = pages[i - 1];
+                ranks[i] = ranks[i - 1];
+                i--;
+            }
+            pages[i] = page;
+            ranks[i] = rank;
+        }
+
+        List<Entry> toEntries() {
+            List<Entry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(pages[i].toEntry());
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Words of the pages sorted, each with the pages it is in, immutable.
+     * */
+    private static final class Index {
+
+        static final Index EMPTY = new Index(new Page[0], new String[0], new double[0]);
+
+        // ranks are stored as floats, they may be off by this much
+        private static final float RANK_ERROR = 1e-3f;
+
+        private final String[] words;
+        // pages of words[i] are postings[offsets[i]] to postings[offsets[i + 1]],
+        // the best ranked first, with the kind and rank the word gives them
+        private final int[] offsets;
+        private final Page[] postings;
+        private final byte[] kinds;
+        private final float[] ranks;
+        private final Map<String, Page[]> shortPrefixes = new HashMap<>();
+
+        @WorkerThread
+        Index(@NonNull Page[] pages, @NonNull String[] titles, @NonNull double[] scores) {
+            // word -> {next posting of the word, number of pages with it}
+            HashMap<String, int[]> postingsOf = new HashMap<>();
+            int[][][] pageWords = new int[pages.length][][];
+            byte[][] pageKinds = new byte[pages.length][];
+            List<String> words = new ArrayList<>(MAX_WORDS);
+            List<Integer> kinds = new ArrayList<>(MAX_WORDS);
+            for (int i = 0; i < pages.length; i++) {
+                words.clear();
+                kinds.clear();
+                wordsOf(pages[i], titles[i], words, kinds);
+                pageWords[i] = new int[words.size()][];
+                pageKinds[i] = new byte[words.size()];
+                for (int j = 0; j < words.size(); j++) {
+                    int[] postingsOfWord = postingsOf.get(words.get(j));
+                    if (postingsOfWord == null) {
+                        postingsOfWord = new int[2];
+                        postingsOf.put(words.get(j), postingsOfWord);
+                    }
+                    postingsOfWord[1]++;
+                    pageWords[i][j] = postingsOfWord;
+                    pageKinds[i][j] = (byte) (int) kinds.get(j);
+                }
+            }
+            this.words = postingsOf.keySet().toArray(new String[0]);
+            Arrays.sort(this.words);
+            offsets = new int[this.words.length + 1];
+            int longest = 0;
+            for (int i = 0; i < this.words.length; i++) {
+                int[] postingsOfWord = postingsOf.get(this.words[i]);
+                offsets[i + 1] = offsets[i] + postingsOfWord[1];
+                postingsOfWord[0] = offsets[i];
+                longest = Math.max(longest, postingsOfWord[1]);
+            }
+            postings = new Page[offsets[this.words.length]];
+            this.kinds = new byte[postings.length];
+            ranks = new float[postings.length];
+            for (int i = 0; i < pages.length; i++) {
+                for (int j = 0; j < pageWords[i].length; j++) {
+                    int posting = pageWords[i][j][0]++;
+                    postings[posting] = pages[i];
+                    this.kinds[posting] = pageKinds[i][j];
+                    // ranks are positive for visits since 1970
+                    ranks[posting] = (float) Math.max(0, scores[i] + KIND_BONUS[pageKinds[i][j]]);
+                }
+            }
+            sortPostings(longest);
+            for (int length = 1; length <= SHORT_PREFIX; length++) {
+                rankShortPrefixes(length);
+            }
+        }
+
+        /**
+         * @return number of postings of words starting with {@code term}.
+         * */
+        int count(@NonNull String term) {
+            int from = lowerBound(term);
+            return offsets[upperBound(term, from)] - offsets[from];
+        }
+
+        /**
+         * Offers the pages with a word starting with {@code term} to {@code ranking}.
+         *
+         * @param recent true if this is the index of recently visited pages.
+         * */
+        void search(@NonNull String term, @NonNull Ranking ranking, boolean recent) {
+            int from = lowerBound(term);
+            int to = upperBound(term, from);
+            for (int word = from; word < to; word++) {
+                for (int i = offsets[word]; i < offsets[word + 1]; i++) {
+                    if (!ranking.canMatchMore()) {
+                        return;
+                    }
+                    // the rest of the pages of the word rank lower, except those visited
+                    // since the index was built, which are offered by the newer indexes
+                    if (ranks[i] + RANK_ERROR <= ranking.getLowestRank()) {
+                        break;
+                    }
+                    Page page = postings[i];
+                    if (page.pending || !recent && page.recent) {
+                        // its words may have changed
+                        ranking.offer(page);
+                    } else {
+                        ranking.offer(page, kinds[i]);
+                    }
+                }
+            }
+        }
+
+        private int lowerBound(@NonNull String term) {
+            int low = 0;
+            int high = words.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (words[mid].compareTo(term) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int upperBound(@NonNull String term, int from) {
+            int low = from;
+            int high = words.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (words[mid].startsWith(term)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Sorts the postings of each word by rank, best first.
+         * */
+        @WorkerThread
+        private void sortPostings(int longest) {
+            // rank bits in the high half, to sort positive floats as longs
+            long[] keys = new long[longest];
+            Page[] sortedPostings = new Page[longest];
+            byte[] sortedKinds = new byte[longest];
+            for (int word = 0; word < words.length; word++) {
+                int from = offsets[word];
+                int count = offsets[word + 1] - from;
+                if (count < 2) {
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    keys[i] = (long) Float.floatToIntBits(ranks[from + i]) << 32 | i;
+                }
+                Arrays.sort(keys, 0, count);
+                for (int i = 0; i < count; i++) {
+                    int j = from + (int) keys[count - 1 - i];
+                    sortedPostings[i] = postings[j];
+                    sortedKinds[i] = kinds[j];
+                }
+                for (int i = 0; i < count; i++) {
+                    postings[from + i] = sortedPostings[i];
+                    kinds[from + i] = sortedKinds[i];
+                    ranks[from + i] = Float.intBitsToFloat((int) (keys[count - 1 - i] >>> 32));
+                }
+            }
+        }
+
+        @WorkerThread
+        private void rankShortPrefixes(int length) {
+            Page[] best = new Page[SHORT_PREFIX_PAGES];
+            float[] bestRanks = new float[SHORT_PREFIX_PAGES];
+            int from = 0;
+            while (from < words.length) {
+                if (words[from].length() < length) {
+                    from++;
+                    continue;
+                }
+                String prefix = words[from].substring(0, length);
+                int to = upperBound(prefix, from);
+                int size = 0;
+                for (int word = from; word < to; word++) {
+                    for (int i = offsets[word]; i < offsets[word + 1]; i++) {
+                        float rank = ranks[i];
+                        if (size == SHORT_PREFIX_PAGES && rank <= bestRanks[size - 1]) {
+                            // the rest of the pages of the word rank lower
+                            break;
+                        }
+                        // a page is in as many postings as it has words with the prefix
+                        int j = 0;
+                        while (j < size && best[j] != postings[i]) {
+                            j++;
+                        }
+                        if (j < size) {
+                            if (rank <= bestRanks[j]) {
+                                continue;
+                            }
+                        } else {
+                            j = size == SHORT_PREFIX_PAGES ? size - 1 : size++;
+                        }
+                        while (j > 0 && bestRanks[j - 1] < rank) {
+                            best[j] = best[j - 1];
+                            bestRanks[j] = bestRanks[j - 1];
+                            j--;
+                        }
+                        best[j] = postings[i];
+                        bestRanks[j] = rank;
+                    }
+                }
+                shortPrefixes.put(prefix, Arrays.copyOf(best, size));
+                from = to;
+            }
+        }
+
+        /**
+         * Adds the words of a page to {@code words}, with their kind, the best if a word
+         * is in several places.
+         * */
+        @WorkerThread
+        private static void wordsOf(@NonNull Page page, @Nullable String title,
+                                    @NonNull List<String> words, @NonNull List<Integer> kinds) {
+            String url = page.url.toLowerCase(Locale.ROOT);
+            if (url.length() != page.url.length()) {
+                // the bounds of the host would not match
+                url = page.url;
+            }
+            String host = url.substring(page.hostStart, page.hostEnd);
+            int lastDot = host.lastIndexOf('.');
+            addWord(host, KIND_HOST, words, kinds);
+            for (int i = host.indexOf('.'); i >= 0 && i < lastDot; i = host.indexOf('.', i + 1)) {
+                addWord(host.substring(i + 1), KIND_HOST, words, kinds);
+            }
+            if (title != null) {
+                addWords(title.toLowerCase(Locale.ROOT), 0, KIND_TITLE, words, kinds);
+            }
+            addWords(url, page.hostEnd, KIND_PATH, words, kinds);
+        }
+
+        private static void addWords(@NonNull String s, int start, int kind,
+                                     @NonNull List<String> words, @NonNull List<Integer> kinds) {
+            int length = s.length();
+            int i = start;
+            while (i < length && words.size() < MAX_WORDS) {
+                while (i < length && !isWordChar(s.charAt(i))) {
+                    i++;
+                }
+                int end = i;
+                while (end < length && isWordChar(s.charAt(end))) {
+                    end++;
+                }
+                if (end > i && end - i <= MAX_WORD_LENGTH) {
+                    addWord(s.substring(i, end), kind, words, kinds);
+                }
+                i = end;
+            }
+        }
+
+        private static void addWord(@NonNull String word, int kind,
+                                    @NonNull List<String> words, @NonNull List<Integer> kinds) {
+            int i = words.indexOf(word);
+            if (i < 0) {
+                if (words.size() < MAX_WORDS) {
+                    words.add(word);
+                    kinds.add(kind);
+                }
+            } else if (kind < kinds.get(i)) {
+                kinds.set(i, kind);
+            }
+        }
+    }
+}
\ No newline at end of file
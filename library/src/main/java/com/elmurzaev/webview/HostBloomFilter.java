@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over hosts that answers whether the host or any of its
+ * parent domains might be in a {@link HostSet}. A negative answer is always
+ * correct, so most hosts that are not blocked are rejected with a few bit
+ * tests and never reach the exact set.
+ * <p>
+ * Hosts are hashed from the last character to the first, so the hash of every
+ * parent domain is an intermediate value of the hash of the host and all of
+ * them are computed in a single pass.
+ * */
+final class HostBloomFilter {
+
+    static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    static final long FNV_PRIME = 0x100000001B3L;
+
+    // bits are grouped in blocks of one cache line, all bits of a host are set
+    // in the same block, so a lookup touches a single cache line
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_WORDS = BLOCK_BITS / 64;
+    private static final int MAX_HASH_COUNT = 7;
+
+    private final long[] bits;
+    private final int blockCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedHosts number of hosts that will be added.
+     * @param falsePositiveRate desired probability of a false positive, such as 0.01.
+     * */
+    HostBloomFilter(int expectedHosts, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        int n = Math.max(1, expectedHosts);
+        double ln2 = Math.log(2);
+        // blocking raises the false positive rate a little, compensate with 10% more bits
+        double m = -n * Math.log(falsePositiveRate) / (ln2 * ln2) * 1.1;
+        int blocks = (int) Math.min(1 << 24, Math.ceil(m / BLOCK_BITS));
+        bits = new long[blocks * BLOCK_WORDS];
+        blockCount = blocks;
+        int k = (int) Math.round((double) blocks * BLOCK_BITS / n * ln2);
+        hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, k));
+    }
+
+    /**
+     * @return number of bytes used by this filter.
+     * */
+    long sizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * Adds {@code host} to the filter, parent domains of it are not added.
+     * */
+    void add(@NonNull CharSequence host) {
+        int end = HostTrie.trimEnd(host, 0, host.length());
+        long hash = FNV_OFFSET;
+        for (int i = end - 1; i >= 0; i--) {
+            hash = step(hash, host.charAt(i));
+        }
+        put(hash);
+    }
+
+    /**
+     * Same as {@link #add(CharSequence)} for a host stored as {@code length}
+     * bytes in reverse character order, starting at {@code offset}.
+     * */
+    void addReversed(@NonNull ByteBuffer buffer, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            hash = step(hash, (char) (buffer.get(offset + i) & 0xFF));
+        }
+        put(hash);
+    }
+
+    /**
+     * @return false if neither the host located between {@code start} and
+     * {@code end} of {@code sequence} nor any of its parent domains was added.
+     * */
+    boolean mightMatch(@NonNull CharSequence sequence, int start, int end) {
+        end = HostTrie.trimEnd(sequence, start, end);
+        long hash = FNV_OFFSET;
+        for (int i = end - 1; i >= start; i--) {
+            hash = step(hash, sequence.charAt(i));
+            if ((i == start || sequence.charAt(i - 1) == '.') && mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(long hash) {
+        int block = block(hash);
+        long h = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) (h >>> (i * 9)) & (BLOCK_BITS - 1);
+            bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        int block = block(hash);
+        long h = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) (h >>> (i * 9)) & (BLOCK_BITS - 1);
+            if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int block(long hash) {
+        // maps the upper 32 bits of the hash onto [0, blockCount) without division
+        return (int) (((hash >>> 32) * blockCount) >>> 32) * BLOCK_WORDS;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 33);
+    }
+
+    static long step(long hash, char c) {
+        return (hash ^ HostTrie.lower(c)) * FNV_PRIME;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of block decisions keyed by host. It is safe to use from any
+ * thread without locking: entries are immutable and every set of two entries
+ * keeps the most recently used host first, which makes it an LRU cache within
+ * the set. A lost race only costs a cache miss.
+ * */
+final class HostDecisionCache {
+
+    static final int MISS = -1;
+    static final int ALLOWED = 0;
+    static final int BLOCKED = 1;
+
+    private static final int WAYS = 2;
+
+    private static final class Entry {
+        final String host;
+        final int hash;
+        final int generation;
+        final boolean blocked;
+
+        Entry(String host, int hash, int generation, boolean blocked) {
+            this.host = host;
+            this.hash = hash;
+            this.generation = generation;
+            this.blocked = blocked;
+        }
+    }
+
+    private final Entry[] entries;
+    private final int setMask;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of hosts, rounded up to a power of two.
+     * */
+    HostDecisionCache(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(WAYS, capacity - 1) / WAYS) << 1;
+        entries = new Entry[sets * WAYS];
+        setMask = sets - 1;
+    }
+
+    /**
+     * @return number of hosts this cache can hold.
+     * */
+    int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return {@link #BLOCKED} or {@link #ALLOWED} if the decision for the host
+     * located between {@code start} and {@code end} of {@code sequence} is
+     * cached, {@link #MISS} otherwise.
+     * */
+    int get(@NonNull CharSequence sequence, int start, int end, int hash) {
+        int index = (spread(hash) & setMask) * WAYS;
+        int current = generation.get();
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = entries[index + way];
+            if (entry != null && entry.hash == hash && entry.generation == current
+                    && regionEquals(entry.host, sequence, start, end)) {
+                if (way > 0) {
+                    // keep the most recently used entry first
+                    entries[index + way] = entries[index];
+                    entries[index] = entry;
+                }
+                hits.incrementAndGet();
+                return entry.blocked ? BLOCKED : ALLOWED;
+            }
+        }
+        misses.incrementAndGet();
+        return MISS;
+    }
+
+    /**
+     * @return current generation, read it before making a decision
+     * and pass it to {@link #put(CharSequence, int, int, int, int, boolean)}.
+     * */
+    int generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the decision for the host located between {@code start}
+     * and {@code end} of {@code sequence}, evicting the least recently
+     * used host of its set. A decision made before {@link #clear()} is
+     * discarded by passing the generation it was made in.
+     * */
+    void put(@NonNull CharSequence sequence, int start, int end, int hash, int generation,
+             boolean blocked) {
+        int index = (spread(hash) & setMask) * WAYS;
+        Entry entry = new Entry(sequence.subSequence(start, end).toString(), hash,
+                generation, blocked);
+        entries[index + 1] = entries[index];
+        entries[index] = entry;
+    }
+
+    /**
+     * Invalidates all cached decisions.
+     * */
+    void clear() {
+        generation.incrementAndGet();
+    }
+
+    long hitCount() {
+        return hits.get();
+    }
+
+    long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return case-insensitive hash of the host located between
+     * {@code start} and {@code end} of {@code sequence}.
+     * */
+    static int hash(@NonNull CharSequence sequence, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + HostTrie.lower(sequence.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String host, CharSequence sequence, int start, int end) {
+        if (host.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            if (HostTrie.lower(host.charAt(i)) != HostTrie.lower(sequence.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.IDN;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns lines of block lists in different formats into normalized hosts.
+ * Understood are plain host lists, hosts files such as {@code 0.0.0.0 example.com}
+ * and host-only Adblock Plus rules such as {@code ||example.com^}. Element hiding
+ * rules such as {@code example.com##.ad} are not understood, and {@code #} starts a
+ * comment only at the start of a line or after whitespace.
+ * */
+final class HostNormalizer {
+
+    private static final String[] IGNORED_HOSTS = {
+            "localhost", "localhost.localdomain", "local", "broadcasthost",
+            "ip6-localhost", "ip6-loopback", "ip6-localnet", "ip6-mcastprefix",
+            "ip6-allnodes", "ip6-allrouters", "ip6-allhosts", "0.0.0.0"};
+
+    private HostNormalizer() {
+    }
+
+    /**
+     * Adds the hosts found on {@code line} to {@code out}.
+     *
+     * @return number of hosts added, 0 for comments and blank lines or
+     * -1 if the line is not understood.
+     * */
+    static int normalize(@NonNull String line, @NonNull List<String> out) {
+        if (line.contains("##") || line.contains("#@#") || line.contains("#?#")
+                || line.contains("#$#")) {
+            // element hiding rules, they don't block hosts
+            return -1;
+        }
+        int end = commentStart(line);
+        int start = skipWhitespace(line, 0, end);
+        if (start == end || line.charAt(start) == '!' || line.charAt(start) == '[') {
+            return 0;
+        }
+        int tokenEnd = skipToken(line, start, end);
+        int next = skipWhitespace(line, tokenEnd, end);
+        if (next < end) {
+            if (!isAddress(line, start, tokenEnd)) {
+                return -1;
+            }
+            // hosts file, may list several hosts after the address
+            start = next;
+        }
+        int added = 0;
+        while (start < end) {
+            tokenEnd = skipToken(line, start, end);
+            String token = line.substring(start, tokenEnd);
+            if (!isIgnored(token)) {
+                String host = normalizeHost(token);
+                if (host == null) {
+                    return added > 0 ? added : -1;
+                }
+                out.add(host);
+                added++;
+            }
+            start = skipWhitespace(line, tokenEnd, end);
+        }
+        return added;
+    }
+
+    /**
+     * @return index of the comment on {@code line}, a {@code #} at the start of the line
+     * or after whitespace, or the length of the line if there is none.
+     * */
+    private static int commentStart(@NonNull String line) {
+        int i = line.indexOf('#');
+        while (i > 0 && !Character.isWhitespace(line.charAt(i - 1))) {
+            i = line.indexOf('#', i + 1);
+        }
+        return i < 0 ? line.length() : i;
+    }
+
+    /**
+     * @return lower-cased ASCII form of {@code token}, or null if it's not a valid host.
+     * */
+    @Nullable
+    static String normalizeHost(@NonNull String token) {
+        String host = token;
+        if (host.startsWith("||")) {
+            if (!host.endsWith("^")) {
+                return null;
+            }
+            host = host.substring(2, host.length() - 1);
+        } else if (host.startsWith("*.")) {
+            host = host.substring(2);
+        }
+        while (host.startsWith(".")) {
+            host = host.substring(1);
+        }
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            if (host.charAt(i) > 0x7F) {
+                try {
+                    host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                break;
+            }
+        }
+        host = toLowerCase(host);
+        if (host.length() > HostTrie.MAX_HOST_LENGTH || host.indexOf('.') < 0) {
+            return null;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_')) {
+                return null;
+            }
+        }
+        return host;
+    }
+
+    private static String toLowerCase(String host) {
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return host.toLowerCase(Locale.ROOT);
+            }
+        }
+        return host;
+    }
+
+    private static boolean isAddress(String line, int start, int end) {
+        boolean ipv6 = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == ':') {
+                ipv6 = true;
+            } else if ((c < '0' || c > '9') && c != '.' && !(ipv6 && isHexLetter(c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexLetter(char c) {
+        return (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isIgnored(String host) {
+        for (String ignored : IGNORED_HOSTS) {
+            if (ignored.equalsIgnoreCase(host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(String line, int start, int end) {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipToken(String line, int start, int end) {
+        while (start < end && !Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Set of hosts stored as a trie of reversed labels, so {@code ads.example.com}
+ * is kept as {@code com -> example -> ads}. Shared parent domains are stored
+ * once and a lookup matches the host together with all of its parent domains
+ * in a single right-to-left walk over the labels, without allocating substrings.
+ * <p>
+ * Hosts are expected to be ASCII, internationalized names should be added in
+ * their punycode form. Matching is case-insensitive. This class is not thread-safe.
+ * */
+final class HostTrie implements HostSet {
+
+    static final int MAX_HOST_LENGTH = 253;
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+
+    // node id -> parent, label offset, label length
+    private static final int NODE_STRIDE = 3;
+    // slot -> label hash, node id + 1
+    private static final int SLOT_STRIDE = 2;
+
+    private int[] nodes;
+    private final BitSet terminals;
+
+    // labels of all nodes back to back, lower-cased
+    private byte[] labels;
+    private int labelsLength;
+
+    // open addressing table of (parent, label) -> node
+    private int[] table;
+
+    private int nodeCount = 1;
+    private int size;
+
+    HostTrie() {
+        this(64);
+    }
+
+    HostTrie(int expectedHosts) {
+        int capacity = Math.max(16, expectedHosts * 2);
+        nodes = new int[capacity * NODE_STRIDE];
+        nodes[ROOT] = NO_NODE;
+        terminals = new BitSet(capacity);
+        labels = new byte[capacity * 4];
+        table = new int[tableSizeFor(capacity) * SLOT_STRIDE];
+    }
+
+    private HostTrie(@NonNull HostTrie other) {
+        nodes = other.nodes.clone();
+        terminals = (BitSet) other.terminals.clone();
+        labels = other.labels.clone();
+        labelsLength = other.labelsLength;
+        table = other.table.clone();
+        nodeCount = other.nodeCount;
+        size = other.size;
+    }
+
+    /**
+     * @return independent copy of this trie.
+     * */
+    @NonNull
+    HostTrie copy() {
+        return new HostTrie(this);
+    }
+
+    /**
+     * @return number of hosts in this trie.
+     * */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of nodes, including the root and nodes of parent
+     * domains that are not hosts of their own.
+     * */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return approximate number of bytes retained by this trie.
+     * */
+    long sizeInBytes() {
+        return nodes.length * 4L + terminals.size() / 8 + labels.length + table.length * 4L;
+    }
+
+    /**
+     * Releases spare capacity left after adding hosts in bulk.
+     * */
+    void trimToSize() {
+        nodes = Arrays.copyOf(nodes, nodeCount * NODE_STRIDE);
+        labels = Arrays.copyOf(labels, labelsLength);
+        int slots = tableSizeFor(nodeCount);
+        if (slots * SLOT_STRIDE < table.length) {
+            rehash(slots);
+        }
+    }
+
+    /**
+     * @return true if {@code host} was not in this trie before. Hosts that
+     * are longer than 253 characters or contain non-ASCII characters are ignored.
+     * */
+    boolean add(@NonNull CharSequence host) {
+        int end = trimEnd(host, 0, host.length());
+        if (end > MAX_HOST_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < end; i++) {
+            if (host.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        int node = ROOT;
+        int labelEnd = end;
+        while (labelEnd > 0) {
+            int labelStart = labelEnd - 1;
+            int hash = 0;
+            char c;
+            while (labelStart >= 0 && (c = host.charAt(labelStart)) != '.') {
+                hash = 31 * hash + lower(c);
+                labelStart--;
+            }
+            labelStart++;
+            if (labelStart < labelEnd) {
+                int child = find(node, hash, host, labelStart, labelEnd);
+                node = child != NO_NODE ? child : insert(node, hash, host, labelStart, labelEnd);
+            }
+            labelEnd = labelStart - 1;
+        }
+        if (node == ROOT || terminals.get(node)) {
+            return false;
+        }
+        terminals.set(node);
+        size++;
+        return true;
+    }
+
+    /**
+     * @return true if {@code host} was in this trie. Parent domains
+     * of {@code host} are not affected.
+     * */
+    boolean remove(@NonNull CharSequence host) {
+        int node = walk(host, 0, host.length(), false);
+        if (node == NO_NODE || !terminals.get(node)) {
+            return false;
+        }
+        terminals.clear(node);
+        size--;
+        return true;
+    }
+
+    /**
+     * @return true if exactly {@code host} was added to this trie.
+     * */
+    boolean contains(@NonNull CharSequence host) {
+        int node = walk(host, 0, host.length(), false);
+        return node != NO_NODE && terminals.get(node);
+    }
+
+    /**
+     * @return true if {@code host} or any of its parent domains is in this trie.
+     * */
+    boolean matches(@NonNull CharSequence host) {
+        return matches(host, 0, host.length());
+    }
+
+    /**
+     * Same as {@link #matches(CharSequence)} for the host located
+     * between {@code start} and {@code end} of {@code sequence}.
+     * */
+    @Override
+    public boolean matches(@NonNull CharSequence sequence, int start, int end) {
+        return size > 0 && walk(sequence, start, end, true) != NO_NODE;
+    }
+
+    @Override
+    public void addTo(@NonNull HostBloomFilter filter) {
+        forEach(filter::add);
+    }
+
+    interface Visitor {
+        void visit(@NonNull CharSequence host);
+    }
+
+    /**
+     * Passes every host of this trie to {@code visitor}. The passed sequence is
+     * reused for the next host, copy it if it's needed afterwards.
+     * */
+    void forEach(@NonNull Visitor visitor) {
+        StringBuilder host = new StringBuilder(MAX_HOST_LENGTH);
+        for (int node = terminals.nextSetBit(0); node >= 0; node = terminals.nextSetBit(node + 1)) {
+            host.setLength(0);
+            // walking up from the node yields the labels in their natural order
+            for (int n = node; n != ROOT; n = nodes[n * NODE_STRIDE]) {
+                if (host.length() > 0) {
+                    host.append('.');
+                }
+                int offset = nodes[n * NODE_STRIDE + 1];
+                int length = nodes[n * NODE_STRIDE + 2];
+                for (int i = offset; i < offset + length; i++) {
+                    host.append((char) labels[i]);
+                }
+            }
+            visitor.visit(host);
+        }
+    }
+
+    /**
+     * Walks the labels of the host from right to left. If {@code anyTerminal}
+     * is true, stops at the first node that is a host of its own, otherwise
+     * returns the node of the whole host.
+     * */
+    private int walk(CharSequence host, int start, int end, boolean anyTerminal) {
+        end = trimEnd(host, start, end);
+        int node = ROOT;
+        int labelEnd = end;
+        while (labelEnd > start) {
+            int labelStart = labelEnd - 1;
+            int hash = 0;
+            char c;
+            while (labelStart >= start && (c = host.charAt(labelStart)) != '.') {
+                hash = 31 * hash + lower(c);
+                labelStart--;
+            }
+            labelStart++;
+            if (labelStart < labelEnd) {
+                node = find(node, hash, host, labelStart, labelEnd);
+                if (node == NO_NODE) {
+                    return NO_NODE;
+                }
+                if (anyTerminal && terminals.get(node)) {
+                    return node;
+                }
+            }
+            labelEnd = labelStart - 1;
+        }
+        return anyTerminal || node == ROOT ? NO_NODE : node;
+    }
+
+    private int find(int parent, int hash, CharSequence host, int start, int end) {
+        int mask = table.length / SLOT_STRIDE - 1;
+        int slot = slotFor(parent, hash) & mask;
+        int entry;
+        while ((entry = table[slot * SLOT_STRIDE + 1]) != 0) {
+            int node = entry - 1;
+            if (table[slot * SLOT_STRIDE] == hash && nodes[node * NODE_STRIDE] == parent
+                    && labelEquals(node, host, start, end)) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_NODE;
+    }
+
+    private int insert(int parent, int hash, CharSequence host, int start, int end) {
+        int length = end - start;
+        if ((nodeCount + 1) * NODE_STRIDE > nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        if (labelsLength + length > labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(labels.length * 2, labelsLength + length));
+        }
+        int node = nodeCount++;
+        nodes[node * NODE_STRIDE] = parent;
+        nodes[node * NODE_STRIDE + 1] = labelsLength;
+        nodes[node * NODE_STRIDE + 2] = length;
+        for (int i = start; i < end; i++) {
+            labels[labelsLength++] = (byte) lower(host.charAt(i));
+        }
+        if (nodeCount * 2 > table.length / SLOT_STRIDE) {
+            rehash(table.length / SLOT_STRIDE * 2);
+        } else {
+            put(node, hash);
+        }
+        return node;
+    }
+
+    private void put(int node, int hash) {
+        int mask = table.length / SLOT_STRIDE - 1;
+        int slot = slotFor(nodes[node * NODE_STRIDE], hash) & mask;
+        while (table[slot * SLOT_STRIDE + 1] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot * SLOT_STRIDE] = hash;
+        table[slot * SLOT_STRIDE + 1] = node + 1;
+    }
+
+    private void rehash(int slots) {
+        table = new int[slots * SLOT_STRIDE];
+        for (int node = 1; node < nodeCount; node++) {
+            int offset = nodes[node * NODE_STRIDE + 1];
+            int hash = 0;
+            for (int i = offset + nodes[node * NODE_STRIDE + 2] - 1; i >= offset; i--) {
+                hash = 31 * hash + labels[i];
+            }
+            put(node, hash);
+        }
+    }
+
+    private boolean labelEquals(int node, CharSequence host, int start, int end) {
+        int length = nodes[node * NODE_STRIDE + 2];
+        if (length != end - start) {
+            return false;
+        }
+        int offset = nodes[node * NODE_STRIDE + 1];
+        for (int i = 0; i < length; i++) {
+            if (labels[offset + i] != lower(host.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int trimEnd(CharSequence host, int start, int end) {
+        // fully qualified names such as "example.com." end with a dot
+        return end > start && host.charAt(end - 1) == '.' ? end - 1 : end;
+    }
+
+    private static int slotFor(int parent, int hash) {
+        int h = parent * 0x9E3779B9 ^ hash;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int nodes) {
+        int size = Integer.highestOneBit(Math.max(nodes * 2 - 1, 1)) << 1;
+        return Math.max(size, 32);
+    }
+
+    static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+}
\ No newline at end of file
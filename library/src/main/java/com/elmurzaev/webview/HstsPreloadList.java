@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Hosts that must only be loaded over HTTPS, such as the HSTS preload list
+ * shipped with browsers. Every entry is kept as a 64-bit hash, so the
+ * 150k hosts of the full list take about 1.2 MB and a lookup is one hash
+ * pass over the host plus a binary search per label.
+ * <p>
+ * The list has one host per line, optionally followed by
+ * {@code include_subdomains}. The preload list of Chromium can be converted with
+ * <pre>
+ * jq -r '.entries[] | select(.mode == "force-https")
+ *     | .name + (if .include_subdomains then " include_subdomains" else "" end)'
+ * </pre>
+ * Hash collisions are possible but harmless, such a host is only tried over
+ * HTTPS first.
+ * */
+public final class HstsPreloadList {
+
+    private static final String INCLUDE_SUBDOMAINS = "include_subdomains";
+
+    // host hashes with the lowest bit replaced by the include subdomains flag, sorted
+    private final long[] entries;
+
+    public HstsPreloadList(@NonNull InputStream stream) {
+        long[] entries = new long[1024];
+        int size = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("//")) {
+                    continue;
+                }
+                int space = 0;
+                while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+                    space++;
+                }
+                long hash = hash(line, 0, space);
+                if (hash == 0) {
+                    continue;
+                }
+                boolean includeSubdomains = line.indexOf(INCLUDE_SUBDOMAINS, space) > 0;
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = (hash & ~1L) | (includeSubdomains ? 1 : 0);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Arrays.sort(entries, 0, size);
+        // a host listed twice keeps the entry that includes subdomains, the greater one
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique > 0 && (entries[unique - 1] | 1) == (entries[i] | 1)) {
+                entries[unique - 1] = entries[i];
+            } else {
+                entries[unique++] = entries[i];
+            }
+        }
+        this.entries = Arrays.copyOf(entries, unique);
+    }
+
+    /**
+     * @return number of hosts in the list.
+     * */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return true if {@code host} is listed, or one of its parent domains
+     * is listed including subdomains.
+     * */
+    public boolean contains(@NonNull CharSequence host) {
+        int start = 0;
+        int end = HostTrie.trimEnd(host, 0, host.length());
+        while (start < end && host.charAt(start) == '.') {
+            start++;
+        }
+        long hash = HostBloomFilter.FNV_OFFSET;
+        for (int i = end - 1; i >= start; i--) {
+            hash = HostBloomFilter.step(hash, host.charAt(i));
+            if (i == start) {
+                return find(hash) >= 0;
+            }
+            if (host.charAt(i - 1) == '.') {
+                int index = find(hash);
+                if (index >= 0 && (entries[index] & 1) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    long sizeInBytes() {
+        return entries.length * 8L;
+    }
+
+    private int find(long hash) {
+        long key = hash & ~1L;
+        int index = Arrays.binarySearch(entries, key);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < entries.length && (entries[index] & ~1L) == key ? index : -1;
+    }
+
+    // 0 for a host that's empty once dots around it are removed
+    private static long hash(String line, int start, int end) {
+        while (start < end && line.charAt(start) == '.') {
+            start++;
+        }
+        end = HostTrie.trimEnd(line, start, end);
+        if (start >= end) {
+            return 0;
+        }
+        long hash = HostBloomFilter.FNV_OFFSET;
+        for (int i = end - 1; i >= start; i--) {
+            hash = HostBloomFilter.step(hash, line.charAt(i));
+        }
+        return hash;
+    }
+
+}
\ No newline at end of file
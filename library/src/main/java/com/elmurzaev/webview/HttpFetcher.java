@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Makes the request of WebView from an interceptor, for interceptors that
+ * need the response before WebView gets it.
+ * */
+final class HttpFetcher {
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+    // headers the fetcher sets itself or that would make the server answer something else
+    private static final String[] SKIPPED_REQUEST_HEADERS = {
+            "accept-encoding", "if-modified-since", "if-none-match", "range"};
+    // only part of the protocol between the server and the fetcher
+    private static final String[] SKIPPED_RESPONSE_HEADERS = {
+            "connection", "content-encoding", "content-length", "keep-alive",
+            "set-cookie", "transfer-encoding"};
+
+    private HttpFetcher() {
+    }
+
+    /**
+     * @return connection with the headers and cookies WebView would send, not
+     * connected yet. Redirects are not followed, WebView follows them itself so
+     * relative urls resolve against the target.
+     * */
+    @NonNull
+    static HttpURLConnection open(@NonNull WebResourceRequest request, @NonNull String url)
+            throws IOException {
+        return open(url, request.getRequestHeaders(), true);
+    }
+
+    /**
+     * @return connection with {@code headers}, and the cookies WebView would
+     * send if {@code withCookies}, for requests WebView hasn't made yet.
+     * */
+    @NonNull
+    static HttpURLConnection open(@NonNull String url, @NonNull Map<String, String> headers,
+                                  boolean withCookies) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setUseCaches(false);
+        connection.setInstanceFollowRedirects(false);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!isSkipped(header.getKey(), SKIPPED_REQUEST_HEADERS)) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        if (connection.getRequestProperty("User-Agent") == null) {
+            connection.setRequestProperty("User-Agent", System.getProperty("http.agent"));
+        }
+        String cookie = withCookies ? CookieManager.getInstance().getCookie(url) : null;
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        return connection;
+    }
+
+    /**
+     * @return true if {@code statusCode} is a response WebView must get from
+     * the network itself, a redirect or an informational response.
+     * */
+    static boolean isPassedToWebView(int statusCode) {
+        return statusCode < 200 || (statusCode >= 300 && statusCode < 400);
+    }
+
+    /**
+     * Passes cookies set by the response to {@link CookieManager}.
+     *
+     * @return true if the response set any cookie.
+     * */
+    static boolean storeCookies(@NonNull HttpURLConnection connection, @NonNull String url) {
+        List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+        if (setCookies == null) {
+            return false;
+        }
+        for (String setCookie : setCookies) {
+            CookieManager.getInstance().setCookie(url, setCookie);
+        }
+        return true;
+    }
+
+    /**
+     * @return response headers worth passing to WebView, values of repeated
+     * headers joined with commas.
+     * */
+    @NonNull
+    static Map<String, String> headersOf(@NonNull HttpURLConnection connection) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+            String name = field.getKey();
+            if (name == null || field.getValue().isEmpty()
+                    || isSkipped(name, SKIPPED_RESPONSE_HEADERS)) {
+                continue;
+            }
+            StringBuilder value = new StringBuilder();
+            for (String v : field.getValue()) {
+                if (value.length() > 0) {
+                    value.append(", ");
+                }
+                value.append(v);
+            }
+            headers.put(name, value.toString());
+        }
+        return headers;
+    }
+
+    /**
+     * @return value of the {@code Content-Length} header, -1 if unknown.
+     * */
+    static long contentLengthOf(@NonNull HttpURLConnection connection) {
+        String value = connection.getHeaderField("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @NonNull
+    static String mimeTypeOf(@Nullable String contentType) {
+        if (contentType == null) {
+            return "application/octet-stream";
+        }
+        int semicolon = contentType.indexOf(';');
+        return semicolon < 0 ? contentType.trim() : contentType.substring(0, semicolon).trim();
+    }
+
+    @Nullable
+    static String encodingOf(@Nullable String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int charset = contentType.toLowerCase(Locale.US).indexOf("charset=");
+        return charset < 0 ? null : contentType.substring(charset + 8).trim().replace("\"", "");
+    }
+
+    /**
+     * @return reason phrase of the response, never empty as WebView rejects those.
+     * */
+    @NonNull
+    static String reasonPhraseOf(@NonNull HttpURLConnection connection, int statusCode)
+            throws IOException {
+        String reasonPhrase = connection.getResponseMessage();
+        if (reasonPhrase == null || reasonPhrase.isEmpty()) {
+            reasonPhrase = statusCode < 400 ? "OK" : "Error";
+        }
+        return reasonPhrase;
+    }
+
+    @NonNull
+    static InputStream bodyOf(@NonNull HttpURLConnection connection, int statusCode)
+            throws IOException {
+        InputStream body = statusCode >= 400 ? connection.getErrorStream()
+                : connection.getInputStream();
+        return body != null ? body : new ByteArrayInputStream(new byte[0]);
+    }
+
+    private static boolean isSkipped(@NonNull String name, @NonNull String[] skippedHeaders) {
+        for (String skipped : skippedHeaders) {
+            if (skipped.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hosts seen to work over HTTPS or to not support it, shared by all
+ * {@link WebView}s of the process and kept in memory only. Hosts that failed
+ * over HTTPS are tried again after {@link #HTTP_ONLY_MILLIS}, since sites keep
+ * adding it.
+ * */
+final class HttpsFirstCache {
+
+    static final long HTTP_ONLY_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    private static final int MAX_HOSTS = 1024;
+    private static final Long HTTPS = 0L;
+
+    // host -> 0 if HTTPS works, otherwise time until which it's loaded over HTTP
+    private static final Map<String, Long> sHosts =
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_HOSTS;
+                }
+            };
+
+    private HttpsFirstCache() {
+    }
+
+    static synchronized boolean isHttps(@NonNull String host) {
+        return HTTPS.equals(sHosts.get(host));
+    }
+
+    static synchronized boolean isHttpOnly(@NonNull String host) {
+        Long until = sHosts.get(host);
+        if (until == null || until == 0) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            sHosts.remove(host);
+            return false;
+        }
+        return true;
+    }
+
+    static synchronized void putHttps(@NonNull String host) {
+        sHosts.put(host, HTTPS);
+    }
+
+    static synchronized void putHttpOnly(@NonNull String host) {
+        sHosts.put(host, System.currentTimeMillis() + HTTP_ONLY_MILLIS);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Ordered {@link RequestInterceptor}s. Changes copy the array, so running the
+ * chain takes no lock and allocates nothing.
+ * */
+final class InterceptorChain {
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private volatile Entry[] entries = EMPTY;
+
+    /**
+     * Adds {@code interceptor} after every interceptor of the same or higher priority.
+     * */
+    synchronized void add(@NonNull RequestInterceptor interceptor, int priority) {
+        Entry[] current = entries;
+        Entry[] updated = new Entry[current.length + 1];
+        int index = 0;
+        while (index < current.length && current[index].priority >= priority) {
+            updated[index] = current[index];
+            index++;
+        }
+        updated[index] = new Entry(interceptor, priority);
+        System.arraycopy(current, index, updated, index + 1, current.length - index);
+        entries = updated;
+    }
+
+    synchronized boolean remove(@NonNull RequestInterceptor interceptor) {
+        Entry[] current = entries;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].interceptor == interceptor) {
+                Entry[] updated = new Entry[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                entries = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void clear() {
+        entries = EMPTY;
+    }
+
+    @Nullable
+    WebResourceResponse intercept(@NonNull RequestContext context) {
+        for (Entry entry : entries) {
+            WebResourceResponse response = entry.interceptor.intercept(context);
+            if (response != null) {
+                return response;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+
+        final RequestInterceptor interceptor;
+        final int priority;
+
+        Entry(RequestInterceptor interceptor, int priority) {
+            this.interceptor = interceptor;
+            this.priority = priority;
+        }
+    }
+
+}
\ No newline at end of file
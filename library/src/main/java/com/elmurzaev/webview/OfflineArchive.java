@@ -0,0 +1,331 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pages saved as MHTML web archives, so they open instantly and without network.
+ * Archives are kept under a size limit, the least recently used are removed
+ * first. Pages are keyed by their canonical url, so {@code HTTP://Example.com}
+ * and {@code https://example.com/#top} share an archive.
+ * <p>
+ * WebView writes the archive itself, off the main thread, the index is kept
+ * in memory and written to disk on a background thread.
+ *
+ * @see WebView#setOfflineArchive(OfflineArchive)
+ * */
+public final class OfflineArchive {
+
+    private static final int MAGIC = 0x5756414F;
+    private static final int VERSION = 1;
+    private static final String INDEX_FILE = "index";
+    private static final String ARCHIVE_SUFFIX = ".mht";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // a page finished again shortly after it was archived is not archived again
+    private static final long MIN_ARCHIVE_INTERVAL = 60 * 1000;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OfflineArchive");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final File directory;
+    private final long maxSize;
+    // canonical url -> entry, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private volatile boolean loaded;
+    private int tempCount;
+
+    /**
+     * @param directory directory used only by this archive, created if needed.
+     * @param maxSize   size the archives are kept under, in bytes.
+     * */
+    public OfflineArchive(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        sExecutor.execute(this::load);
+    }
+
+    /**
+     * @return archive of {@code url}, or null if there is none or the index
+     * is still being loaded.
+     * */
+    @Nullable
+    public synchronized Entry get(@NonNull String url) {
+        String key = keyOf(url);
+        return key != null && loaded ? entries.get(key) : null;
+    }
+
+    /**
+     * @return all archives, from the least to the most recently used.
+     * */
+    @NonNull
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @return size of all archives, in bytes.
+     * */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Removes the archive of {@code url}, if any.
+     * */
+    public void remove(@NonNull String url) {
+        String key = keyOf(url);
+        if (key == null) {
+            return;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(key);
+            if (entry == null) {
+                return;
+            }
+            size -= entry.size;
+        }
+        sExecutor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            entry.file.delete();
+            writeIndex();
+        });
+    }
+
+    /**
+     * Saves the page {@code view} shows as the archive of {@code url}.
+     * */
+    @MainThread
+    void save(@NonNull android.webkit.WebView view, @NonNull String url) {
+        String key = keyOf(url);
+        if (key == null || !loaded) {
+            return;
+        }
+        File temp;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.savedAt < MIN_ARCHIVE_INTERVAL) {
+                return;
+            }
+            temp = new File(directory, fileNameOf(key) + TEMP_SUFFIX + tempCount++);
+        }
+        view.saveWebArchive(temp.getPath(), false, path -> {
+            if (path != null) {
+                sExecutor.execute(() -> commit(url, key, temp));
+            }
+        });
+    }
+
+    @WorkerThread
+    private void commit(@NonNull String url, @NonNull String key, @NonNull File temp) {
+        File file = new File(directory, fileNameOf(key) + ARCHIVE_SUFFIX);
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        List<File> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                size -= previous.size;
+            }
+            Entry entry = new Entry(url, file, System.currentTimeMillis(), file.length());
+            entries.put(key, entry);
+            size += entry.size;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                iterator.remove();
+                size -= eldest.size;
+                evicted.add(eldest.file);
+            }
+        }
+        for (File evictedFile : evicted) {
+            //noinspection ResultOfMethodCallIgnored
+            evictedFile.delete();
+        }
+        writeIndex();
+    }
+
+    @WorkerThread
+    private void load() {
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().contains(TEMP_SUFFIX)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, INDEX_FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown index");
+            }
+            int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    String url = in.readUTF();
+                    long savedAt = in.readLong();
+                    File file = new File(directory, in.readUTF());
+                    String key = keyOf(url);
+                    // archives deleted from outside are dropped
+                    if (key != null && file.isFile()) {
+                        Entry entry = new Entry(url, file, savedAt, file.length());
+                        entries.put(key, entry);
+                        size += entry.size;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no archives yet or the index is damaged, archives without one are unused
+        }
+        loaded = true;
+    }
+
+    @WorkerThread
+    private void writeIndex() {
+        List<Entry> list = getEntries();
+        File index = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(list.size());
+            for (Entry entry : list) {
+                out.writeUTF(entry.url);
+                out.writeLong(entry.savedAt);
+                out.writeUTF(entry.file.getName());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        temp.renameTo(index);
+    }
+
+    /**
+     * @return canonical form of {@code url} without the scheme, null if it has no host.
+     * */
+    @Nullable
+    static String keyOf(@NonNull String url) {
+        return UrlExpressions.canonicalize(url);
+    }
+
+    private static String fileNameOf(@NonNull String key) {
+        long hash = HostBloomFilter.FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * HostBloomFilter.FNV_PRIME;
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Archive of a page.
+     * */
+    public static final class Entry {
+
+        private final String url;
+        private final File file;
+        private final long savedAt;
+        private final long size;
+
+        Entry(@NonNull String url, @NonNull File file, long savedAt, long size) {
+            this.url = url;
+            this.file = file;
+            this.savedAt = savedAt;
+            this.size = size;
+        }
+
+        /**
+         * @return url of the page when it was archived.
+         * */
+        @NonNull
+        public String getUrl() {
+            return url;
+        }
+
+        @NonNull
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return wall clock time the page was archived at.
+         * */
+        public long getSavedAt() {
+            return savedAt;
+        }
+
+        /**
+         * @return milliseconds since the page was archived.
+         * */
+        public long getAge() {
+            return System.currentTimeMillis() - savedAt;
+        }
+
+        /**
+         * @return size of the archive, in bytes.
+         * */
+        public long getSize() {
+            return size;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,324 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides what text typed into the address bar is: a url to load as is, a url
+ * missing its scheme or a search query. The input is scanned once, without
+ * regular expressions or allocations, so it's cheap enough to run on every
+ * keystroke.
+ * <p>
+ * Hosts must end with a delegated top-level domain, so file names such as
+ * {@code index.html} are searched for. Addresses that can only be reached over
+ * HTTP, such as IP literals, localhost and intranet hosts, have their own types.
+ * */
+final class Omnibox {
+
+    /**
+     * Url with a scheme, loaded as is.
+     * */
+    static final int INPUT_URL = 0;
+    /**
+     * Localhost with an optional port and path.
+     * */
+    static final int INPUT_LOCALHOST = 1;
+    /**
+     * Url without a scheme.
+     * */
+    static final int INPUT_WEB_URL = 2;
+    /**
+     * Anything else, searched for.
+     * */
+    static final int INPUT_SEARCH = 3;
+    /**
+     * IPv4 or bracketed IPv6 address with an optional port and path.
+     * */
+    static final int INPUT_IP = 4;
+    /**
+     * Host of a local network: a single label followed by a port or a path,
+     * such as {@code router/}, or a host under a private suffix, such as
+     * {@code nas.local}.
+     * */
+    static final int INPUT_INTRANET = 5;
+
+    private static final String[] SCHEMES_IGNORING_CASE = {"http://", "https://"};
+    private static final String[] SCHEMES = {"about:", "javascript:", "content:"};
+    private static final String FILE_SCHEME = "file://";
+    private static final String COOKIELESS_PROXY = "file:///cookieless_proxy/";
+    private static final String[] PRIVATE_SUFFIXES = {
+            "local", "localdomain", "lan", "home", "internal", "intranet", "corp"};
+    private static final String HOME_ARPA = "home.arpa";
+    private static final String LOCALHOST = "localhost";
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private Omnibox() {
+    }
+
+    /**
+     * @return one of {@link #INPUT_URL}, {@link #INPUT_LOCALHOST}, {@link #INPUT_WEB_URL},
+     * {@link #INPUT_IP}, {@link #INPUT_INTRANET} or {@link #INPUT_SEARCH}.
+     * */
+    static int classify(@NonNull String input) {
+        if (input.isEmpty()) {
+            return INPUT_SEARCH;
+        }
+        if (hasScheme(input)) {
+            return INPUT_URL;
+        }
+        int length = input.length();
+        int hostEnd;
+        boolean ipv6 = input.charAt(0) == '[';
+        if (ipv6) {
+            hostEnd = input.indexOf(']') + 1;
+            if (hostEnd == 0 || !isIpv6(input, 1, hostEnd - 1)) {
+                return INPUT_SEARCH;
+            }
+        } else {
+            hostEnd = 0;
+            while (hostEnd < length && !isHostEnd(input.charAt(hostEnd))) {
+                hostEnd++;
+            }
+        }
+        if (hostEnd == 0) {
+            return INPUT_SEARCH;
+        }
+        int i = hostEnd;
+        boolean port = i < length && input.charAt(i) == ':';
+        if (port) {
+            int digits = 0;
+            while (++i < length && isDigit(input.charAt(i))) {
+                digits++;
+            }
+            if (digits == 0 || digits > 5) {
+                return INPUT_SEARCH;
+            }
+        }
+        boolean path = i < length;
+        if (path && (!isPathStart(input.charAt(i)) || !isPath(input, i))) {
+            return INPUT_SEARCH;
+        }
+        if (ipv6 || isIpv4(input, 0, hostEnd)) {
+            return INPUT_IP;
+        }
+        // a fragment alone doesn't make a word a host, as in c#
+        return classifyHost(input, hostEnd, port || path && input.charAt(i) != '#');
+    }
+
+    /**
+     * @return true if {@code input} is localhost with an optional scheme and port.
+     * */
+    static boolean isLocalHost(@NonNull String input) {
+        int i = 0;
+        if (input.startsWith("http://")) {
+            i = 7;
+        } else if (input.startsWith("https://")) {
+            i = 8;
+        }
+        if (!input.startsWith(LOCALHOST, i)) {
+            return false;
+        }
+        i += LOCALHOST.length();
+        if (i == input.length()) {
+            return true;
+        }
+        if (input.charAt(i) != ':' || i + 1 == input.length()) {
+            return false;
+        }
+        while (++i < input.length()) {
+            if (!isDigit(input.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same schemes as {@link android.webkit.URLUtil#isValidUrl(String)}.
+     * */
+    private static boolean hasScheme(@NonNull String input) {
+        for (String scheme : SCHEMES_IGNORING_CASE) {
+            if (input.regionMatches(true, 0, scheme, 0, scheme.length())) {
+                return true;
+            }
+        }
+        for (String scheme : SCHEMES) {
+            if (input.startsWith(scheme)) {
+                return true;
+            }
+        }
+        return input.startsWith(FILE_SCHEME) && !input.startsWith(COOKIELESS_PROXY);
+    }
+
+    /**
+     * @param qualified true if the host is followed by a port or a path, which
+     *                  makes a single label a host rather than a word.
+     * */
+    private static int classifyHost(@NonNull String input, int end, boolean qualified) {
+        int labels = 0;
+        int labelStart = 0;
+        int tldStart = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i < end && input.charAt(i) != '.') {
+                continue;
+            }
+            if (!isLabel(input, labelStart, i)) {
+                return INPUT_SEARCH;
+            }
+            labels++;
+            tldStart = labelStart;
+            labelStart = i + 1;
+        }
+        if (labels == 1) {
+            if (end == LOCALHOST.length() && input.regionMatches(true, 0, LOCALHOST, 0, end)) {
+                return INPUT_LOCALHOST;
+            }
+            return qualified ? INPUT_INTRANET : INPUT_SEARCH;
+        }
+        if (isPrivate(input, tldStart, end)) {
+            return INPUT_INTRANET;
+        }
+        return TopLevelDomains.contains(input, tldStart, end) ? INPUT_WEB_URL : INPUT_SEARCH;
+    }
+
+    private static boolean isPrivate(@NonNull String input, int tldStart, int end) {
+        int length = end - tldStart;
+        for (String suffix : PRIVATE_SUFFIXES) {
+            if (suffix.length() == length &&
+                    input.regionMatches(true, tldStart, suffix, 0, length)) {
+                return true;
+            }
+        }
+        int start = end - HOME_ARPA.length();
+        return start > 0 && input.charAt(start - 1) == '.' &&
+                input.regionMatches(true, start, HOME_ARPA, 0, HOME_ARPA.length());
+    }
+
+    /**
+     * @return true if the label between {@code start} and {@code end} is made of
+     * letters, digits, hyphens and underscores and starts and ends with neither.
+     * */
+    private static boolean isLabel(@NonNull String input, int start, int end) {
+        if (start == end || end - start > MAX_LABEL_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (!isLabelChar(c) && (i == start || i == end - 1 || (c != '-' && c != '_'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIpv4(@NonNull String input, int start, int end) {
+        int parts = 0;
+        int value = -1;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? input.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || ++parts > 4) {
+                    return false;
+                }
+                value = -1;
+            } else if (isDigit(c)) {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return parts == 4;
+    }
+
+    private static boolean isIpv6(@NonNull String input, int start, int end) {
+        int colons = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == ':') {
+                colons++;
+            } else if (!isHexDigit(c) && c != '.') {
+                return false;
+            }
+        }
+        return colons >= 2 && colons <= 7;
+    }
+
+    /**
+     * @return true if everything from {@code start} on may be a path and query.
+     * */
+    private static boolean isPath(@NonNull String input, int start) {
+        for (int i = start; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= input.length() || !isHexDigit(input.charAt(i + 1)) ||
+                        !isHexDigit(input.charAt(i + 2))) {
+                    return false;
+                }
+                i += 2;
+            } else if (!isLabelChar(c) && ";/?:@&=#~-.+!*'(),_$".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPathStart(char c) {
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    private static boolean isHostEnd(char c) {
+        return c == ':' || c == '/' || c == '?' || c == '#';
+    }
+
+    private static boolean isLabelChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c) || isUcsChar(c);
+    }
+
+    /**
+     * Characters beyond ASCII allowed in internationalized hosts and paths,
+     * which exclude spaces and separators.
+     * */
+    private static boolean isUcsChar(char c) {
+        if (c <= 0xA0 || c >= 0x2000 && c <= 0x200A || c == 0x2028 || c == 0x2029 ||
+                c == 0x202F || c == 0x3000) {
+            return false;
+        }
+        // surrogates pass, pairs of them are characters beyond the basic plane
+        return c < 0xE000 || c >= 0xF900 && c <= 0xFDCF || c >= 0xFDF0 && c <= 0xFFEF;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Public suffixes of more than one label, under which sites register their
+ * domains, such as {@code co.uk} or {@code github.io}. Single-label suffixes are
+ * top-level domains and are not listed. Searched in place like
+ * {@link TopLevelDomains}, so a lookup allocates nothing.
+ * <p>
+ * A subset of the Public Suffix List: the second-level domains of country
+ * code domains that register below them, and widely used hosting domains that
+ * give every customer a subdomain.
+ * */
+final class PublicSuffixes {
+
+    // sorted, separated by single spaces
+    private static final String SUFFIXES =
+            "ac.ae ac.at ac.bd ac.be ac.cn ac.id ac.il ac.in ac.ir ac.jp ac.ke ac.kr ac.lk ac.ma "
+            + "ac.nz ac.th ac.tz ac.ug ac.uk ac.vn ac.za ac.zw ad.jp app.br appspot.com art.br "
+            + "asn.au asso.fr av.tr azurewebsites.net bbs.tr bel.tr biz.id biz.my biz.pk biz.pl "
+            + "biz.tr biz.vn blog.br blogspot.com cloudfront.net co.ae co.at co.cl co.hu co.id "
+            + "co.il co.in co.ir co.jp co.ke co.kr co.ma co.nz co.th co.tz co.ug co.uk co.ve co.za "
+            + "co.zw com.ar com.au com.bd com.br com.cn com.co com.ec com.eg com.es com.fr com.gh "
+            + "com.gr com.hk com.lk com.ly com.mx com.my com.ng com.np com.pe com.ph com.pk com.pl "
+            + "com.pt com.ru com.sa com.sg com.tr com.tw com.ua com.uy com.ve com.vn desa.id "
+            + "dev.br eco.br ed.jp edu.ar edu.au edu.bd edu.br edu.cn edu.co edu.ec edu.eg edu.es "
+            + "edu.gh edu.gr edu.hk edu.in edu.it edu.lk edu.ly edu.mx edu.my edu.ng edu.np edu.pe "
+            + "edu.ph edu.pk edu.pl edu.pt edu.sa edu.sg edu.tr edu.tw edu.ua edu.uy edu.ve edu.vn "
+            + "edu.za emp.br eng.br es.kr eun.eg fam.pk fin.ec firebaseapp.com firm.in geek.nz "
+            + "gen.in gen.nz gen.tr github.io gitlab.io go.id go.jp go.ke go.kr go.th go.tz go.ug "
+            + "gob.ar gob.cl gob.ec gob.es gob.mx gob.pe gob.pk gob.ve gouv.fr gov.ae gov.au "
+            + "gov.bd gov.br gov.cl gov.cn gov.co gov.eg gov.gh gov.gr gov.hk gov.il gov.in gov.ir "
+            + "gov.it gov.lk gov.ly gov.ma gov.my gov.ng gov.np gov.ph gov.pk gov.pl gov.pt gov.sa "
+            + "gov.sg gov.tr gov.tw gov.ua gov.uk gov.vn gov.za gov.zw govt.nz gr.jp gub.uy gv.at "
+            + "health.nz health.vn herokuapp.com hs.kr i.ng id.au id.ir id.ly idf.il idv.hk idv.tw "
+            + "in.th in.ua ind.br ind.in inf.br info.ec info.hu info.ke info.pl info.tr info.vn "
+            + "int.ar int.vn iwi.nz jus.br k12.il k12.tr kg.kr kiev.ua kiwi.nz law.za leg.br lg.jp "
+            + "log.br ltd.uk maori.nz me.ke me.tz me.uk med.ec med.ly med.sa mi.th mil.ae mil.ar "
+            + "mil.bd mil.br mil.cl mil.cn mil.co mil.eg mil.gh mil.id mil.in mil.kr mil.my mil.ng "
+            + "mil.nz mil.pe mil.ph mil.tr mil.tw mil.uy mil.za mobi.ke mobi.ng ms.kr msk.ru "
+            + "muni.il my.id name.eg name.my name.ng name.tr name.vn ne.jp ne.ke ne.kr ne.tz ne.ug "
+            + "net.ae net.ar net.au net.bd net.br net.cn net.co net.ec net.eg net.gr net.hk net.id "
+            + "net.il net.in net.ir net.lk net.ly net.ma net.mx net.my net.ng net.np net.nz net.pe "
+            + "net.ph net.pk net.pl net.ru net.sa net.sg net.th net.tr net.tw net.ua net.uk net.uy "
+            + "net.ve net.vn net.za netlify.app ngo.ph nhs.uk nic.in nom.br nom.co nom.es nom.fr "
+            + "nom.pe nom.za or.at or.id or.jp or.ke or.kr or.th or.tz or.ug org.ae org.ar org.au "
+            + "org.bd org.br org.cn org.co org.ec org.eg org.es org.gh org.gr org.hk org.hu org.il "
+            + "org.in org.ir org.lk org.ly org.ma org.mx org.my org.ng org.np org.nz org.pe org.ph "
+            + "org.pk org.pl org.pt org.ru org.sa org.sg org.tr org.tw org.ua org.uk org.uy org.ve "
+            + "org.vn org.za org.zw pages.dev parliament.nz pe.kr per.sg plc.ly plc.uk pol.tr "
+            + "police.uk pp.ru prd.fr press.ma pro.ec pro.vn pub.sa re.kr rec.br res.in sc.ke "
+            + "sc.kr sc.tz sc.ug sch.ae sch.id sch.ir sch.ly sch.ng sch.sa sch.uk school.nz "
+            + "school.za sci.eg spb.ru tel.tr tm.fr tur.ar tur.br tv.br tv.tr vercel.app waw.pl "
+            + "web.app web.id web.pk web.tr web.ve web.za workers.dev";
+    // start of every suffix in SUFFIXES, followed by the length of SUFFIXES plus one
+    private static final int[] STARTS;
+
+    static {
+        int count = 1;
+        for (int i = 0; i < SUFFIXES.length(); i++) {
+            if (SUFFIXES.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        STARTS = new int[count + 1];
+        for (int i = 0, n = 1; i < SUFFIXES.length(); i++) {
+            if (SUFFIXES.charAt(i) == ' ') {
+                STARTS[n++] = i + 1;
+            }
+        }
+        STARTS[count] = SUFFIXES.length() + 1;
+    }
+
+    private PublicSuffixes() {
+    }
+
+    /**
+     * @return true if the domain between {@code start} and {@code end} of
+     * {@code sequence} is a listed public suffix, case is ignored.
+     * */
+    static boolean contains(@NonNull CharSequence sequence, int start, int end) {
+        int low = 0;
+        int high = STARTS.length - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = compare(middle, sequence, start, end);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(int index, @NonNull CharSequence sequence, int start, int end) {
+        int from = STARTS[index];
+        int length = STARTS[index + 1] - 1 - from;
+        int n = Math.min(length, end - start);
+        for (int i = 0; i < n; i++) {
+            char a = SUFFIXES.charAt(from + i);
+            char b = HostTrie.lower(sequence.charAt(start + i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - (end - start);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.WebResourceRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Request passed along the {@link RequestInterceptor} chain. The url is parsed
+ * once for all interceptors and anything else is computed when first asked for.
+ * A context is used by a single request, on a single thread.
+ * */
+public final class RequestContext {
+
+    @Nullable
+    private final WebResourceRequest request;
+    private final String url;
+    private final int hostStart;
+    private final int hostEnd;
+    @Nullable
+    private final String documentHost;
+    @Nullable
+    private String host;
+    private int resourceType;
+    // 0 unknown, 1 first party, 2 third party
+    private int party;
+
+    /**
+     * @param documentHost host of the page making the request, null for pages themselves.
+     * */
+    RequestContext(@Nullable WebResourceRequest request, @NonNull String url,
+                   @Nullable String documentHost) {
+        this.request = request;
+        this.url = url;
+        this.documentHost = documentHost;
+        long host = Urls.findHost(url);
+        hostStart = host == Urls.NO_HOST ? -1 : Urls.hostStart(host);
+        hostEnd = host == Urls.NO_HOST ? -1 : Urls.hostEnd(host);
+    }
+
+    /**
+     * Context of a url that is not requested by a view, such as one passed to
+     * {@link UrlFilter#isBlocked(String, String, int)}. It's never given to interceptors.
+     * */
+    RequestContext(@NonNull String url, @Nullable String documentHost, int resourceType) {
+        this(null, url, documentHost);
+        this.resourceType = resourceType;
+    }
+
+    /**
+     * @return request made by the view, null for urls that are not requested by a
+     * view. Contexts given to interceptors always have one.
+     * */
+    @Nullable
+    public WebResourceRequest getRequest() {
+        return request;
+    }
+
+    @NonNull
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return host of the url, null for urls without one such as {@code data:} urls.
+     * */
+    @Nullable
+    public String getHost() {
+        if (host == null && hasHost()) {
+            host = url.substring(hostStart, hostEnd);
+        }
+        return host;
+    }
+
+    @Nullable
+    public String getScheme() {
+        if (request != null) {
+            return request.getUrl().getScheme();
+        }
+        int colon = url.indexOf(':');
+        return colon > 0 ? url.substring(0, colon) : null;
+    }
+
+    /**
+     * @return host of the page making the request or null if it's a page
+     * itself or the page is unknown.
+     * */
+    @Nullable
+    public String getDocumentHost() {
+        return documentHost;
+    }
+
+    public boolean isForMainFrame() {
+        return request != null ? request.isForMainFrame()
+                : resourceType == ResourceType.DOCUMENT;
+    }
+
+    /**
+     * @return one of the types declared in {@link ResourceType}.
+     * */
+    public int getResourceType() {
+        if (resourceType == 0 && request != null) {
+            resourceType = ResourceType.guess(url, request.getRequestHeaders().get("Accept"),
+                    request.isForMainFrame());
+        }
+        return resourceType;
+    }
+
+    /**
+     * @return true if the url belongs to a different site than the page making
+     * the request, false if it's the same site or the page is unknown.
+     * */
+    public boolean isThirdParty() {
+        if (party == 0) {
+            party = hasHost() && Urls.isThirdParty(url, hostStart, hostEnd, documentHost) ? 2 : 1;
+        }
+        return party == 2;
+    }
+
+    boolean hasHost() {
+        return hostStart >= 0;
+    }
+
+    int hostStart() {
+        return hostStart;
+    }
+
+    int hostEnd() {
+        return hostEnd;
+    }
+
+}
\ No newline at end of file
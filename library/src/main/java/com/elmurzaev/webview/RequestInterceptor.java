@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Handles requests of a {@link WebView} before they reach the network. Registered
+ * interceptors run from the highest priority to the lowest, until one of them
+ * returns a response. Interceptors are called on WebView's network threads,
+ * concurrently, and must not block for long.
+ *
+ * @see WebView#addRequestInterceptor(RequestInterceptor, int)
+ * */
+public interface RequestInterceptor {
+
+    /**
+     * Priority of the interceptor that blocks requests using {@link ContentBlocker}
+     * and {@link UrlFilter}, so blocked requests are not handled by the others.
+     * */
+    int PRIORITY_CONTENT_BLOCKER = 1000;
+    /**
+     * Priority of {@link DataSaver}, which runs before other interceptors
+     * so dropped requests cost nothing.
+     * */
+    int PRIORITY_DATA_SAVER = 500;
+    int PRIORITY_DEFAULT = 0;
+
+    /**
+     * @param context the request, shared by all interceptors.
+     * @return response to the request, which ends the chain, or null to let
+     * the following interceptors and then the network handle it.
+     * */
+    @Nullable
+    @WorkerThread
+    WebResourceResponse intercept(@NonNull RequestContext context);
+
+}
\ No newline at end of file
@@ -0,0 +1,487 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the requests and page loads of a {@link WebView} in a fixed-size ring
+ * buffer, which can be exported as a HAR file. Recording a request costs one
+ * small object and an atomic increment, no locks are taken, so it can be left
+ * on in release builds. Once full, the oldest records are overwritten.
+ * <p>
+ * WebView doesn't report when a request it makes itself completes, so those
+ * records hold when the request was made, the time spent in interceptors and
+ * errors reported by WebView. Responses served by interceptors also have
+ * their size and duration. Page records have the time until the page
+ * responded and until it finished loading.
+ *
+ * @see WebView#setRequestLog(RequestLog)
+ * */
+public final class RequestLog {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    // records searched for the request an error belongs to
+    private static final int MAX_ERROR_SEARCH = 256;
+
+    private final AtomicReferenceArray<Record> records;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+    @Nullable
+    private volatile Record page;
+
+    public RequestLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of records kept, rounded up to a power of two.
+     * */
+    public RequestLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        records = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @return records from the oldest to the newest.
+     * */
+    @NonNull
+    public List<Record> getRecords() {
+        long end = sequence.get();
+        long start = Math.max(0, end - records.length());
+        List<Record> list = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Record record = records.get((int) (i & mask));
+            // a slot may already hold a newer record or not be written yet
+            if (record != null && record.sequence == i) {
+                list.add(record);
+            }
+        }
+        return list;
+    }
+
+    public void clear() {
+        for (int i = 0; i < records.length(); i++) {
+            records.set(i, null);
+        }
+    }
+
+    /**
+     * Writes the records in the HTTP Archive 1.2 format. Fields HAR requires
+     * but that are not known are written as -1 or empty, fields not defined
+     * by HAR start with an underscore.
+     * */
+    public void writeHar(@NonNull Writer writer) throws IOException {
+        List<Record> list = getRecords();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        writer.write("{\"log\":{\"version\":\"1.2\",\"creator\":{\"name\":\"");
+        writer.write(WebView.class.getName());
+        writer.write("\",\"version\":\"1\"},\"pages\":[");
+        Set<Long> pages = new HashSet<>();
+        boolean first = true;
+        for (Record record : list) {
+            if (!record.isForMainFrame) {
+                continue;
+            }
+            pages.add(record.sequence);
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("{\"startedDateTime\":\"");
+            writer.write(format.format(new Date(record.startMillis)));
+            writer.write("\",\"id\":\"page_" + record.sequence + "\",\"title\":");
+            writeString(writer, record.url);
+            writer.write(",\"pageTimings\":{\"onContentLoad\":-1,\"onLoad\":"
+                    + millis(record, record.endNanos) + ",\"_onResponse\":"
+                    + millis(record, record.commitNanos) + "}}");
+        }
+        writer.write("],\"entries\":[");
+        first = true;
+        for (Record record : list) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            long time = Math.max(0, record.getDuration());
+            writer.write('{');
+            if (pages.contains(record.pageSequence)) {
+                writer.write("\"pageref\":\"page_" + record.pageSequence + "\",");
+            }
+            writer.write("\"startedDateTime\":\"");
+            writer.write(format.format(new Date(record.startMillis)));
+            writer.write("\",\"time\":" + time + ",\"request\":{\"method\":");
+            writeString(writer, record.method);
+            writer.write(",\"url\":");
+            writeString(writer, record.url);
+            writer.write(",\"httpVersion\":\"\",\"cookies\":[],\"headers\":[],\"queryString\":[],"
+                    + "\"headersSize\":-1,\"bodySize\":-1},\"response\":{\"status\":"
+                    + record.statusCode + ",\"statusText\":");
+            writeString(writer, record.statusText != null ? record.statusText : "");
+            writer.write(",\"httpVersion\":\"\",\"cookies\":[],\"headers\":[],\"content\":{\"size\":"
+                    + Math.max(0, record.bytes) + ",\"mimeType\":");
+            writeString(writer, record.mimeType != null ? record.mimeType : "");
+            writer.write("},\"redirectURL\":\"\",\"headersSize\":-1,\"bodySize\":" + record.bytes
+                    + "},\"cache\":{},\"timings\":{\"send\":0,\"wait\":" + time
+                    + ",\"receive\":0},\"_resourceType\":\""
+                    + resourceTypeName(record.resourceType) + "\",\"_thirdParty\":"
+                    + record.isThirdParty + ",\"_blocked\":" + record.blocked
+                    + ",\"_intercepted\":" + record.intercepted
+                    + ",\"_interceptMicros\":" + record.interceptNanos / 1000);
+            if (record.error != null) {
+                writer.write(",\"_error\":");
+                writeString(writer, record.error);
+            }
+            writer.write('}');
+        }
+        writer.write("]}}");
+        writer.flush();
+    }
+
+    /**
+     * Called before the interceptors run.
+     * */
+    @NonNull
+    Record begin(@NonNull RequestContext context) {
+        Record record = new Record(sequence.getAndIncrement(), context.getUrl(),
+                context.getRequest().getMethod(), context.getResourceType(),
+                context.isForMainFrame(), context.isThirdParty());
+        if (record.isForMainFrame) {
+            page = record;
+        }
+        Record current = page;
+        record.pageSequence = current != null ? current.sequence : -1;
+        records.set((int) (record.sequence & mask), record);
+        return record;
+    }
+
+    /**
+     * Called after the interceptors ran.
+     *
+     * @param response the response interceptors returned, if any.
+     * */
+    void end(@NonNull Record record, @Nullable WebResourceResponse response) {
+        record.interceptNanos = System.nanoTime() - record.startNanos;
+        if (response == null) {
+            return;
+        }
+        record.intercepted = true;
+        record.blocked = response == WebView.BLOCKED_RESPONSE;
+        if (record.blocked) {
+            record.endNanos = System.nanoTime();
+            return;
+        }
+        record.statusCode = response.getStatusCode();
+        record.statusText = response.getReasonPhrase();
+        record.mimeType = response.getMimeType();
+        InputStream data = response.getData();
+        if (data != null) {
+            response.setData(new RecordingInputStream(data, record));
+        }
+    }
+
+    /**
+     * Called when the main frame responded, before its content is loaded.
+     * */
+    void onPageStarted(@NonNull String url) {
+        Record current = page;
+        if (current == null || !current.url.equals(url) || current.commitNanos != 0) {
+            // navigations such as going back may not pass through interceptors
+            Record record = new Record(sequence.getAndIncrement(), url, "GET",
+                    ResourceType.DOCUMENT, true, false);
+            record.pageSequence = record.sequence;
+            records.set((int) (record.sequence & mask), record);
+            page = record;
+            current = record;
+        }
+        current.commitNanos = System.nanoTime();
+    }
+
+    void onPageFinished(@NonNull String url) {
+        Record current = page;
+        if (current != null && current.url.equals(url) && current.endNanos == 0) {
+            current.endNanos = System.nanoTime();
+            if (current.statusCode == 0 && current.error == null) {
+                current.statusCode = 200;
+            }
+        }
+    }
+
+    void onHttpError(@NonNull String url, int statusCode, @Nullable String reasonPhrase) {
+        Record record = find(url);
+        if (record != null) {
+            record.statusCode = statusCode;
+            record.statusText = reasonPhrase;
+            record.endNanos = System.nanoTime();
+        }
+    }
+
+    void onError(@NonNull String url, int errorCode, @Nullable CharSequence description) {
+        Record record = find(url);
+        if (record != null) {
+            record.error = errorCode + (description != null ? " " + description : "");
+            record.endNanos = System.nanoTime();
+        }
+    }
+
+    @Nullable
+    private Record find(@NonNull String url) {
+        long end = sequence.get();
+        long start = Math.max(0, Math.max(end - records.length(), end - MAX_ERROR_SEARCH));
+        for (long i = end - 1; i >= start; i--) {
+            Record record = records.get((int) (i & mask));
+            if (record != null && record.sequence == i && record.url.equals(url)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private static long millis(Record record, long nanos) {
+        return nanos == 0 ? -1 : (nanos - record.startNanos) / 1000000;
+    }
+
+    private static String resourceTypeName(int type) {
+        switch (type) {
+            case ResourceType.DOCUMENT:
+                return "document";
+            case ResourceType.SUBDOCUMENT:
+                return "subdocument";
+            case ResourceType.SCRIPT:
+                return "script";
+            case ResourceType.STYLESHEET:
+                return "stylesheet";
+            case ResourceType.IMAGE:
+                return "image";
+            case ResourceType.FONT:
+                return "font";
+            case ResourceType.MEDIA:
+                return "media";
+            case ResourceType.XMLHTTPREQUEST:
+                return "xhr";
+            default:
+                return "other";
+        }
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * A request or page load. Fields other than the request itself are
+     * filled in as they become known.
+     * */
+    public static final class Record {
+
+        final long sequence;
+        final String url;
+        final String method;
+        final int resourceType;
+        final boolean isForMainFrame;
+        final boolean isThirdParty;
+        final long startMillis = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        volatile long pageSequence;
+        volatile long interceptNanos;
+        volatile long commitNanos;
+        volatile long endNanos;
+        volatile boolean intercepted;
+        volatile boolean blocked;
+        volatile int statusCode;
+        @Nullable
+        volatile String statusText;
+        @Nullable
+        volatile String mimeType;
+        @Nullable
+        volatile String error;
+        volatile long bytes = -1;
+
+        Record(long sequence, String url, String method, int resourceType,
+               boolean isForMainFrame, boolean isThirdParty) {
+            this.sequence = sequence;
+            this.url = url;
+            this.method = method;
+            this.resourceType = resourceType;
+            this.isForMainFrame = isForMainFrame;
+            this.isThirdParty = isThirdParty;
+        }
+
+        @NonNull
+        public String getUrl() {
+            return url;
+        }
+
+        @NonNull
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return one of the types declared in {@link ResourceType}.
+         * */
+        public int getResourceType() {
+            return resourceType;
+        }
+
+        public boolean isForMainFrame() {
+            return isForMainFrame;
+        }
+
+        public boolean isThirdParty() {
+            return isThirdParty;
+        }
+
+        /**
+         * @return true if blocked by {@link ContentBlocker}, {@link UrlFilter}
+         * or {@link DataSaver}.
+         * */
+        public boolean isBlocked() {
+            return blocked;
+        }
+
+        /**
+         * @return true if a {@link RequestInterceptor} responded instead of WebView.
+         * */
+        public boolean isIntercepted() {
+            return intercepted;
+        }
+
+        /**
+         * @return wall clock time the request was made at.
+         * */
+        public long getStartTime() {
+            return startMillis;
+        }
+
+        /**
+         * @return milliseconds until the response completed or failed, -1 if unknown.
+         * */
+        public long getDuration() {
+            long end = endNanos;
+            return end == 0 ? -1 : (end - startNanos) / 1000000;
+        }
+
+        /**
+         * @return nanoseconds spent in interceptors, 0 if they didn't run.
+         * */
+        public long getInterceptTime() {
+            return interceptNanos;
+        }
+
+        /**
+         * @return status code of the response, 0 if unknown.
+         * */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return error WebView reported for the request, if any.
+         * */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return size of the response body, -1 if unknown.
+         * */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private static final class RecordingInputStream extends FilterInputStream {
+
+        private final Record record;
+        private long count;
+
+        RecordingInputStream(InputStream in, Record record) {
+            super(in);
+            this.record = record;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (record.endNanos == 0) {
+                record.bytes = count;
+                record.endNanos = System.nanoTime();
+            }
+        }
+    }
+
+}
\ No newline at end of file
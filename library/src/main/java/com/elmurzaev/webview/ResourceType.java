@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Types of resources requested by a page. Values are bit flags, so
+ * a set of types can be stored in a single int.
+ * */
+public final class ResourceType {
+
+    public static final int DOCUMENT = 1;
+    public static final int SUBDOCUMENT = 1 << 1;
+    public static final int SCRIPT = 1 << 2;
+    public static final int STYLESHEET = 1 << 3;
+    public static final int IMAGE = 1 << 4;
+    public static final int FONT = 1 << 5;
+    public static final int MEDIA = 1 << 6;
+    public static final int XMLHTTPREQUEST = 1 << 7;
+    public static final int OTHER = 1 << 8;
+    public static final int ALL = (1 << 9) - 1;
+
+    private static final String[] SCRIPT_EXTENSIONS = {"js", "mjs"};
+    private static final String[] STYLESHEET_EXTENSIONS = {"css"};
+    private static final String[] IMAGE_EXTENSIONS = {
+            "png", "jpg", "jpeg", "gif", "webp", "svg", "ico", "avif", "bmp"};
+    private static final String[] FONT_EXTENSIONS = {"woff", "woff2", "ttf", "otf", "eot"};
+    private static final String[] MEDIA_EXTENSIONS = {
+            "mp4", "webm", "mp3", "m4a", "m4s", "ogg", "oga", "wav", "m3u8", "mpd"};
+
+    private ResourceType() {
+    }
+
+    /**
+     * WebView doesn't report what a request is for, so the type is guessed
+     * from the request itself.
+     *
+     * @param url requested url.
+     * @param accept value of the {@code Accept} request header, if any.
+     * @param isForMainFrame true if the request is for the main frame.
+     * @return one of the types declared in this class, {@link #OTHER}
+     * if the type can't be guessed.
+     * */
+    public static int guess(@NonNull CharSequence url, @Nullable String accept,
+                            boolean isForMainFrame) {
+        if (isForMainFrame) {
+            return DOCUMENT;
+        }
+        if (accept != null) {
+            if (accept.startsWith("text/html")) {
+                return SUBDOCUMENT;
+            }
+            if (accept.startsWith("text/css")) {
+                return STYLESHEET;
+            }
+            if (accept.startsWith("image/")) {
+                return IMAGE;
+            }
+        }
+        int end = url.length();
+        int dot = -1;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+            if (c == '.') {
+                dot = i;
+            } else if (c == '/') {
+                dot = -1;
+            }
+        }
+        if (dot < 0) {
+            return OTHER;
+        }
+        if (regionEqualsAny(url, dot + 1, end, SCRIPT_EXTENSIONS)) {
+            return SCRIPT;
+        }
+        if (regionEqualsAny(url, dot + 1, end, STYLESHEET_EXTENSIONS)) {
+            return STYLESHEET;
+        }
+        if (regionEqualsAny(url, dot + 1, end, IMAGE_EXTENSIONS)) {
+            return IMAGE;
+        }
+        if (regionEqualsAny(url, dot + 1, end, FONT_EXTENSIONS)) {
+            return FONT;
+        }
+        if (regionEqualsAny(url, dot + 1, end, MEDIA_EXTENSIONS)) {
+            return MEDIA;
+        }
+        return OTHER;
+    }
+
+    private static boolean regionEqualsAny(CharSequence url, int start, int end, String[] extensions) {
+        for (String extension : extensions) {
+            if (extension.length() != end - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < extension.length()
+                    && HostTrie.lower(url.charAt(start + i)) == extension.charAt(i)) {
+                i++;
+            }
+            if (i == extension.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,560 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RequestInterceptor} that keeps scripts, style sheets, images and fonts
+ * in a size-bounded directory, so they survive evictions from WebView's own
+ * cache. Responses are stored according to their {@code Cache-Control},
+ * {@code Expires} and {@code Last-Modified} headers and revalidated with
+ * {@code ETag} or {@code Last-Modified} once stale. A stale response is served
+ * when revalidating it fails, which keeps pages working on flaky networks.
+ * <p>
+ * Stored bodies are memory-mapped and downloaded bodies are streamed to WebView
+ * while they are written, so no body is held in memory as a whole. Identical
+ * requests made while a response is being downloaded wait for it instead of
+ * downloading it again.
+ * <pre>
+ * webView.addRequestInterceptor(new ResponseCache(new File(getCacheDir(), "responses"),
+ *         50 * 1024 * 1024));
+ * </pre>
+ * */
+public final class ResponseCache implements RequestInterceptor {
+
+    private static final int CACHED_TYPES = ResourceType.SCRIPT | ResourceType.STYLESHEET
+            | ResourceType.IMAGE | ResourceType.FONT;
+    private static final long COALESCE_TIMEOUT = 10000;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSize;
+    private final long maxEntrySize;
+    // key -> size of the file, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, CountDownLatch> downloads = new HashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private long size;
+    private boolean initialized;
+
+    /**
+     * @param directory directory used only by this cache, created if needed.
+     * @param maxSize   size the stored responses are kept under, in bytes.
+     * */
+    public ResponseCache(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        // a single response may not push out most others
+        this.maxEntrySize = maxSize / 8;
+    }
+
+    @Nullable
+    @Override
+    public WebResourceResponse intercept(@NonNull RequestContext context) {
+        if (!isCacheable(context)) {
+            return null;
+        }
+        requestCount.incrementAndGet();
+        initialize();
+        String url = context.getUrl();
+        String key = keyOf(url);
+        CachedResponse cached = read(key, url);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return serve(cached);
+        }
+
+        CountDownLatch download;
+        boolean isDownloading;
+        synchronized (downloads) {
+            download = downloads.get(key);
+            isDownloading = download != null;
+            if (!isDownloading) {
+                download = new CountDownLatch(1);
+                downloads.put(key, download);
+            }
+        }
+        if (isDownloading) {
+            try {
+                download.await(COALESCE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            cached = read(key, url);
+            // if the download failed, WebView requests it itself
+            return cached != null ? serve(cached) : null;
+        }
+        return fetch(context.getRequest(), url, key, cached, download);
+    }
+
+    /**
+     * @return number of requests this cache could handle, hit or not.
+     * */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of requests served from this cache, including
+     * responses revalidated with the server.
+     * */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return {@link #getHitCount()} divided by {@link #getRequestCount()}.
+     * */
+    public double getHitRatio() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : (double) hitCount.get() / requests;
+    }
+
+    /**
+     * @return number of body bytes served from this cache instead of the network.
+     * */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return number of responses removed to keep the cache under its size.
+     * */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return size of the stored responses, in bytes.
+     * */
+    public synchronized long getSize() {
+        initialize();
+        return size;
+    }
+
+    private static boolean isCacheable(@NonNull RequestContext context) {
+        WebResourceRequest request = context.getRequest();
+        String scheme = context.getScheme();
+        return !context.isForMainFrame()
+                && "GET".equals(request.getMethod())
+                && ("https".equals(scheme) || "http".equals(scheme))
+                && (context.getResourceType() & CACHED_TYPES) != 0
+                && !request.getRequestHeaders().containsKey("Range");
+    }
+
+    private synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // last modification is updated on use, so it restores the order of use
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else {
+                entries.put(file.getName(), file.length());
+                size += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * @return stored response of {@code url} with its body mapped, or null if
+     * there is none.
+     * */
+    @Nullable
+    private CachedResponse read(@NonNull String key, @NonNull String url) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        File file = new File(directory, key);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            CachedResponse cached = CachedResponse.read(in);
+            if (!cached.url.equals(url)) {
+                return null;
+            }
+            FileChannel channel = in.getChannel();
+            cached.body = channel.map(FileChannel.MapMode.READ_ONLY, cached.bodyOffset,
+                    channel.size() - cached.bodyOffset);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return cached;
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    @NonNull
+    private WebResourceResponse serve(@NonNull CachedResponse cached) {
+        return serve(cached, cached.headers);
+    }
+
+    /**
+     * @param headers headers of {@code cached}, updated by the server if it was revalidated.
+     * */
+    @NonNull
+    private WebResourceResponse serve(@NonNull CachedResponse cached,
+                                      @NonNull Map<String, String> headers) {
+        ByteBuffer body = cached.body;
+        hitCount.incrementAndGet();
+        bytesSaved.addAndGet(body != null ? body.remaining() : 0);
+        return new WebResourceResponse(cached.mimeType, cached.encoding, cached.statusCode,
+                cached.reasonPhrase, headers,
+                new ByteBufferInputStream(body != null ? body : ByteBuffer.allocate(0)));
+    }
+
+    @Nullable
+    private WebResourceResponse fetch(@NonNull WebResourceRequest request, @NonNull String url,
+                                      @NonNull String key, @Nullable CachedResponse cached,
+                                      @NonNull CountDownLatch download) {
+        HttpURLConnection connection = null;
+        try {
+            connection = HttpFetcher.open(request, url);
+            if (cached != null) {
+                String etag = cached.header("ETag");
+                String lastModified = cached.header("Last-Modified");
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+            long now = System.currentTimeMillis();
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                Map<String, String> headers = new LinkedHashMap<>(cached.headers);
+                headers.putAll(HttpFetcher.headersOf(connection));
+                connection.disconnect();
+                cached.expiresAt = Math.max(0, CachedResponse.expiresAt(headers, now));
+                updateExpiresAt(key, cached.expiresAt);
+                finish(key, download);
+                return serve(cached, headers);
+            }
+            if (HttpFetcher.isPassedToWebView(statusCode)) {
+                connection.disconnect();
+                finish(key, download);
+                return null;
+            }
+
+            Map<String, String> headers = HttpFetcher.headersOf(connection);
+            boolean setsCookies = HttpFetcher.storeCookies(connection, url);
+            String mimeType = HttpFetcher.mimeTypeOf(connection.getContentType());
+            String encoding = HttpFetcher.encodingOf(connection.getContentType());
+            String reasonPhrase = HttpFetcher.reasonPhraseOf(connection, statusCode);
+            InputStream body = HttpFetcher.bodyOf(connection, statusCode);
+
+            long expiresAt = statusCode == HttpURLConnection.HTTP_OK && !setsCookies
+                    ? CachedResponse.expiresAt(headers, now) : -1;
+            long contentLength = HttpFetcher.contentLengthOf(connection);
+            if (expiresAt < 0 || contentLength > maxEntrySize) {
+                if (cached != null) {
+                    remove(key);
+                }
+                finish(key, download);
+            } else {
+                CachedResponse response = new CachedResponse(url, statusCode, reasonPhrase,
+                        mimeType, encoding, headers, expiresAt);
+                body = new CachingInputStream(body, response, key, download);
+            }
+            return new WebResourceResponse(mimeType, encoding, statusCode, reasonPhrase,
+                    headers, body);
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            finish(key, download);
+            // better stale than nothing while the network is unreliable
+            return cached != null ? serve(cached) : null;
+        }
+    }
+
+    private void finish(@NonNull String key, @NonNull CountDownLatch download) {
+        synchronized (downloads) {
+            downloads.remove(key);
+        }
+        download.countDown();
+    }
+
+    private synchronized void commit(@NonNull String key, @NonNull File temp) {
+        File file = new File(directory, key);
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        entries.put(key, file.length());
+        size += file.length();
+        trimToSize();
+    }
+
+    /**
+     * Stores the new freshness of a revalidated response, unless it was evicted
+     * since it was read, so the file is not created again outside of the entries.
+     * */
+    private synchronized void updateExpiresAt(@NonNull String key, long expiresAt)
+            throws IOException {
+        if (entries.containsKey(key)) {
+            CachedResponse.writeExpiresAt(new File(directory, key), expiresAt);
+        }
+    }
+
+    private synchronized void remove(@NonNull String key) {
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous;
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, key).delete();
+        }
+    }
+
+    private synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, eldest.getKey()).delete();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    @NonNull
+    private static String keyOf(@NonNull String url) {
+        long hash = HostBloomFilter.FNV_OFFSET;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * HostBloomFilter.FNV_PRIME;
+        }
+        return Long.toHexString(hash) + Integer.toHexString(url.length());
+    }
+
+    /**
+     * Passes a downloaded body to WebView while writing it to a temporary file,
+     * which becomes the stored response once the body was read to the end.
+     * */
+    private final class CachingInputStream extends FilterInputStream {
+
+        private final String key;
+        private final CountDownLatch download;
+        private final File temp;
+        @Nullable
+        private OutputStream out;
+        private long written;
+        private boolean complete;
+        private boolean closed;
+
+        CachingInputStream(InputStream in, CachedResponse response, String key,
+                           CountDownLatch download) {
+            super(in);
+            this.key = key;
+            this.download = download;
+            this.temp = new File(directory, key + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+            try {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(temp)));
+                response.write(out);
+                this.out = out;
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete = true;
+            } else if (out != null) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int count;
+            try {
+                count = super.read(buffer, offset, length);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (count < 0) {
+                complete = true;
+            } else if (out != null) {
+                write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes would be missing from the stored body
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                        if (complete) {
+                            commit(key, temp);
+                        } else {
+                            //noinspection ResultOfMethodCallIgnored
+                            temp.delete();
+                        }
+                    } catch (IOException e) {
+                        //noinspection ResultOfMethodCallIgnored
+                        temp.delete();
+                    }
+                    out = null;
+                }
+                finish(key, download);
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            written += count;
+            if (written > maxEntrySize) {
+                abandon();
+                return;
+            }
+            try {
+                //noinspection ConstantConditions
+                out.write(buffer, offset, count);
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                out = null;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,271 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable sorted set of 32-bit values, compared as unsigned, stored as
+ * Rice-coded differences between neighbours. Uniformly distributed hash
+ * prefixes take about {@code log2(2^32 / size) + 2} bits each, under 2 MB
+ * for a million prefixes.
+ * <p>
+ * Every {@value #BLOCK_SIZE}th value is also kept uncoded together with
+ * its bit position, so a lookup binary searches those and decodes at most
+ * one block.
+ * */
+final class RicePrefixSet {
+
+    static final int BLOCK_SIZE = 64;
+    static final RicePrefixSet EMPTY = of(new int[0]);
+
+    private final int size;
+    private final int k;
+    private final long[] bits;
+    private final int[] blockFirst;
+    private final int[] blockOffset;
+
+    private RicePrefixSet(int size, int k, @NonNull long[] bits) {
+        this.size = size;
+        this.k = k;
+        this.bits = bits;
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blockFirst = new int[blocks];
+        blockOffset = new int[blocks];
+        int offset = 0;
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0) {
+                value = read(offset, 32);
+                offset += 32;
+            } else {
+                int quotient = unary(offset);
+                offset += quotient + 1;
+                value += ((long) quotient << k) | read(offset, k);
+                offset += k;
+            }
+            if (i % BLOCK_SIZE == 0) {
+                blockFirst[i / BLOCK_SIZE] = (int) value;
+                blockOffset[i / BLOCK_SIZE] = offset;
+            }
+        }
+    }
+
+    /**
+     * @param values distinct values, in any order.
+     * */
+    @NonNull
+    static RicePrefixSet of(@NonNull int[] values) {
+        long[] sorted = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sorted[i] = values[i] & 0xFFFFFFFFL;
+        }
+        Arrays.sort(sorted);
+        int size = sorted.length;
+        int k = 0;
+        if (size > 1) {
+            long mean = (sorted[size - 1] - sorted[0]) / (size - 1);
+            k = mean > 0 ? 63 - Long.numberOfLeadingZeros(mean) : 0;
+        }
+        BitWriter writer = new BitWriter(size * (k + 2) + 64);
+        for (int i = 0; i < size; i++) {
+            if (i == 0) {
+                writer.write(sorted[0], 32);
+                continue;
+            }
+            long delta = sorted[i] - sorted[i - 1];
+            if (delta == 0) {
+                throw new IllegalArgumentException("Duplicate value " + (int) sorted[i]);
+            }
+            writer.unary((int) (delta >>> k));
+            writer.write(delta, k);
+        }
+        return new RicePrefixSet(size, k, writer.toArray());
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        return bits.length * 8L + blockFirst.length * 8L;
+    }
+
+    boolean contains(int value) {
+        long target = value & 0xFFFFFFFFL;
+        int low = 0;
+        int high = blockFirst.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if ((blockFirst[mid] & 0xFFFFFFFFL) <= target) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return false;
+        }
+        long current = blockFirst[block] & 0xFFFFFFFFL;
+        int offset = blockOffset[block];
+        int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE + 1; current < target && i < end; i++) {
+            int quotient = unary(offset);
+            offset += quotient + 1;
+            current += ((long) quotient << k) | read(offset, k);
+            offset += k;
+        }
+        return current == target;
+    }
+
+    /**
+     * @return values in unsigned ascending order.
+     * */
+    @NonNull
+    int[] toArray() {
+        int[] values = new int[size];
+        for (int block = 0; block < blockFirst.length; block++) {
+            long current = blockFirst[block] & 0xFFFFFFFFL;
+            int offset = blockOffset[block];
+            int start = block * BLOCK_SIZE;
+            values[start] = (int) current;
+            int end = Math.min(size, start + BLOCK_SIZE);
+            for (int i = start + 1; i < end; i++) {
+                int quotient = unary(offset);
+                offset += quotient + 1;
+                current += ((long) quotient << k) | read(offset, k);
+                offset += k;
+                values[i] = (int) current;
+            }
+        }
+        return values;
+    }
+
+    void writeTo(@NonNull DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeByte(k);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    @NonNull
+    static RicePrefixSet readFrom(@NonNull DataInputStream in) throws IOException {
+        int size = in.readInt();
+        int k = in.readUnsignedByte();
+        int words = in.readInt();
+        if (size < 0 || k > 32 || words < 0 || words > (size * 36L + 128) / 64) {
+            throw new IOException("Corrupted prefix set");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        try {
+            return new RicePrefixSet(size, k, bits);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted prefix set", e);
+        }
+    }
+
+    private long read(int offset, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int word = offset >>> 6;
+        int shift = offset & 63;
+        long value = bits[word] >>> shift;
+        if (shift + count > 64) {
+            value |= bits[word + 1] << (64 - shift);
+        }
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+
+    // number of zero bits before the next one bit
+    private int unary(int offset) {
+        int word = offset >>> 6;
+        long remaining = bits[word] >>> (offset & 63);
+        if (remaining != 0) {
+            return Long.numberOfTrailingZeros(remaining);
+        }
+        int count = 64 - (offset & 63);
+        while (bits[++word] == 0) {
+            count += 64;
+        }
+        return count + Long.numberOfTrailingZeros(bits[word]);
+    }
+
+    private static final class BitWriter {
+
+        private long[] words;
+        private long position;
+
+        BitWriter(long capacity) {
+            words = new long[(int) Math.min(Integer.MAX_VALUE - 8, (capacity + 63) / 64)];
+        }
+
+        void write(long value, int count) {
+            if (count == 0) {
+                return;
+            }
+            value &= count == 64 ? -1L : (1L << count) - 1;
+            ensure(count);
+            int word = (int) (position >>> 6);
+            int shift = (int) (position & 63);
+            words[word] |= value << shift;
+            if (shift + count > 64) {
+                words[word + 1] |= value >>> (64 - shift);
+            }
+            position += count;
+        }
+
+        void unary(int zeros) {
+            ensure(zeros + 1);
+            position += zeros;
+            words[(int) (position >>> 6)] |= 1L << (position & 63);
+            position++;
+        }
+
+        private void ensure(int count) {
+            long needed = (position + count + 63) / 64 + 1;
+            if (needed > words.length) {
+                words = Arrays.copyOf(words, (int) Math.max(needed, words.length * 3L / 2));
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (int) ((position + 63) / 64));
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Search engine searched with by {@link WebView#loadUrl(String)} when the input
+ * is not a url. Urls are templates with {@code %s} where the query goes, such
+ * as {@code https://duckduckgo.com/?q=%s}. Templates are split once, so
+ * composing a url takes a single string build.
+ *
+ * @see SearchEngines#register(SearchEngine)
+ * */
+public final class SearchEngine {
+
+    static final String PLACEHOLDER = "%s";
+
+    private final String name;
+    private final String[] searchUrl;
+    @Nullable
+    private final String[] suggestUrl;
+    @Nullable
+    private final String[] postData;
+
+    private SearchEngine(@NonNull Builder builder) {
+        name = builder.name;
+        searchUrl = split(builder.searchUrl, builder.postData == null);
+        suggestUrl = builder.suggestUrl != null ? split(builder.suggestUrl, true) : null;
+        postData = builder.postData != null ? split(builder.postData, true) : null;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return url to load to search for {@code query}. For engines that
+     * search with POST requests it's the url to post {@link #getPostData(String)} to.
+     * */
+    @NonNull
+    public String getSearchUrl(@NonNull String query) {
+        return compose(searchUrl, query);
+    }
+
+    /**
+     * @return url returning suggestions for {@code query}, null if the engine
+     * has no suggestions.
+     * */
+    @Nullable
+    public String getSuggestUrl(@NonNull String query) {
+        return suggestUrl != null ? compose(suggestUrl, query) : null;
+    }
+
+    /**
+     * @return true if searches are POST requests.
+     * */
+    public boolean isPost() {
+        return postData != null;
+    }
+
+    /**
+     * @return body of the POST request searching for {@code query}, null if
+     * searches are GET requests.
+     * */
+    @Nullable
+    public byte[] getPostData(@NonNull String query) {
+        if (postData == null) {
+            return null;
+        }
+        try {
+            return compose(postData, query).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return template split at the placeholder, a template without one
+     * is a single part.
+     * */
+    @NonNull
+    private static String[] split(@NonNull String template, boolean required) {
+        int index = template.indexOf(PLACEHOLDER);
+        if (index < 0) {
+            if (required) {
+                throw new IllegalArgumentException("No " + PLACEHOLDER + " in " + template);
+            }
+            return new String[]{template};
+        }
+        return new String[]{template.substring(0, index),
+                template.substring(index + PLACEHOLDER.length())};
+    }
+
+    @NonNull
+    private static String compose(@NonNull String[] template, @NonNull String query) {
+        if (template.length == 1) {
+            return template[0];
+        }
+        String encoded;
+        try {
+            encoded = URLEncoder.encode(query, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        return new StringBuilder(template[0].length() + encoded.length() + template[1].length())
+                .append(template[0]).append(encoded).append(template[1]).toString();
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private final String searchUrl;
+        @Nullable
+        private String suggestUrl;
+        @Nullable
+        private String postData;
+
+        /**
+         * @param name      name the engine is looked up by, case is ignored.
+         * @param searchUrl template of search urls. For POST engines the url
+         *                  the query is posted to, which may have no {@code %s}.
+         * */
+        public Builder(@NonNull String name, @NonNull String searchUrl) {
+            this.name = name;
+            this.searchUrl = searchUrl;
+        }
+
+        /**
+         * @param suggestUrl template of urls returning suggestions.
+         * */
+        @NonNull
+        public Builder suggestUrl(@Nullable String suggestUrl) {
+            this.suggestUrl = suggestUrl;
+            return this;
+        }
+
+        /**
+         * Makes searches POST requests.
+         *
+         * @param postData template of the form encoded body, such as {@code q=%s}.
+         * */
+        @NonNull
+        public Builder post(@Nullable String postData) {
+            this.postData = postData;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a template has no {@code %s}.
+         * */
+        @NonNull
+        public SearchEngine build() {
+            return new SearchEngine(this);
+        }
+    }
+
+}
\ No newline at end of file
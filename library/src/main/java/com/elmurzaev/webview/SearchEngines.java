@@ -25,12 +25,35 @@
 package com.elmurzaev.webview;
 
 import android.content.Context;
-import android.webkit.URLUtil;
+import android.content.res.Resources;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Search engines known by name. The built-in ones are read from resources
+ * once, more can be registered at any time. Engines are kept in an immutable
+ * registry that is replaced on every change, so lookups take no locks and are
+ * safe from any thread.
+ * */
 public final class SearchEngines {
 
+    private static final Object sLock = new Object();
+    // changes made before the built-in engines were read, an engine
+    // registered or the name of one unregistered
+    private static final List<Object> sPending = new ArrayList<>();
+    @Nullable
+    private static volatile Registry sRegistry;
+
+    private SearchEngines() {
+    }
+
     /**
      * @param context required to access resources.
      * @param searchEngine name of the search engine, such as 'google'.
@@ -41,20 +64,118 @@ public final class SearchEngines {
     public static String getSearchUrlFor(@NonNull Context context,
                                          @NonNull String searchEngine,
                                          @NonNull String query) {
-        String url = null;
+        return get(context, searchEngine).getSearchUrl(query);
+    }
+
+    /**
+     * @param context required to access resources.
+     * @param name name of the search engine, case is ignored.
+     * @return engine named {@code name} or the first built-in engine if there is none.
+     * */
+    @NonNull
+    public static SearchEngine get(@NonNull Context context, @NonNull String name) {
+        Registry registry = registry(context);
+        SearchEngine engine = registry.engines.get(name);
+        return engine != null ? engine : registry.fallback;
+    }
 
-        String[] engineNames = context.getResources().getStringArray(R.array.search_engine_names);
-        String[] engineUrls = context.getResources().getStringArray(R.array.search_engine_urls);
+    /**
+     * @param context required to access resources.
+     * @return built-in and registered engines, in the order they were added.
+     * */
+    @NonNull
+    public static List<SearchEngine> getAll(@NonNull Context context) {
+        return registry(context).ordered;
+    }
 
-        for (int i = 0; i < engineNames.length; i++) {
-            if (searchEngine.equalsIgnoreCase(engineNames[i])) {
-                url = engineUrls[i];
+    /**
+     * Adds {@code engine}, replacing the engine of the same name.
+     * */
+    public static void register(@NonNull SearchEngine engine) {
+        synchronized (sLock) {
+            Registry registry = sRegistry;
+            if (registry == null) {
+                sPending.add(engine);
+                return;
             }
+            List<SearchEngine> engines = new ArrayList<>(registry.ordered);
+            remove(engines, engine.getName());
+            engines.add(engine);
+            sRegistry = new Registry(engines, registry.fallback);
         }
-        if (url == null) {
-            url = engineUrls[0];
+    }
+
+    /**
+     * Removes the engine named {@code name}, case is ignored.
+     * */
+    public static void unregister(@NonNull String name) {
+        synchronized (sLock) {
+            Registry registry = sRegistry;
+            if (registry == null) {
+                sPending.add(name);
+                return;
+            }
+            List<SearchEngine> engines = new ArrayList<>(registry.ordered);
+            remove(engines, name);
+            sRegistry = new Registry(engines, registry.fallback);
+        }
+    }
+
+    @NonNull
+    private static Registry registry(@NonNull Context context) {
+        Registry registry = sRegistry;
+        if (registry != null) {
+            return registry;
+        }
+        synchronized (sLock) {
+            if (sRegistry == null) {
+                Resources resources = context.getResources();
+                String[] names = resources.getStringArray(R.array.search_engine_names);
+                String[] urls = resources.getStringArray(R.array.search_engine_urls);
+                List<SearchEngine> engines = new ArrayList<>();
+                for (int i = 0; i < names.length; i++) {
+                    engines.add(new SearchEngine.Builder(names[i], urls[i]).build());
+                }
+                SearchEngine fallback = engines.get(0);
+                for (Object change : sPending) {
+                    if (change instanceof SearchEngine) {
+                        SearchEngine engine = (SearchEngine) change;
+                        remove(engines, engine.getName());
+                        engines.add(engine);
+                    } else {
+                        remove(engines, (String) change);
+                    }
+                }
+                sPending.clear();
+                sRegistry = new Registry(engines, fallback);
+            }
+            return sRegistry;
+        }
+    }
+
+    private static void remove(@NonNull List<SearchEngine> engines, @NonNull String name) {
+        for (int i = engines.size() - 1; i >= 0; i--) {
+            if (engines.get(i).getName().equalsIgnoreCase(name)) {
+                engines.remove(i);
+            }
+        }
+    }
+
+    private static final class Registry {
+
+        // name -> engine, case is ignored
+        final Map<String, SearchEngine> engines = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final List<SearchEngine> ordered;
+        // used for unknown names, even if it was replaced or removed
+        final SearchEngine fallback;
+
+        Registry(@NonNull List<SearchEngine> engines, @NonNull SearchEngine fallback) {
+            for (SearchEngine engine : engines) {
+                this.engines.put(engine.getName(), engine);
+            }
+            this.ordered = Collections.unmodifiableList(engines);
+            this.fallback = fallback;
         }
-        return URLUtil.composeSearchUrl(query, url, "%s");
     }
 
 }
\ No newline at end of file
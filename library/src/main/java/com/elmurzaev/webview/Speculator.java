@@ -0,0 +1,663 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.elmurzaev.webview;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms pages the user is likely to open next, so they show sooner once they
+ * are opened. A speculation either prefetches the document of the page, which
+ * is served to the navigation that opens it, or prerenders the whole page in a
+ * hidden {@link WebView} that is shown instead of the current one with
+ * {@link #takePrerendered(String, Context)}.
+ * <p>
+ * Speculations are started with {@link #speculate(String)}, for the top
+ * suggestion of the address bar with {@link #speculateSuggestion(String, List)},
+ * and, without cookies, by views that
+ * {@link WebView#setSpeculateOnLinks(boolean)} for links that are long-pressed.
+ * At most {@link #setMaxConcurrent(int)} run at a time, none are started on
+ * metered networks unless {@link #setAllowMetered(boolean)}, and all are
+ * dropped when the system runs low on memory.
+ * <pre>
+ * Speculator speculator = new Speculator(context, Speculator.MODE_PREFETCH);
+ * webView.setSpeculator(speculator);
+ * // as the user types
+ * speculator.speculateSuggestion(text, historyStore.suggest(text, 8));
+ * </pre>
+ * */
+public final class Speculator implements RequestInterceptor, ComponentCallbacks2 {
+
+    /**
+     * Fetches the document of the page into memory. It's cheap, but the page
+     * still loads its resources and renders once it's opened.
+     * */
+    public static final int MODE_PREFETCH = 0;
+    /**
+     * Loads and renders the page in a hidden {@link WebView}, which costs tens
+     * of megabytes per page. Falls back to {@link #MODE_PREFETCH} on low-RAM
+     * devices and while less than {@link #setMinAvailableMemory(long)} is available.
+     * */
+    public static final int MODE_PRERENDER = 1;
+
+    // older speculations are unlikely to be opened and their pages may be stale
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+    // a prefetch that isn't done by then may be stalled, WebView fetches the page itself
+    private static final long COALESCE_TIMEOUT = 300;
+    private static final int MAX_DOCUMENT_SIZE = 2 * 1024 * 1024;
+    // shorter text completes to too many pages to guess which one is wanted
+    private static final int MIN_SUGGESTION_TEXT_LENGTH = 3;
+    private static final String ACCEPT_DOCUMENT =
+            "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Speculator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Context context;
+    private final int mode;
+    // url -> speculation, oldest first
+    private final LinkedHashMap<String, Speculation> speculations = new LinkedHashMap<>();
+    private final AtomicLong speculationCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong timeSaved = new AtomicLong();
+    private volatile int maxConcurrent = 2;
+    private volatile long minAvailableMemory = 256L * 1024 * 1024;
+    private volatile boolean allowMetered;
+    @Nullable
+    private volatile String userAgent;
+
+    /**
+     * @param mode {@link #MODE_PREFETCH} or {@link #MODE_PRERENDER}.
+     * */
+    public Speculator(@NonNull Context context, int mode) {
+        this.context = context.getApplicationContext();
+        this.mode = mode;
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * @param max speculations kept at a time, the oldest is dropped for a new
+     *            one. 0 disables speculation. Default is 2.
+     * */
+    public void setMaxConcurrent(int max) {
+        maxConcurrent = max;
+        synchronized (this) {
+            trimTo(Math.max(0, max));
+        }
+    }
+
+    /**
+     * @param bytes memory that must remain available beyond the system's
+     *              low-memory threshold to prerender. Default is 256 MB.
+     * */
+    public void setMinAvailableMemory(long bytes) {
+        minAvailableMemory = bytes;
+    }
+
+    /**
+     * @param allow true to speculate on metered networks too. Default is false.
+     * */
+    public void setAllowMetered(boolean allow) {
+        allowMetered = allow;
+    }
+
+    /**
+     * Starts warming {@code url} unless it's being warmed already or the
+     * budget doesn't allow it.
+     *
+     * @return true if {@code url} is being speculated on.
+     * */
+    @MainThread
+    public boolean speculate(@NonNull String url) {
+        return start(url, true);
+    }
+
+    /**
+     * Speculates on a link the user only pointed at, which may be one that
+     * acts on a visit, such as "log out". It's prefetched without cookies, so
+     * the site can't tell who it's for, and the document is only served if
+     * there are no cookies for it when it's opened either.
+     *
+     * @return true if {@code url} is being speculated on.
+     * */
+    @MainThread
+    boolean speculateOnLink(@NonNull String url) {
+        return start(url, false);
+    }
+
+    private boolean start(@NonNull String url, boolean withCookies) {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            return false;
+        }
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            removeExpired(now);
+            if (speculations.containsKey(url)) {
+                return true;
+            }
+        }
+        int mode = budgetedMode();
+        if (mode < 0) {
+            skippedCount.incrementAndGet();
+            return false;
+        }
+        if (!withCookies) {
+            // a page can't be rendered without cookies
+            mode = MODE_PREFETCH;
+        }
+        Speculation speculation = new Speculation(url, mode, withCookies, userAgent, now);
+        synchronized (this) {
+            // the latest guess is the likeliest to be right
+            trimTo(maxConcurrent - 1);
+            speculations.put(url, speculation);
+        }
+        speculationCount.incrementAndGet();
+        if (mode == MODE_PRERENDER) {
+            prerender(speculation);
+        } else {
+            sExecutor.execute(() -> prefetch(speculation));
+        }
+        return true;
+    }
+
+    /**
+     * Speculates on the top suggestion for {@code text} if the text is the
+     * start of its url, as the address bar completes it inline then and
+     * submitting opens it.
+     *
+     * @param suggestions suggestions for {@code text}, best first, such as
+     *                    those of {@link HistoryStore#suggest(String, int)}.
+     * @return true if the top suggestion is being speculated on.
+     * */
+    @MainThread
+    public boolean speculateSuggestion(@NonNull String text,
+                                       @NonNull List<HistoryStore.Entry> suggestions) {
+        String typed = text.trim();
+        if (typed.length() < MIN_SUGGESTION_TEXT_LENGTH || suggestions.isEmpty()) {
+            return false;
+        }
+        String url = suggestions.get(0).getUrl();
+        return completes(typed, url) && speculate(url);
+    }
+
+    /**
+     * Drops the speculation on {@code url}, if there is one.
+     * */
+    public void cancel(@NonNull String url) {
+        Speculation speculation;
+        synchronized (this) {
+            speculation = speculations.remove(url);
+        }
+        if (speculation != null) {
+            speculation.cancel();
+        }
+    }
+
+    public void cancelAll() {
+        synchronized (this) {
+            trimTo(0);
+        }
+    }
+
+    /**
+     * Takes the hidden view that prerendered {@code url} to show it instead of
+     * the current one, which counts as a hit.
+     *
+     * @param context context the view is used with from now on, usually an activity.
+     * @return the view, which the caller owns from now on, or null if
+     * {@code url} isn't prerendered.
+     * */
+    @MainThread
+    @Nullable
+    public WebView takePrerendered(@NonNull String url, @NonNull Context context) {
+        long now = SystemClock.elapsedRealtime();
+        Speculation speculation;
+        synchronized (this) {
+            removeExpired(now);
+            speculation = speculations.get(url);
+            if (speculation == null || speculation.view == null) {
+                return null;
+            }
+            speculations.remove(url);
+        }
+        WebView view = speculation.view;
+        ((MutableContextWrapper) view.getContext()).setBaseContext(context);
+        view.setWebViewClient(view.new WebViewClient());
+        hit(speculation, now);
+        return view;
+    }
+
+    @Nullable
+    @Override
+    public WebResourceResponse intercept(@NonNull RequestContext context) {
+        WebResourceRequest request = context.getRequest();
+        if (!context.isForMainFrame() || !"GET".equals(request.getMethod())) {
+            return null;
+        }
+        String url = context.getUrl();
+        long now = SystemClock.elapsedRealtime();
+        Speculation speculation;
+        synchronized (this) {
+            if (speculations.isEmpty()) {
+                return null;
+            }
+            removeExpired(now);
+            speculation = speculations.get(url);
+            if (speculation == null || speculation.mode != MODE_PREFETCH) {
+                return null;
+            }
+            speculations.remove(url);
+        }
+        try {
+            if (!speculation.done.await(COALESCE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                speculation.cancel();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            speculation.cancel();
+            return null;
+        }
+        if (!speculation.isValidFor(request)) {
+            return null;
+        }
+        hit(speculation, now);
+        List<String> setCookies = speculation.setCookies;
+        if (setCookies != null) {
+            for (String setCookie : setCookies) {
+                CookieManager.getInstance().setCookie(url, setCookie);
+            }
+        }
+        //noinspection ConstantConditions
+        return new WebResourceResponse(speculation.mimeType, speculation.encoding,
+                HttpURLConnection.HTTP_OK, speculation.reasonPhrase, speculation.headers,
+                new ByteArrayInputStream(speculation.body));
+    }
+
+    /**
+     * @return number of speculations started.
+     * */
+    public long getSpeculationCount() {
+        return speculationCount.get();
+    }
+
+    /**
+     * @return number of speculations not started because of the budget.
+     * */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * @return number of speculated pages that were opened.
+     * */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return {@link #getHitCount()} divided by {@link #getSpeculationCount()}.
+     * */
+    public double getHitRatio() {
+        long speculations = speculationCount.get();
+        return speculations == 0 ? 0 : (double) hitCount.get() / speculations;
+    }
+
+    /**
+     * @return milliseconds the first paint of opened pages was brought forward
+     * by in total. That is the time spent fetching the document for
+     * {@link #MODE_PREFETCH} and rendering the page for {@link #MODE_PRERENDER}
+     * before it was opened.
+     * */
+    public long getTimeSaved() {
+        return timeSaved.get();
+    }
+
+    /**
+     * @return {@link #getTimeSaved()} divided by {@link #getHitCount()}.
+     * */
+    public long getAverageTimeSaved() {
+        long hits = hitCount.get();
+        return hits == 0 ? 0 : timeSaved.get() / hits;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // speculations are the cheapest memory to give back
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            cancelAll();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        cancelAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    /**
+     * @param userAgent User-Agent of the views pages are speculated for, null for the default.
+     * */
+    void setUserAgent(@Nullable String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @return mode a speculation can use now, or -1 if none can be started.
+     * */
+    private int budgetedMode() {
+        if (maxConcurrent <= 0) {
+            return -1;
+        }
+        ConnectivityManager connectivity = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity != null) {
+            NetworkInfo info = connectivity.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()
+                    || (!allowMetered && connectivity.isActiveNetworkMetered())) {
+                return -1;
+            }
+        }
+        ActivityManager activity = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activity == null) {
+            return MODE_PREFETCH;
+        }
+        ActivityManager.MemoryInfo memory = new ActivityManager.MemoryInfo();
+        activity.getMemoryInfo(memory);
+        if (memory.lowMemory) {
+            return -1;
+        }
+        boolean canPrerender = !activity.isLowRamDevice()
+                && memory.availMem - memory.threshold >= minAvailableMemory;
+        return mode == MODE_PRERENDER && canPrerender ? MODE_PRERENDER : MODE_PREFETCH;
+    }
+
+    private void hit(@NonNull Speculation speculation, long openedAt) {
+        hitCount.incrementAndGet();
+        // a page that isn't ready yet saved the time it has been loading
+        timeSaved.addAndGet(Math.max(0,
+                Math.min(speculation.readyAt, openedAt) - speculation.startedAt));
+    }
+
+    private void discard(@NonNull Speculation speculation) {
+        synchronized (this) {
+            if (speculations.get(speculation.url) == speculation) {
+                speculations.remove(speculation.url);
+            }
+        }
+        speculation.cancel();
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Speculation> iterator = speculations.values().iterator();
+        while (iterator.hasNext()) {
+            Speculation speculation = iterator.next();
+            if (now - speculation.startedAt <= MAX_AGE) {
+                break;
+            }
+            iterator.remove();
+            speculation.cancel();
+        }
+    }
+
+    private void trimTo(int size) {
+        Iterator<Speculation> iterator = speculations.values().iterator();
+        while (speculations.size() > size && iterator.hasNext()) {
+            Speculation speculation = iterator.next();
+            iterator.remove();
+            speculation.cancel();
+        }
+    }
+
+    @MainThread
+    private void prerender(@NonNull Speculation speculation) {
+        WebView view = new WebView(new MutableContextWrapper(context));
+        speculation.view = view;
+        view.setWebViewClient(view.new WebViewClient() {
+            @Override
+            public void onPageCommitVisible(android.webkit.WebView v, String url) {
+                super.onPageCommitVisible(v, url);
+                speculation.ready();
+            }
+
+            @Override
+            public void onPageFinished(android.webkit.WebView v, String url) {
+                super.onPageFinished(v, url);
+                // the only signal before Android 6.0
+                speculation.ready();
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public void onReceivedError(android.webkit.WebView v, int errorCode,
+                                        String description, String failingUrl) {
+                super.onReceivedError(v, errorCode, description, failingUrl);
+                discard(speculation);
+            }
+        });
+        // laid out at screen size, as if it was shown, so the page renders for it
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        view.measure(View.MeasureSpec.makeMeasureSpec(metrics.widthPixels, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(metrics.heightPixels, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, metrics.widthPixels, metrics.heightPixels);
+        if (speculation.userAgent != null) {
+            view.setUserAgent(speculation.userAgent);
+        }
+        view.loadUrl(speculation.url);
+    }
+
+    @WorkerThread
+    private void prefetch(@NonNull Speculation speculation) {
+        String url = speculation.url;
+        HttpURLConnection connection = null;
+        try {
+            if (speculation.cancelled) {
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Accept", ACCEPT_DOCUMENT);
+            // lets servers tell speculations from visits
+            headers.put("Sec-Purpose", "prefetch");
+            if (speculation.userAgent != null) {
+                headers.put("User-Agent", speculation.userAgent);
+            }
+            if (speculation.withCookies) {
+                speculation.cookie = CookieManager.getInstance().getCookie(url);
+            }
+            connection = HttpFetcher.open(url, headers, speculation.withCookies);
+            int statusCode = connection.getResponseCode();
+            String mimeType = HttpFetcher.mimeTypeOf(connection.getContentType());
+            // redirects and errors are left to the navigation
+            if (statusCode != HttpURLConnection.HTTP_OK || !isDocument(mimeType)
+                    || HttpFetcher.contentLengthOf(connection) > MAX_DOCUMENT_SIZE) {
+                return;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = HttpFetcher.bodyOf(connection, statusCode)) {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    if (speculation.cancelled || body.size() + count > MAX_DOCUMENT_SIZE) {
+                        return;
+                    }
+                    body.write(buffer, 0, count);
+                }
+            }
+            speculation.mimeType = mimeType;
+            speculation.encoding = HttpFetcher.encodingOf(connection.getContentType());
+            speculation.reasonPhrase = HttpFetcher.reasonPhraseOf(connection, statusCode);
+            speculation.headers = HttpFetcher.headersOf(connection);
+            // stored once the page is opened, a page that isn't may not set any
+            speculation.setCookies = connection.getHeaderFields().get("Set-Cookie");
+            speculation.body = body.toByteArray();
+            speculation.ready();
+        } catch (IOException e) {
+            // the navigation fetches the document itself
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            speculation.done.countDown();
+        }
+    }
+
+    private static boolean isDocument(@NonNull String mimeType) {
+        return mimeType.equalsIgnoreCase("text/html")
+                || mimeType.equalsIgnoreCase("application/xhtml+xml");
+    }
+
+    /**
+     * @return true if {@code url} starts with {@code typed}, with or without
+     * its scheme and {@code www.} prefix.
+     * */
+    private static boolean completes(@NonNull String typed, @NonNull String url) {
+        if (url.regionMatches(true, 0, typed, 0, typed.length())) {
+            return true;
+        }
+        int start = url.indexOf("://") + 3;
+        if (url.regionMatches(true, start, typed, 0, typed.length())) {
+            return true;
+        }
+        return url.startsWith("www.", start)
+                && url.regionMatches(true, start + 4, typed, 0, typed.length());
+    }
+
+    private static final class Speculation {
+
+        final String url;
+        final int mode;
+        final boolean withCookies;
+        @Nullable
+        final String userAgent;
+        final long startedAt;
+        final CountDownLatch done = new CountDownLatch(1);
+        // when the document was fetched or the page first painted
+        volatile long readyAt = Long.MAX_VALUE;
+        volatile boolean cancelled;
+        @Nullable
+        WebView view;
+        // set by the prefetch before done is counted down
+        @Nullable
+        String cookie;
+        @Nullable
+        String mimeType;
+        @Nullable
+        String encoding;
+        @Nullable
+        String reasonPhrase;
+        @Nullable
+        Map<String, String> headers;
+        @Nullable
+        List<String> setCookies;
+        @Nullable
+        byte[] body;
+
+        Speculation(@NonNull String url, int mode, boolean withCookies,
+                    @Nullable String userAgent, long startedAt) {
+            this.url = url;
+            this.mode = mode;
+            this.withCookies = withCookies;
+            this.userAgent = userAgent;
+            this.startedAt = startedAt;
+        }
+
+        void ready() {
+            if (readyAt == Long.MAX_VALUE) {
+                readyAt = SystemClock.elapsedRealtime();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            WebView view = this.view;
+            if (view != null) {
+                sMainHandler.post(() -> {
+                    view.stopLoading();
+                    view.destroy();
+                });
+            }
+        }
+
+        /**
+         * @return true if the fetched document is what {@code request} would get.
+         * */
+        boolean isValidFor(@NonNull WebResourceRequest request) {
+            if (body == null || cancelled) {
+                return false;
+            }
+            String requestedUserAgent = request.getRequestHeaders().get("User-Agent");
+            if (requestedUserAgent != null && userAgent != null
+                    && !requestedUserAgent.equals(userAgent)) {
+                return false;
+            }
+            // a login or logout since the fetch may change the page
+            return Objects.equals(cookie, CookieManager.getInstance().getCookie(url));
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,308 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Canonicalizes urls and lists the host suffix / path prefix expressions
+ * looked up in {@link UrlReputation}, following the rules of the Safe
+ * Browsing API: up to 5 hosts and 6 paths, so at most 30 expressions.
+ * */
+final class UrlExpressions {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_HOST_SUFFIXES = 4;
+    private static final int MAX_PATH_PREFIXES = 4;
+
+    private UrlExpressions() {
+    }
+
+    /**
+     * @return expressions of {@code url} without the scheme, such as
+     * {@code a.b.c/1/2.html?param=1}, {@code b.c/1/} or {@code b.c/},
+     * or an empty list if it has no host.
+     * */
+    @NonNull
+    static List<String> of(@NonNull String url) {
+        String canonical = canonicalize(url);
+        List<String> expressions = new ArrayList<>();
+        if (canonical == null) {
+            return expressions;
+        }
+        int slash = canonical.indexOf('/');
+        String host = canonical.substring(0, slash);
+        String pathAndQuery = canonical.substring(slash);
+        int question = pathAndQuery.indexOf('?');
+        String path = question < 0 ? pathAndQuery : pathAndQuery.substring(0, question);
+
+        List<String> hosts = new ArrayList<>(MAX_HOST_SUFFIXES + 1);
+        hosts.add(host);
+        if (!isIpAddress(host)) {
+            String[] labels = host.split("\\.");
+            int first = Math.max(1, labels.length - MAX_HOST_SUFFIXES - 1);
+            for (int i = first; i < labels.length - 1; i++) {
+                StringBuilder suffix = new StringBuilder();
+                for (int j = i; j < labels.length; j++) {
+                    if (j > i) {
+                        suffix.append('.');
+                    }
+                    suffix.append(labels[j]);
+                }
+                hosts.add(suffix.toString());
+            }
+        }
+
+        List<String> paths = new ArrayList<>(MAX_PATH_PREFIXES + 2);
+        paths.add(pathAndQuery);
+        if (question >= 0) {
+            paths.add(path);
+        }
+        int prefixes = 0;
+        for (int i = path.indexOf('/'); i >= 0 && prefixes < MAX_PATH_PREFIXES;
+             i = path.indexOf('/', i + 1)) {
+            String prefix = path.substring(0, i + 1);
+            if (!paths.contains(prefix)) {
+                paths.add(prefix);
+            }
+            prefixes++;
+        }
+
+        for (String h : hosts) {
+            for (String p : paths) {
+                expressions.add(h + p);
+            }
+        }
+        return expressions;
+    }
+
+    /**
+     * @return {@code host/path?query} with escapes resolved and reapplied
+     * only where needed, or null if there is no host.
+     * */
+    @Nullable
+    static String canonicalize(@NonNull String url) {
+        // work on the UTF-8 bytes as latin-1 chars, so unescaping can produce any byte
+        String s = new String(url.trim().getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.ISO_8859_1);
+        StringBuilder stripped = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '#') {
+                break;
+            }
+            if (c != '\t' && c != '\r' && c != '\n') {
+                stripped.append(c);
+            }
+        }
+        s = stripped.toString();
+        for (int i = 0; i < 16; i++) {
+            String unescaped = unescape(s);
+            if (unescaped.equals(s)) {
+                break;
+            }
+            s = unescaped;
+        }
+
+        int start = s.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < s.length() && s.charAt(end) != '/' && s.charAt(end) != '?') {
+            end++;
+        }
+        String host = canonicalHost(s.substring(start, end));
+        if (host == null) {
+            return null;
+        }
+        String path = s.substring(end);
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        String query = null;
+        int question = path.indexOf('?');
+        if (question >= 0) {
+            query = path.substring(question);
+            path = path.substring(0, question);
+        }
+        StringBuilder builder = new StringBuilder();
+        escape(host, builder);
+        escape(canonicalPath(path), builder);
+        if (query != null) {
+            escape(query, builder);
+        }
+        return builder.toString();
+    }
+
+    @Nullable
+    private static String canonicalHost(String authority) {
+        int at = authority.lastIndexOf('@');
+        String host = authority.substring(at + 1);
+        if (host.startsWith("[")) {
+            int close = host.indexOf(']');
+            return close < 0 ? null : host.substring(0, close + 1).toLowerCase();
+        }
+        int colon = host.indexOf(':');
+        if (colon >= 0) {
+            host = host.substring(0, colon);
+        }
+        StringBuilder builder = new StringBuilder(host.length());
+        for (int i = 0; i < host.length(); i++) {
+            char c = Character.toLowerCase(host.charAt(i));
+            if (c == '.' && (builder.length() == 0 || builder.charAt(builder.length() - 1) == '.')) {
+                continue;
+            }
+            builder.append(c);
+        }
+        while (builder.length() > 0 && builder.charAt(builder.length() - 1) == '.') {
+            builder.setLength(builder.length() - 1);
+        }
+        if (builder.length() == 0) {
+            return null;
+        }
+        String ip = ipv4(builder.toString());
+        return ip != null ? ip : builder.toString();
+    }
+
+    // accepts the decimal, octal and hex forms browsers do, e.g. 0x7f.1 or 2130706433
+    @Nullable
+    private static String ipv4(String host) {
+        String[] parts = host.split("\\.", -1);
+        if (parts.length > 4) {
+            return null;
+        }
+        long[] values = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            int radix = 10;
+            if (part.length() > 2 && (part.startsWith("0x") || part.startsWith("0X"))) {
+                radix = 16;
+                part = part.substring(2);
+            } else if (part.length() > 1 && part.startsWith("0")) {
+                radix = 8;
+                part = part.substring(1);
+            }
+            if (part.isEmpty() || part.length() > 11) {
+                return null;
+            }
+            try {
+                values[i] = Long.parseLong(part, radix);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (values[i] < 0) {
+                return null;
+            }
+        }
+        long address = 0;
+        for (int i = 0; i < values.length - 1; i++) {
+            if (values[i] > 255) {
+                return null;
+            }
+            address |= values[i] << (8 * (3 - i));
+        }
+        long last = values[values.length - 1];
+        if (last >= 1L << (8 * (5 - values.length))) {
+            return null;
+        }
+        address |= last;
+        return ((address >>> 24) & 255) + "." + ((address >>> 16) & 255) + "."
+                + ((address >>> 8) & 255) + "." + (address & 255);
+    }
+
+    private static boolean isIpAddress(String host) {
+        return host.startsWith("[") || ipv4(host) != null;
+    }
+
+    private static String canonicalPath(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 1;
+        while (start <= path.length()) {
+            int slash = path.indexOf('/', start);
+            int end = slash < 0 ? path.length() : slash;
+            String segment = path.substring(start, end);
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+            if (slash < 0) {
+                break;
+            }
+            start = slash + 1;
+        }
+        StringBuilder builder = new StringBuilder("/");
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0) {
+                builder.append('/');
+            }
+            builder.append(segments.get(i));
+        }
+        // a trailing slash marks a directory and is kept
+        if (!segments.isEmpty() && (path.endsWith("/") || path.endsWith("/.")
+                || path.endsWith("/.."))) {
+            builder.append('/');
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('%') < 0) {
+            return s;
+        }
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < s.length()
+                    && Character.digit(s.charAt(i + 1), 16) >= 0
+                    && Character.digit(s.charAt(i + 2), 16) >= 0) {
+                builder.append((char) (Character.digit(s.charAt(i + 1), 16) * 16
+                        + Character.digit(s.charAt(i + 2), 16)));
+                i += 2;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void escape(String s, StringBuilder out) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= ' ' || c >= 0x7F || c == '#' || c == '%') {
+                out.append('%').append(HEX[(c >> 4) & 15]).append(HEX[c & 15]);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+}
\ No newline at end of file
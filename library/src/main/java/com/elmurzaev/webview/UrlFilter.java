@@ -0,0 +1,616 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Blocks urls using filter lists written in Adblock Plus syntax, such as EasyList.
+ * Supported are url patterns with {@code *}, {@code ^}, {@code |} and {@code ||},
+ * {@code @@} exception rules and the {@code third-party}, {@code domain} and
+ * resource type options. Rules with other options, regular expression rules
+ * and element hiding rules are skipped. Exception rules with the {@code document}
+ * option allow the pages they match along with every request of those pages.
+ * <p>
+ * Every rule is indexed by the rarest token of its pattern, so a url is only
+ * tested against rules that share a token with it.
+ * */
+public class UrlFilter {
+
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    @Nullable
+    private static volatile UrlFilter sDefault;
+
+    private final RuleIndex blockRules;
+    private final RuleIndex exceptionRules;
+    // exceptions with the document option, they allow everything the page loads
+    private final RuleIndex documentExceptionRules;
+    // pages make most of their requests in a row, so the last decision is kept
+    @Nullable
+    private volatile DocumentDecision lastDocumentDecision;
+    private int ruleCount;
+    private int skippedCount;
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    /**
+     * @param stream filter list, one rule per line.
+     * */
+    public UrlFilter(@NonNull InputStream stream) {
+        RuleIndex.Builder block = new RuleIndex.Builder();
+        RuleIndex.Builder exception = new RuleIndex.Builder();
+        RuleIndex.Builder documentException = new RuleIndex.Builder();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addRule(line.trim(), block, exception, documentException);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        blockRules = block.build();
+        exceptionRules = exception.build();
+        documentExceptionRules = documentException.build();
+    }
+
+    /**
+     * @return filter used by every {@link WebView} that has no filter of its own.
+     * */
+    @Nullable
+    public static UrlFilter getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Sets a filter shared by every {@link WebView} that has no filter of its own
+     * and by service workers. Can be called from any thread.
+     * */
+    public static void setDefault(@Nullable UrlFilter filter) {
+        sDefault = filter;
+    }
+
+    /**
+     * @return number of rules in use.
+     * */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return number of rules that were skipped because they use
+     * syntax or options that are not supported.
+     * */
+    public int getSkippedRuleCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return number of urls blocked by this filter, including requests
+     * made by pages and by service workers.
+     * */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * @param url requested url.
+     * @param documentHost host of the page that made the request, if known.
+     * @param resourceType one of the {@link ResourceType} values.
+     * @return true if a rule blocks {@code url} and no exception rule allows it.
+     * */
+    public boolean isBlocked(@NonNull String url, @Nullable String documentHost,
+                             int resourceType) {
+        RequestContext context = new RequestContext(url, documentHost, resourceType);
+        return context.hasHost() && isBlocked(context);
+    }
+
+    /**
+     * Same as {@link #isBlocked(String, String, int)} for a request that is
+     * already parsed, the party and the type are taken from {@code context}.
+     * */
+    boolean isBlocked(@NonNull RequestContext context) {
+        if (isDocumentAllowed(context.getDocumentHost())) {
+            return false;
+        }
+        if (blockRules.matches(context) && !exceptionRules.matches(context)) {
+            blockedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if an exception rule with the document option allows the page
+     * on {@code documentHost} and with it all of its requests.
+     * */
+    private boolean isDocumentAllowed(@Nullable String documentHost) {
+        if (documentHost == null || documentExceptionRules.isEmpty()) {
+            return false;
+        }
+        DocumentDecision decision = lastDocumentDecision;
+        if (decision == null || !decision.host.equals(documentHost)) {
+            RequestContext document = new RequestContext("https://" + documentHost + "/",
+                    null, ResourceType.DOCUMENT);
+            decision = new DocumentDecision(documentHost,
+                    document.hasHost() && documentExceptionRules.matches(document));
+            lastDocumentDecision = decision;
+        }
+        return decision.allowed;
+    }
+
+    private void addRule(String line, RuleIndex.Builder block, RuleIndex.Builder exception,
+                         RuleIndex.Builder documentException) {
+        if (line.isEmpty() || line.charAt(0) == '!' || line.charAt(0) == '[') {
+            return;
+        }
+        if (line.contains("##") || line.contains("#@#") || line.contains("#?#")
+                || line.contains("#$#")) {
+            // element hiding rules don't apply to requests
+            return;
+        }
+        boolean isException = line.startsWith("@@");
+        Rule rule = Rule.parse(isException ? line.substring(2) : line);
+        if (rule == null) {
+            skippedCount++;
+            return;
+        }
+        ruleCount++;
+        (isException ? exception : block).add(rule);
+        if (isException && (rule.resourceTypes & ResourceType.DOCUMENT) != 0) {
+            documentException.add(rule);
+        }
+    }
+
+    private static final class DocumentDecision {
+        final String host;
+        final boolean allowed;
+
+        DocumentDecision(String host, boolean allowed) {
+            this.host = host;
+            this.allowed = allowed;
+        }
+    }
+
+    /**
+     * Rules grouped by token in an open addressing table, plus the rules that
+     * have no usable token and are tested against every url.
+     * */
+    private static final class RuleIndex {
+
+        private final int[] tokens;
+        private final Rule[][] buckets;
+        private final Rule[] untokenized;
+
+        RuleIndex(int[] tokens, Rule[][] buckets, Rule[] untokenized) {
+            this.tokens = tokens;
+            this.buckets = buckets;
+            this.untokenized = untokenized;
+        }
+
+        boolean isEmpty() {
+            return buckets.length == 0 && untokenized.length == 0;
+        }
+
+        boolean matches(RequestContext context) {
+            for (Rule rule : untokenized) {
+                if (rule.matches(context)) {
+                    return true;
+                }
+            }
+            if (buckets.length == 0) {
+                return false;
+            }
+            String url = context.getUrl();
+            int length = url.length();
+            int i = 0;
+            while (i < length) {
+                if (!isTokenChar(url.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                int hash = 0;
+                while (i < length && isTokenChar(url.charAt(i))) {
+                    hash = 31 * hash + HostTrie.lower(url.charAt(i));
+                    i++;
+                }
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    for (Rule rule : bucket(hash)) {
+                        if (rule.matches(context)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private Rule[] bucket(int token) {
+            int mask = tokens.length - 1;
+            int slot = spread(token) & mask;
+            Rule[] bucket;
+            while ((bucket = buckets[slot]) != null) {
+                if (tokens[slot] == token) {
+                    return bucket;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_RULES;
+        }
+
+        static final class Builder {
+            private final Map<Integer, List<Rule>> rules = new HashMap<>();
+            private final List<Rule> untokenized = new ArrayList<>();
+
+            void add(Rule rule) {
+                // pick the token shared by the fewest rules so far
+                int best = 0;
+                int bestCount = Integer.MAX_VALUE;
+                for (int token : rule.tokens) {
+                    List<Rule> bucket = rules.get(token);
+                    int count = bucket != null ? bucket.size() : 0;
+                    if (count < bestCount) {
+                        best = token;
+                        bestCount = count;
+                    }
+                }
+                if (bestCount == Integer.MAX_VALUE) {
+                    untokenized.add(rule);
+                    return;
+                }
+                List<Rule> bucket = rules.get(best);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(1);
+                    rules.put(best, bucket);
+                }
+                bucket.add(rule);
+            }
+
+            RuleIndex build() {
+                int size = rules.isEmpty() ? 0
+                        : Integer.highestOneBit(Math.max(1, rules.size() * 2 - 1)) << 1;
+                int[] tokens = new int[size];
+                Rule[][] buckets = new Rule[size][];
+                for (Map.Entry<Integer, List<Rule>> entry : rules.entrySet()) {
+                    int token = entry.getKey();
+                    int slot = spread(token) & (size - 1);
+                    while (buckets[slot] != null) {
+                        slot = (slot + 1) & (size - 1);
+                    }
+                    tokens[slot] = token;
+                    buckets[slot] = entry.getValue().toArray(NO_RULES);
+                }
+                return new RuleIndex(tokens, buckets, untokenized.toArray(NO_RULES));
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Single rule with its pattern lower-cased and stripped of anchors and options.
+     * */
+    private static final class Rule {
+
+        private static final int ANY_PARTY = 0;
+        private static final int THIRD_PARTY = 1;
+        private static final int FIRST_PARTY = 2;
+
+        final String pattern;
+        final boolean hostAnchor;
+        final boolean startAnchor;
+        final boolean endAnchor;
+        final int resourceTypes;
+        final int party;
+        @Nullable
+        final String[] domains;
+        @Nullable
+        final String[] excludedDomains;
+        final int[] tokens;
+
+        private Rule(String pattern, boolean hostAnchor, boolean startAnchor, boolean endAnchor,
+                     int resourceTypes, int party, @Nullable String[] domains,
+                     @Nullable String[] excludedDomains) {
+            this.pattern = pattern;
+            this.hostAnchor = hostAnchor;
+            this.startAnchor = startAnchor;
+            this.endAnchor = endAnchor;
+            this.resourceTypes = resourceTypes;
+            this.party = party;
+            this.domains = domains;
+            this.excludedDomains = excludedDomains;
+            this.tokens = tokensOf(pattern, hostAnchor || startAnchor, endAnchor);
+        }
+
+        /**
+         * @return parsed rule, or null if the rule is not supported.
+         * */
+        @Nullable
+        static Rule parse(@NonNull String text) {
+            String pattern = text;
+            int resourceTypes = 0;
+            int excludedTypes = 0;
+            int party = ANY_PARTY;
+            List<String> domains = null;
+            List<String> excludedDomains = null;
+
+            int dollar = text.lastIndexOf('$');
+            if (dollar >= 0) {
+                pattern = text.substring(0, dollar);
+                for (String option : text.substring(dollar + 1).split(",")) {
+                    option = option.trim().toLowerCase(Locale.ROOT);
+                    boolean negated = option.startsWith("~");
+                    String name = negated ? option.substring(1) : option;
+                    if (name.equals("third-party") || name.equals("3p")) {
+                        party = negated ? FIRST_PARTY : THIRD_PARTY;
+                    } else if (name.equals("first-party") || name.equals("1p")) {
+                        party = negated ? THIRD_PARTY : FIRST_PARTY;
+                    } else if (name.equals("match-case")) {
+                        // urls are always matched ignoring case
+                    } else if (!negated && name.startsWith("domain=")) {
+                        for (String domain : name.substring(7).split("\\|")) {
+                            if (domain.startsWith("~")) {
+                                if (excludedDomains == null) {
+                                    excludedDomains = new ArrayList<>();
+                                }
+                                excludedDomains.add(domain.substring(1));
+                            } else if (!domain.isEmpty()) {
+                                if (domains == null) {
+                                    domains = new ArrayList<>();
+                                }
+                                domains.add(domain);
+                            }
+                        }
+                    } else {
+                        int type = typeOf(name);
+                        if (type == 0) {
+                            return null;
+                        }
+                        if (negated) {
+                            excludedTypes |= type;
+                        } else {
+                            resourceTypes |= type;
+                        }
+                    }
+                }
+            }
+            if (resourceTypes == 0) {
+                // like in Adblock Plus, rules without a type don't block pages themselves
+                resourceTypes = ResourceType.ALL & ~ResourceType.DOCUMENT;
+            }
+            resourceTypes &= ~excludedTypes;
+
+            if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+                // regular expressions are not supported
+                return null;
+            }
+            boolean hostAnchor = pattern.startsWith("||");
+            boolean startAnchor = !hostAnchor && pattern.startsWith("|");
+            if (hostAnchor) {
+                pattern = pattern.substring(2);
+            } else if (startAnchor) {
+                pattern = pattern.substring(1);
+            }
+            boolean endAnchor = pattern.endsWith("|");
+            if (endAnchor) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            pattern = pattern.toLowerCase(Locale.ROOT).replaceAll("\\*+", "*");
+            if (!hostAnchor && !startAnchor && pattern.startsWith("*")) {
+                pattern = pattern.substring(1);
+            }
+            if (!endAnchor && pattern.endsWith("*")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            return new Rule(pattern, hostAnchor, startAnchor, endAnchor, resourceTypes, party,
+                    domains != null ? domains.toArray(new String[0]) : null,
+                    excludedDomains != null ? excludedDomains.toArray(new String[0]) : null);
+        }
+
+        boolean matches(RequestContext context) {
+            if ((resourceTypes & context.getResourceType()) == 0) {
+                return false;
+            }
+            if (party != ANY_PARTY && context.isThirdParty() != (party == THIRD_PARTY)) {
+                return false;
+            }
+            if (domains != null && (context.getDocumentHost() == null
+                    || !matchesAnyDomain(context.getDocumentHost(), domains))) {
+                return false;
+            }
+            if (excludedDomains != null && context.getDocumentHost() != null
+                    && matchesAnyDomain(context.getDocumentHost(), excludedDomains)) {
+                return false;
+            }
+            String url = context.getUrl();
+            if (hostAnchor) {
+                // the pattern starts at the host or at any of its labels
+                for (int i = context.hostStart(); i < context.hostEnd(); i++) {
+                    if ((i == context.hostStart() || url.charAt(i - 1) == '.')
+                            && matchesAt(url, i, false)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return matchesAt(url, 0, !startAnchor);
+        }
+
+        /**
+         * Glob match of the pattern against {@code url} starting at {@code position}.
+         * If {@code floating} is true the match may start anywhere after it.
+         * */
+        private boolean matchesAt(CharSequence url, int position, boolean floating) {
+            int length = url.length();
+            int p = 0;
+            int t = position;
+            int star = floating ? 0 : -1;
+            int mark = position;
+            while (true) {
+                if (p == pattern.length()) {
+                    if (!endAnchor || t == length) {
+                        return true;
+                    }
+                } else if (t < length) {
+                    char pc = pattern.charAt(p);
+                    if (pc == '*') {
+                        star = ++p;
+                        mark = t;
+                        continue;
+                    }
+                    char tc = HostTrie.lower(url.charAt(t));
+                    if (pc == tc || (pc == '^' && isSeparator(tc))) {
+                        p++;
+                        t++;
+                        continue;
+                    }
+                } else if (onlyWildcardsFrom(p)) {
+                    // '^' also matches the end of the url
+                    return true;
+                }
+                if (star < 0 || mark >= length) {
+                    return false;
+                }
+                p = star;
+                t = ++mark;
+            }
+        }
+
+        private boolean onlyWildcardsFrom(int p) {
+            for (int i = p; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c != '*' && c != '^') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean matchesAnyDomain(String host, String[] domains) {
+            int end = HostTrie.trimEnd(host, 0, host.length());
+            for (String domain : domains) {
+                int start = end - domain.length();
+                if (start >= 0 && host.regionMatches(true, start, domain, 0, domain.length())
+                        && (start == 0 || host.charAt(start - 1) == '.')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return hashes of the tokens of {@code pattern} that are guaranteed
+         * to appear as whole tokens in any url the pattern matches.
+         * */
+        private static int[] tokensOf(String pattern, boolean anchoredStart, boolean anchoredEnd) {
+            int[] tokens = new int[4];
+            int count = 0;
+            int i = 0;
+            int length = pattern.length();
+            while (i < length) {
+                if (!isTokenChar(pattern.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                int hash = 0;
+                while (i < length && isTokenChar(pattern.charAt(i))) {
+                    hash = 31 * hash + pattern.charAt(i);
+                    i++;
+                }
+                // a token next to a wildcard or a loose end may be part of a longer one
+                boolean boundedBefore = start > 0 ? pattern.charAt(start - 1) != '*' : anchoredStart;
+                boolean boundedAfter = i < length ? pattern.charAt(i) != '*' : anchoredEnd;
+                if (boundedBefore && boundedAfter && i - start >= MIN_TOKEN_LENGTH) {
+                    if (count == tokens.length) {
+                        tokens = Arrays.copyOf(tokens, count * 2);
+                    }
+                    tokens[count++] = hash;
+                }
+            }
+            return Arrays.copyOf(tokens, count);
+        }
+
+        private static int typeOf(String option) {
+            switch (option) {
+                case "document":
+                case "doc":
+                    return ResourceType.DOCUMENT;
+                case "subdocument":
+                case "frame":
+                    return ResourceType.SUBDOCUMENT;
+                case "script":
+                    return ResourceType.SCRIPT;
+                case "stylesheet":
+                case "css":
+                    return ResourceType.STYLESHEET;
+                case "image":
+                    return ResourceType.IMAGE;
+                case "font":
+                    return ResourceType.FONT;
+                case "media":
+                    return ResourceType.MEDIA;
+                case "xmlhttprequest":
+                case "xhr":
+                    // xhr can't be told apart from other requests, see ResourceType.guess
+                    return ResourceType.XMLHTTPREQUEST | ResourceType.OTHER;
+                case "object":
+                case "other":
+                case "ping":
+                case "websocket":
+                    return ResourceType.OTHER;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '%';
+    }
+
+    private static boolean isSeparator(char c) {
+        return !isTokenChar(c) && c != '_' && c != '-' && c != '.';
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Local database of harmful urls, so they are recognized without network
+ * access. Like the Safe Browsing local database it holds the first 4 bytes
+ * of the SHA-256 hash of every listed url expression, such as
+ * {@code evil.example.com/login/} or {@code example.org/}, and a url is
+ * listed when the prefix of any of its expressions is. A million prefixes
+ * take about 2 MB. Prefixes are not confirmed with full hashes, so a url
+ * can be reported falsely with a probability of about {@code 30 * count / 2^32}.
+ * <p>
+ * Update file layout, all integers are big-endian:
+ * <pre>
+ * int magic        'WVUR'
+ * int version
+ * byte type        0 is a diff against the current prefixes, 1 replaces them
+ * prefix set       indices of removed prefixes in the current sorted order
+ * prefix set       added prefixes
+ * byte[32]         SHA-256 of all resulting prefixes as big-endian ints
+ *                  in unsigned ascending order
+ * </pre>
+ * where a prefix set is its int size, byte Rice parameter k, int word count
+ * and the longs holding the first value in 32 bits followed by every
+ * difference to the previous value as a unary quotient and a k bit remainder,
+ * least significant bit first. Files written by {@link #save(File)} have
+ * the magic 'WVRD' followed by the version, one prefix set and the checksum.
+ * */
+public final class UrlReputation {
+
+    private static final int UPDATE_MAGIC = 0x57565552;
+    private static final int DATABASE_MAGIC = 0x57565244;
+    private static final int VERSION = 1;
+    private static final int TYPE_DIFF = 0;
+    private static final int TYPE_FULL = 1;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    @NonNull
+    private volatile RicePrefixSet prefixes = RicePrefixSet.EMPTY;
+
+    /**
+     * Creates an empty database, fill it with {@link #applyUpdate(File)}.
+     * */
+    public UrlReputation() {
+    }
+
+    /**
+     * Opens a database written by {@link #save(File)}.
+     *
+     * @throws IOException if the file is missing, damaged or of another version.
+     * */
+    @NonNull
+    @WorkerThread
+    public static UrlReputation open(@NonNull File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != DATABASE_MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a url reputation database: " + file);
+            }
+            RicePrefixSet set = RicePrefixSet.readFrom(in);
+            byte[] checksum = new byte[32];
+            in.readFully(checksum);
+            if (!Arrays.equals(checksum, checksumOf(set.toArray()))) {
+                throw new IOException("Checksum mismatch: " + file);
+            }
+            UrlReputation reputation = new UrlReputation();
+            reputation.prefixes = set;
+            return reputation;
+        }
+    }
+
+    /**
+     * Writes the current prefixes, replacing {@code file} atomically.
+     * */
+    @WorkerThread
+    public synchronized void save(@NonNull File file) throws IOException {
+        RicePrefixSet set = prefixes;
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(DATABASE_MAGIC);
+            out.writeInt(VERSION);
+            set.writeTo(out);
+            out.write(checksumOf(set.toArray()));
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Applies a diff or full update. Lookups keep using the previous
+     * prefixes until the update is verified and swapped in, and they stay
+     * in use if it fails.
+     *
+     * @throws IOException if the update is damaged or doesn't apply to the
+     *                     current prefixes, in which case a full update is needed.
+     * */
+    @WorkerThread
+    public synchronized void applyUpdate(@NonNull File update) throws IOException {
+        int[] current;
+        RicePrefixSet removals;
+        RicePrefixSet additions;
+        byte[] checksum = new byte[32];
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(update)))) {
+            if (in.readInt() != UPDATE_MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a url reputation update: " + update);
+            }
+            int type = in.readUnsignedByte();
+            if (type != TYPE_DIFF && type != TYPE_FULL) {
+                throw new IOException("Unknown update type " + type);
+            }
+            current = type == TYPE_FULL ? new int[0] : prefixes.toArray();
+            removals = RicePrefixSet.readFrom(in);
+            additions = RicePrefixSet.readFrom(in);
+            in.readFully(checksum);
+        }
+
+        boolean[] removed = new boolean[current.length];
+        for (int index : removals.toArray()) {
+            if (index < 0 || index >= current.length) {
+                throw new IOException("Removal index out of range: " + index);
+            }
+            removed[index] = true;
+        }
+        int[] added = additions.toArray();
+        int[] merged = new int[current.length - removals.size() + added.length];
+        int size = 0;
+        int a = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            // flipping the sign bit makes signed order equal unsigned order
+            while (a < added.length
+                    && (added[a] ^ Integer.MIN_VALUE) < (current[i] ^ Integer.MIN_VALUE)) {
+                merged[size++] = added[a++];
+            }
+            if (a < added.length && added[a] == current[i]) {
+                throw new IOException("Update adds a prefix that is already listed");
+            }
+            merged[size++] = current[i];
+        }
+        while (a < added.length) {
+            merged[size++] = added[a++];
+        }
+        if (!Arrays.equals(checksum, checksumOf(merged))) {
+            throw new IOException("Checksum mismatch, a full update is needed");
+        }
+        prefixes = RicePrefixSet.of(merged);
+    }
+
+    /**
+     * @return true if {@code url} or any of its host suffix / path prefix
+     * expressions is listed. Costs a SHA-256 hash and a lookup per
+     * expression, at most 30 of them.
+     * */
+    @AnyThread
+    public boolean isListed(@NonNull String url) {
+        RicePrefixSet set = prefixes;
+        if (set.size() == 0) {
+            return false;
+        }
+        MessageDigest digest = SHA_256.get();
+        for (String expression : UrlExpressions.of(url)) {
+            if (set.contains(prefixOf(digest, expression))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of listed hash prefixes.
+     * */
+    public int getPrefixCount() {
+        return prefixes.size();
+    }
+
+    /**
+     * @return approximate heap memory taken by the prefixes.
+     * */
+    public long getSizeInBytes() {
+        return prefixes.sizeInBytes();
+    }
+
+    /**
+     * @return the hash prefix of a canonical url expression, as it appears in updates.
+     * */
+    static int prefixOf(@NonNull MessageDigest digest, @NonNull String expression) {
+        byte[] hash = digest.digest(expression.getBytes(StandardCharsets.ISO_8859_1));
+        return (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8
+                | (hash[3] & 0xFF);
+    }
+
+    @NonNull
+    private static byte[] checksumOf(@NonNull int[] sortedPrefixes) {
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        byte[] buffer = new byte[4096];
+        int position = 0;
+        for (int prefix : sortedPrefixes) {
+            buffer[position++] = (byte) (prefix >>> 24);
+            buffer[position++] = (byte) (prefix >>> 16);
+            buffer[position++] = (byte) (prefix >>> 8);
+            buffer[position++] = (byte) prefix;
+            if (position == buffer.length) {
+                digest.update(buffer, 0, position);
+                position = 0;
+            }
+        }
+        digest.update(buffer, 0, position);
+        return digest.digest();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.elmurzaev.webview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Scans urls in place. Used on request interception paths where parsing
+ * every url into {@link android.net.Uri} would allocate for each request.
+ * */
+final class Urls {
+
+    static final long NO_HOST = -1;
+
+    private Urls() {
+    }
+
+    /**
+     * Finds the host of a hierarchical url such as {@code https://user@host:8080/path}
+     * without allocating. IPv6 literals are returned with their brackets.
+     *
+     * @return bounds of the host packed into a long, use {@link #hostStart(long)} and
+     * {@link #hostEnd(long)} to read them, or {@link #NO_HOST} if the url has no host.
+     * */
+    static long findHost(@NonNull CharSequence url) {
+        int length = url.length();
+        int colon = -1;
+        for (int i = 0; i < length; i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                colon = i;
+                break;
+            }
+            if (!isSchemeChar(c, i == 0)) {
+                return NO_HOST;
+            }
+        }
+        if (colon <= 0 || colon + 2 >= length
+                || url.charAt(colon + 1) != '/' || url.charAt(colon + 2) != '/') {
+            return NO_HOST;
+        }
+        int start = colon + 3;
+        int authorityEnd = start;
+        while (authorityEnd < length) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#' || c == '\\') {
+                break;
+            }
+            if (c == '@') {
+                // everything before the last '@' is user info
+                start = authorityEnd + 1;
+            }
+            authorityEnd++;
+        }
+        int end = start;
+        if (end < authorityEnd && url.charAt(end) == '[') {
+            while (end < authorityEnd && url.charAt(end) != ']') {
+                end++;
+            }
+            if (end < authorityEnd) {
+                end++;
+            }
+        } else {
+            while (end < authorityEnd && url.charAt(end) != ':') {
+                end++;
+            }
+        }
+        if (end == start) {
+            return NO_HOST;
+        }
+        return ((long) start << 32) | end;
+    }
+
+    static int hostStart(long host) {
+        return (int) (host >>> 32);
+    }
+
+    static int hostEnd(long host) {
+        return (int) host;
+    }
+
+    /**
+     * @return true if the host located between {@code start} and {@code end} of
+     * {@code url} belongs to a different site than {@code documentHost}, or
+     * false if {@code documentHost} is unknown.
+     * */
+    static boolean isThirdParty(@NonNull CharSequence url, int start, int end,
+                                @Nullable String documentHost) {
+        if (documentHost == null) {
+            return false;
+        }
+        end = HostTrie.trimEnd(url, start, end);
+        int documentEnd = HostTrie.trimEnd(documentHost, 0, documentHost.length());
+        int site = siteStart(url, start, end);
+        int documentSite = siteStart(documentHost, 0, documentEnd);
+        if (end - site != documentEnd - documentSite) {
+            return true;
+        }
+        for (int i = 0; i < end - site; i++) {
+            if (HostTrie.lower(url.charAt(site + i))
+                    != HostTrie.lower(documentHost.charAt(documentSite + i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return start of the registrable part of the host located between {@code start}
+     * and {@code end}, such as {@code example.com} of {@code www.example.com} or
+     * {@code example.co.uk} of {@code www.example.co.uk}.
+     * */
+    static int siteStart(@NonNull CharSequence host, int start, int end) {
+        if (start >= end) {
+            return start;
+        }
+        int last = lastDot(host, start, end);
+        if (last < 0 || isIpLiteral(host, start, end)) {
+            return start;
+        }
+        // the longest listed suffix decides, so it's searched from the left
+        int label = start;
+        for (int dot = indexOfDot(host, label, last); dot >= 0;
+             dot = indexOfDot(host, label, last)) {
+            if (PublicSuffixes.contains(host, dot + 1, end)) {
+                return label;
+            }
+            label = dot + 1;
+        }
+        // otherwise the top-level domain is the public suffix
+        int second = lastDot(host, start, last);
+        return second < 0 ? start : second + 1;
+    }
+
+    private static int indexOfDot(CharSequence host, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (host.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastDot(CharSequence host, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (host.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIpLiteral(CharSequence host, int start, int end) {
+        if (host.charAt(start) == '[') {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            char c = host.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSchemeChar(char c, boolean first) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return true;
+        }
+        return !first && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.');
+    }
+
+}
\ No newline at end of file
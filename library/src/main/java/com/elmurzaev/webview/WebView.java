@@ -29,24 +29,30 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.DownloadManager;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.graphics.Bitmap;
+import android.net.http.SslError;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
-import android.util.Patterns;
-import android.view.ContextThemeWrapper;
 import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.CookieManager;
 import android.webkit.DownloadListener;
 import android.webkit.GeolocationPermissions;
 import android.webkit.PermissionRequest;
+import android.webkit.SslErrorHandler;
 import android.webkit.URLUtil;
 import android.webkit.ValueCallback;
+import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
@@ -57,18 +63,24 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.collection.ArraySet;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.DefaultLifecycleObserver;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
+import androidx.webkit.ScriptHandler;
 import androidx.webkit.WebSettingsCompat;
+import androidx.webkit.WebViewCompat;
 import androidx.webkit.WebViewFeature;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 public class WebView extends NestedWebView implements DefaultLifecycleObserver, DownloadListener {
 
@@ -77,6 +89,28 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
     public static final int RC_FILE_CHOOSER = 12;
     public static final int RC_WEB_PERMISSIONS = 13;
 
+    /**
+     * Requests made while {@link ContentBlockerLoader} is loading are allowed.
+     */
+    public static final int LOADING_POLICY_ALLOW = 0;
+    /**
+     * Requests made while {@link ContentBlockerLoader} is loading are blocked.
+     */
+    public static final int LOADING_POLICY_BLOCK = 1;
+    /**
+     * Requests made while {@link ContentBlockerLoader} is loading wait until
+     * it finishes, but not longer than {@link #setContentBlockerWaitTimeout(long)}.
+     * They are allowed if it's still loading after that.
+     */
+    public static final int LOADING_POLICY_WAIT = 2;
+
+    // has no state and is never modified, so a single instance serves every blocked request
+    static final WebResourceResponse BLOCKED_RESPONSE =
+            new WebResourceResponse("text/html", null, null);
+    private static final int MAX_COSMETIC_SITE_SCRIPTS = 32;
+    private static final String DEFAULT_DESKTOP_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; " +
+            "Win64; x64; rv:107.0) Gecko/20100101 Firefox/107.0";
+
     @Nullable
     private DownloadManager.Request mPendingDownloadRequest;
     @Nullable
@@ -88,13 +122,69 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
     @Nullable
     private PermissionRequest mPermissionRequest;
     @Nullable
-    private ContentBlocker mContentBlocker;
+    private volatile ContentBlocker mContentBlocker;
+    @Nullable
+    private volatile ContentBlockerLoader mContentBlockerLoader;
+    private int mContentBlockerLoadingPolicy = LOADING_POLICY_ALLOW;
+    private long mContentBlockerWaitTimeout = 300;
+    @Nullable
+    private volatile UrlFilter mUrlFilter;
+    @Nullable
+    private volatile String mDocumentHost;
+    @NonNull
+    private final InterceptorChain mInterceptors = new InterceptorChain();
+    @NonNull
+    private final RequestInterceptor mContentBlocking =
+            context -> isBlocked(context) ? BLOCKED_RESPONSE : null;
+    @Nullable
+    private DataSaver mDataSaver;
+    @Nullable
+    private volatile RequestLog mRequestLog;
+    @Nullable
+    private OfflineArchive mOfflineArchive;
+    @Nullable
+    private HistoryStore mHistoryStore;
+    @Nullable
+    private Speculator mSpeculator;
+    private boolean mSpeculateOnLinks;
+    private boolean mPreferOfflineArchive;
+    private boolean mFileAccessBeforeArchive;
+    @Nullable
+    private String mFailedUrl;
+    private boolean mHttpsFirst;
+    @Nullable
+    private HstsPreloadList mHstsPreloadList;
+    @Nullable
+    private String mHttpsFallbackUrl;
+    @Nullable
+    private UrlReputation mUrlReputation;
+    @NonNull
+    private final Set<String> mUnsafeUrlsAllowed = new ArraySet<>();
+    @Nullable
+    private CosmeticFilter mCosmeticFilter;
+    @Nullable
+    private ScriptHandler mCosmeticScript;
+    @NonNull
+    private final Map<String, ScriptHandler> mCosmeticSiteScripts =
+            new LinkedHashMap<String, ScriptHandler>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ScriptHandler> eldest) {
+                    if (size() <= MAX_COSMETIC_SITE_SCRIPTS) {
+                        return false;
+                    }
+                    if (eldest.getValue() != null) {
+                        eldest.getValue().remove();
+                    }
+                    return true;
+                }
+            };
     @NonNull
     private String mSearchEngine = "Google";
     @NonNull
-    private String mUserAgentDesktop = "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:107.0) " +
-            "Gecko/20100101 Firefox/107.0";
+    private String mUserAgentDesktop = DEFAULT_DESKTOP_USER_AGENT;
     private boolean mDesignMode;
+    private boolean mClearHistoryOnLoad;
+    private boolean mDestroyed;
 
     public WebView(@NonNull Context context) {
         this(context, null);
@@ -109,20 +199,32 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         if (isInEditMode()) {
             return;
         }
+        mInterceptors.add(mContentBlocking, RequestInterceptor.PRIORITY_CONTENT_BLOCKER);
         setWebViewClient(new WebViewClient());
         setWebChromeClient(new WebChromeClient());
         setDownloadListener(this);
 
+        applyDefaultSettings();
+
+        setScrollBarStyle(SCROLLBARS_OUTSIDE_OVERLAY);
+
+        ServiceWorkerBlocker.install();
+
+        CookieManager.getInstance().setAcceptThirdPartyCookies(this, true);
+
+        if (context instanceof LifecycleOwner) {
+            Lifecycle lifecycle = ((LifecycleOwner) context).getLifecycle();
+            lifecycle.addObserver(this);
+        }
+    }
+
+    private void applyDefaultSettings() {
         getSettings().setJavaScriptEnabled(true);
         getSettings().setDomStorageEnabled(true);
         getSettings().setBuiltInZoomControls(true);
         getSettings().setDisplayZoomControls(false);
         getSettings().setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
 
-        setScrollBarStyle(SCROLLBARS_OUTSIDE_OVERLAY);
-
-        CookieManager.getInstance().setAcceptThirdPartyCookies(this, true);
-
         if (isDarkMode()) {
             if (WebViewFeature.isFeatureSupported(WebViewFeature.FORCE_DARK)) {
                 WebSettingsCompat.setForceDark(getSettings(), WebSettingsCompat.FORCE_DARK_ON);
@@ -132,28 +234,370 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
                         WebSettingsCompat.DARK_STRATEGY_PREFER_WEB_THEME_OVER_USER_AGENT_DARKENING);
             }
         }
+    }
 
-        if (context instanceof LifecycleOwner) {
-            Lifecycle lifecycle = ((LifecycleOwner) context).getLifecycle();
-            lifecycle.addObserver(this);
+    /**
+     * Restores the state of a new view, for {@link WebViewPool}: the options of
+     * this class, the clients and the {@link WebSettings} listed in
+     * {@link #resetSettings()}. The page is replaced with a blank one and the
+     * history is cleared once it loads.
+     */
+    void reset() {
+        stopLoading();
+        mHttpsFallbackUrl = null;
+        mPendingDownloadRequest = null;
+        mGeoPermissionCallback = null;
+        mFileChooserCallback = null;
+        mPermissionRequest = null;
+        mProgressBar = null;
+
+        mInterceptors.clear();
+        mInterceptors.add(mContentBlocking, RequestInterceptor.PRIORITY_CONTENT_BLOCKER);
+        mContentBlocker = null;
+        mContentBlockerLoader = null;
+        mContentBlockerLoadingPolicy = LOADING_POLICY_ALLOW;
+        mContentBlockerWaitTimeout = 300;
+        mUrlFilter = null;
+        mDocumentHost = null;
+        mDataSaver = null;
+        mRequestLog = null;
+        mOfflineArchive = null;
+        mPreferOfflineArchive = false;
+        mHistoryStore = null;
+        mSpeculator = null;
+        mSpeculateOnLinks = false;
+        mFailedUrl = null;
+        mHttpsFirst = false;
+        mHstsPreloadList = null;
+        mUrlReputation = null;
+        mUnsafeUrlsAllowed.clear();
+        setCosmeticFilter(null);
+        mSearchEngine = "Google";
+        mUserAgentDesktop = DEFAULT_DESKTOP_USER_AGENT;
+        mDesignMode = false;
+
+        setWebViewClient(new WebViewClient());
+        setWebChromeClient(new WebChromeClient());
+        setDownloadListener(this);
+        resetSettings();
+        setInitialScale(0);
+        applyDefaultSettings();
+        CookieManager.getInstance().setAcceptThirdPartyCookies(this, true);
+
+        // history is only cleared up to the current page, so the blank one has to load first
+        mClearHistoryOnLoad = true;
+        super.loadUrl("about:blank");
+    }
+
+    /**
+     * Restores the settings an app may have changed to the defaults of WebView,
+     * before the ones of this library are applied again.
+     */
+    @SuppressWarnings("deprecation")
+    private void resetSettings() {
+        WebSettings settings = getSettings();
+        settings.setUserAgentString(null);
+        settings.setLoadWithOverviewMode(false);
+        settings.setUseWideViewPort(false);
+        settings.setAllowFileAccess(Build.VERSION.SDK_INT < Build.VERSION_CODES.R);
+        settings.setAllowContentAccess(true);
+        settings.setAllowFileAccessFromFileURLs(false);
+        settings.setAllowUniversalAccessFromFileURLs(false);
+        settings.setTextZoom(100);
+        settings.setSupportZoom(true);
+        settings.setLayoutAlgorithm(WebSettings.LayoutAlgorithm.NARROW_COLUMNS);
+        settings.setMinimumFontSize(8);
+        settings.setMinimumLogicalFontSize(8);
+        settings.setDefaultFontSize(16);
+        settings.setDefaultFixedFontSize(13);
+        settings.setSupportMultipleWindows(false);
+        settings.setJavaScriptCanOpenWindowsAutomatically(false);
+        settings.setGeolocationEnabled(true);
+        settings.setMediaPlaybackRequiresUserGesture(true);
+        settings.setLoadsImagesAutomatically(true);
+        settings.setBlockNetworkImage(false);
+        if (hasPermission(Manifest.permission.INTERNET)) {
+            settings.setBlockNetworkLoads(false);
+        }
+        settings.setCacheMode(WebSettings.LOAD_DEFAULT);
+        settings.setDatabaseEnabled(false);
+        settings.setNeedInitialFocus(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            settings.setOffscreenPreRaster(false);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            settings.setSafeBrowsingEnabled(true);
+        }
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.FORCE_DARK)) {
+            WebSettingsCompat.setForceDark(settings, WebSettingsCompat.FORCE_DARK_AUTO);
         }
     }
 
+    /**
+     * @return true if {@link #destroy()} was called, after which the view can't be used.
+     */
+    boolean isDestroyed() {
+        return mDestroyed;
+    }
+
+    @Override
+    public void destroy() {
+        mDestroyed = true;
+        super.destroy();
+    }
+
     /**
      * @return true if {@code host} is localhost.
      */
     public static boolean isLocalHost(@NonNull String host) {
-        return Pattern.matches("(?:https?://)?localhost(?::\\d+)?(?![^/])", host);
+        return Omnibox.isLocalHost(host);
     }
 
     /**
      * Set {@link ContentBlocker} if you want to block certain hosts or pass null
-     * to remove one.
+     * to remove one. Without a blocker of its own, this view uses the one set by
+     * {@link ContentBlocker#setDefault(ContentBlocker)}, if any. Requests made by
+     * service workers are not tied to a view and are checked against that default
+     * blocker and the default {@link UrlFilter} only.
      */
     public void setContentBlocker(@Nullable ContentBlocker blocker) {
+        mContentBlockerLoader = null;
         mContentBlocker = blocker;
     }
 
+    /**
+     * Set {@link ContentBlocker} that is still being loaded, so loading the
+     * list doesn't delay the first page. Until it's loaded requests are handled
+     * according to {@link #setContentBlockerLoadingPolicy(int)}.
+     */
+    public void setContentBlockerLoader(@Nullable ContentBlockerLoader loader) {
+        mContentBlocker = null;
+        mContentBlockerLoader = loader;
+        if (loader != null) {
+            loader.addCallback(blocker -> {
+                if (mContentBlockerLoader == loader) {
+                    mContentBlockerLoader = null;
+                    mContentBlocker = blocker;
+                }
+            });
+        }
+    }
+
+    /**
+     * Set {@link UrlFilter} if you want to block urls using Adblock Plus filter
+     * lists or pass null to remove one. It's used alongside {@link ContentBlocker}.
+     * Without a filter of its own, this view uses the one set by
+     * {@link UrlFilter#setDefault(UrlFilter)}, if any.
+     */
+    public void setUrlFilter(@Nullable UrlFilter filter) {
+        mUrlFilter = filter;
+    }
+
+    /**
+     * In HTTPS-first mode urls typed without a protocol are loaded over HTTPS,
+     * saving the redirect most sites answer HTTP with. If HTTPS fails for a host
+     * that is not known to support it, the user is asked whether to continue
+     * over HTTP. Hosts that fail with an HTTPS-specific error are then loaded
+     * over HTTP for a while. Disabled by default.
+     */
+    public void setHttpsFirst(boolean httpsFirst) {
+        mHttpsFirst = httpsFirst;
+    }
+
+    public boolean isHttpsFirst() {
+        return mHttpsFirst;
+    }
+
+    /**
+     * Set {@link HstsPreloadList} of hosts known to support HTTPS, which are
+     * loaded over HTTPS without falling back to HTTP, or pass null to remove one.
+     * Used in HTTPS-first mode only.
+     */
+    public void setHstsPreloadList(@Nullable HstsPreloadList list) {
+        mHstsPreloadList = list;
+    }
+
+    /**
+     * Set {@link UrlReputation} to warn before opening pages it lists or pass
+     * null to remove one. Only pages are checked, not the resources they load.
+     */
+    public void setUrlReputation(@Nullable UrlReputation reputation) {
+        mUrlReputation = reputation;
+    }
+
+    /**
+     * Set {@link CosmeticFilter} to hide page elements or pass null to remove one.
+     * Its style sheets are injected at document start, which needs
+     * {@link WebViewFeature#DOCUMENT_START_SCRIPT}; without it this does nothing.
+     */
+    public void setCosmeticFilter(@Nullable CosmeticFilter filter) {
+        if (mCosmeticScript != null) {
+            mCosmeticScript.remove();
+            mCosmeticScript = null;
+        }
+        for (ScriptHandler handler : mCosmeticSiteScripts.values()) {
+            if (handler != null) {
+                handler.remove();
+            }
+        }
+        mCosmeticSiteScripts.clear();
+        mCosmeticFilter = filter;
+        if (filter == null ||
+                !WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            return;
+        }
+        mCosmeticScript = WebViewCompat.addDocumentStartJavaScript(
+                this, filter.getGenericScript(), Collections.singleton("*"));
+        prepareCosmeticFilter(getUrl());
+    }
+
+    /**
+     * Adds {@code interceptor} with {@link RequestInterceptor#PRIORITY_DEFAULT}.
+     */
+    public void addRequestInterceptor(@NonNull RequestInterceptor interceptor) {
+        addRequestInterceptor(interceptor, RequestInterceptor.PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Adds {@code interceptor} to the requests of this view. Interceptors with
+     * higher {@code priority} run first, those with equal priority run in the
+     * order they were added. Content blocking runs at
+     * {@link RequestInterceptor#PRIORITY_CONTENT_BLOCKER}.
+     */
+    public void addRequestInterceptor(@NonNull RequestInterceptor interceptor, int priority) {
+        mInterceptors.add(interceptor, priority);
+    }
+
+    public void removeRequestInterceptor(@NonNull RequestInterceptor interceptor) {
+        mInterceptors.remove(interceptor);
+    }
+
+    /**
+     * Set {@link DataSaver} to reduce data used by pages or pass null to remove one.
+     */
+    public void setDataSaver(@Nullable DataSaver dataSaver) {
+        if (mDataSaver != null) {
+            mInterceptors.remove(mDataSaver);
+        }
+        mDataSaver = dataSaver;
+        if (dataSaver != null) {
+            mInterceptors.add(dataSaver, RequestInterceptor.PRIORITY_DATA_SAVER);
+        }
+    }
+
+    @Nullable
+    public DataSaver getDataSaver() {
+        return mDataSaver;
+    }
+
+    /**
+     * Set {@link RequestLog} to record requests and page loads of this view
+     * or pass null to stop recording.
+     */
+    public void setRequestLog(@Nullable RequestLog log) {
+        mRequestLog = log;
+    }
+
+    @Nullable
+    public RequestLog getRequestLog() {
+        return mRequestLog;
+    }
+
+    /**
+     * Set {@link OfflineArchive} to archive every page that loads and to open the
+     * archived page instead when there is no network, or pass null to stop archiving.
+     * Archives are opened as files, so file access is enabled while one is set
+     * and restored once it's removed.
+     */
+    public void setOfflineArchive(@Nullable OfflineArchive archive) {
+        if (archive != null && mOfflineArchive == null) {
+            mFileAccessBeforeArchive = getSettings().getAllowFileAccess();
+            getSettings().setAllowFileAccess(true);
+        } else if (archive == null && mOfflineArchive != null) {
+            getSettings().setAllowFileAccess(mFileAccessBeforeArchive);
+        }
+        mOfflineArchive = archive;
+    }
+
+    @Nullable
+    public OfflineArchive getOfflineArchive() {
+        return mOfflineArchive;
+    }
+
+    /**
+     * @param prefer true to open archived pages even if there is network. Default is false.
+     */
+    public void setPreferOfflineArchive(boolean prefer) {
+        mPreferOfflineArchive = prefer;
+    }
+
+    public boolean isPreferOfflineArchive() {
+        return mPreferOfflineArchive;
+    }
+
+    /**
+     * Set {@link HistoryStore} to record every page that loads, or pass null to stop recording.
+     */
+    public void setHistoryStore(@Nullable HistoryStore history) {
+        mHistoryStore = history;
+    }
+
+    @Nullable
+    public HistoryStore getHistoryStore() {
+        return mHistoryStore;
+    }
+
+    /**
+     * Set {@link Speculator} to serve the pages it prefetched to this view,
+     * or pass null to remove one.
+     *
+     * @see #setSpeculateOnLinks(boolean)
+     */
+    public void setSpeculator(@Nullable Speculator speculator) {
+        if (mSpeculator != null) {
+            mInterceptors.remove(mSpeculator);
+        }
+        mSpeculator = speculator;
+        if (speculator != null) {
+            speculator.setUserAgent(getSettings().getUserAgentString());
+            mInterceptors.add(speculator, RequestInterceptor.PRIORITY_DEFAULT);
+        }
+    }
+
+    @Nullable
+    public Speculator getSpeculator() {
+        return mSpeculator;
+    }
+
+    /**
+     * @param speculate true to prefetch links that are long-pressed with
+     *                  {@link Speculator}. They are fetched without cookies, as
+     *                  the user hasn't chosen to open them. Default is false.
+     */
+    public void setSpeculateOnLinks(boolean speculate) {
+        mSpeculateOnLinks = speculate;
+    }
+
+    public boolean isSpeculateOnLinks() {
+        return mSpeculateOnLinks;
+    }
+
+    /**
+     * @param policy one of {@link #LOADING_POLICY_ALLOW}, {@link #LOADING_POLICY_BLOCK}
+     *               or {@link #LOADING_POLICY_WAIT}. Default is {@link #LOADING_POLICY_ALLOW}.
+     */
+    public void setContentBlockerLoadingPolicy(int policy) {
+        mContentBlockerLoadingPolicy = policy;
+    }
+
+    /**
+     * @param millis how long requests wait for {@link ContentBlockerLoader} when
+     *               {@link #LOADING_POLICY_WAIT} is used. Default is 300 ms.
+     */
+    public void setContentBlockerWaitTimeout(long millis) {
+        mContentBlockerWaitTimeout = millis;
+    }
+
     /**
      * You don't need to call this manually!
      */
@@ -197,11 +641,31 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
                     || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                 startDownload(request);
             } else {
-                mPendingDownloadRequest = request;
-                ActivityCompat.requestPermissions((Activity) getContext(),
-                        new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, RC_DOWNLOAD_FILE);
+                Activity activity = getActivity();
+                if (activity != null) {
+                    mPendingDownloadRequest = request;
+                    ActivityCompat.requestPermissions(activity,
+                            new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE},
+                            RC_DOWNLOAD_FILE);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return activity this view is used in, looked up on use as views created
+     * with a {@link android.content.MutableContextWrapper} get one later.
+     */
+    @Nullable
+    private Activity getActivity() {
+        Context context = getContext();
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
             }
+            context = ((ContextWrapper) context).getBaseContext();
         }
+        return null;
     }
 
     private void startDownload(@NonNull DownloadManager.Request request) {
@@ -247,7 +711,8 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
     }
 
     /**
-     * @param engine search engine name. For example: Google
+     * @param engine search engine name. For example: Google. Engines registered
+     *               with {@link SearchEngines#register(SearchEngine)} can be used too.
      */
     public void setSearchEngine(@NonNull String engine) {
         this.mSearchEngine = engine;
@@ -259,6 +724,9 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
 
     public void setUserAgent(@Nullable String userAgent) {
         getSettings().setUserAgentString(userAgent);
+        if (mSpeculator != null) {
+            mSpeculator.setUserAgent(getSettings().getUserAgentString());
+        }
     }
 
     public boolean isDesignMode() {
@@ -323,6 +791,9 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
      */
     public void setDesktopMode(boolean mode) {
         getSettings().setUserAgentString(mode ? mUserAgentDesktop : null);
+        if (mSpeculator != null) {
+            mSpeculator.setUserAgent(getSettings().getUserAgentString());
+        }
         getSettings().setLoadWithOverviewMode(mode);
         getSettings().setUseWideViewPort(!mode);
         setInitialScale(100);
@@ -335,13 +806,202 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
      */
     @Override
     public void loadUrl(@NonNull String url) {
-        if (URLUtil.isValidUrl(url)) {
-            super.loadUrl(url);
-        } else if (Patterns.WEB_URL.matcher(url).matches() || isLocalHost(url)) {
-            super.loadUrl("http://" + url);
+        String fallbackUrl = null;
+        byte[] postData = null;
+        switch (Omnibox.classify(url)) {
+            case Omnibox.INPUT_LOCALHOST:
+            case Omnibox.INPUT_IP:
+            case Omnibox.INPUT_INTRANET:
+                // local addresses rarely have certificates
+                url = "http://" + url;
+                break;
+            case Omnibox.INPUT_WEB_URL:
+                String host = Uri.parse("http://" + url).getHost();
+                if (!mHttpsFirst || host == null || HttpsFirstCache.isHttpOnly(host)) {
+                    url = "http://" + url;
+                } else {
+                    if (!HttpsFirstCache.isHttps(host) &&
+                            (mHstsPreloadList == null || !mHstsPreloadList.contains(host))) {
+                        fallbackUrl = "http://" + url;
+                    }
+                    url = "https://" + url;
+                }
+                break;
+            case Omnibox.INPUT_SEARCH:
+                SearchEngine engine = SearchEngines.get(getContext(), mSearchEngine);
+                postData = engine.getPostData(url);
+                url = engine.getSearchUrl(url);
+                break;
+        }
+        if (isUnsafe(url)) {
+            return;
+        }
+        mFailedUrl = null;
+        OfflineArchive.Entry archived = postData == null ? getArchived(url) : null;
+        if (archived != null) {
+            mHttpsFallbackUrl = null;
+            super.loadUrl(Uri.fromFile(archived.getFile()).toString());
+            return;
+        }
+        mHttpsFallbackUrl = fallbackUrl;
+        prepareCosmeticFilter(url);
+        if (postData != null) {
+            postUrl(url, postData);
         } else {
-            super.loadUrl(SearchEngines.getSearchUrlFor(getContext(), mSearchEngine, url));
+            super.loadUrl(url);
+        }
+    }
+
+    @Override
+    public void reload() {
+        mFailedUrl = null;
+        super.reload();
+    }
+
+    @Override
+    public boolean performLongClick() {
+        speculateOnHitLink();
+        return super.performLongClick();
+    }
+
+    /**
+     * Speculates on the link WebView last reported under the finger.
+     */
+    private void speculateOnHitLink() {
+        if (mSpeculator == null || !mSpeculateOnLinks) {
+            return;
+        }
+        HitTestResult result = getHitTestResult();
+        if (result.getType() == HitTestResult.SRC_ANCHOR_TYPE) {
+            speculateOnLink(result.getExtra());
+        } else if (result.getType() == HitTestResult.SRC_IMAGE_ANCHOR_TYPE) {
+            // the extra is the image, the link is only sent in a message
+            Handler handler = new Handler(Looper.getMainLooper(), message -> {
+                speculateOnLink(message.getData().getString("url"));
+                return true;
+            });
+            requestFocusNodeHref(handler.obtainMessage());
+        }
+    }
+
+    private void speculateOnLink(@Nullable String url) {
+        Speculator speculator = mSpeculator;
+        UrlReputation reputation = mUrlReputation;
+        if (speculator == null || url == null || !isHttpUrl(url) || url.equals(getUrl())) {
+            return;
+        }
+        // unsafe pages are only loaded once the user insists
+        if (reputation == null || !reputation.isListed(url)) {
+            speculator.speculateOnLink(url);
+        }
+    }
+
+    /**
+     * Asks the user whether to load the page that failed over HTTPS over HTTP.
+     *
+     * @param isHttpsFailure true if the failure was HTTPS-specific, such as a
+     *                       certificate error, in which case the host is loaded
+     *                       over HTTP for a while if the user continues. Other
+     *                       failures may be caused by the network and say
+     *                       nothing about the host.
+     */
+    private void offerHttp(boolean isHttpsFailure) {
+        String url = mHttpsFallbackUrl;
+        mHttpsFallbackUrl = null;
+        if (url == null) {
+            return;
+        }
+        String host = Uri.parse(url).getHost();
+        new AlertDialog.Builder(getContext())
+                .setMessage(getContext().getString(R.string.https_unavailable, host))
+                .setPositiveButton(R.string.go_back, null)
+                .setNegativeButton(R.string.continue_over_http, (dialog, which) -> {
+                    if (isHttpsFailure && host != null) {
+                        HttpsFirstCache.putHttpOnly(host);
+                    }
+                    loadUrl(url);
+                })
+                .show();
+    }
+
+    /**
+     * @return archive of {@code url} if it should be opened instead of the page.
+     */
+    @Nullable
+    private OfflineArchive.Entry getArchived(@NonNull String url) {
+        OfflineArchive archive = mOfflineArchive;
+        if (archive == null || !isHttpUrl(url) || (!mPreferOfflineArchive && isOnline())) {
+            return null;
+        }
+        return archive.get(url);
+    }
+
+    private boolean isOnline() {
+        ConnectivityManager manager = (ConnectivityManager)
+                getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (manager == null) {
+            return true;
         }
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    private static boolean isHttpUrl(@Nullable String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+
+    /**
+     * @return true if {@code url} is the page upgraded to HTTPS that may still fall back to HTTP.
+     */
+    private boolean isUpgradedPage(@Nullable String url) {
+        String fallbackUrl = mHttpsFallbackUrl;
+        return fallbackUrl != null && url != null && url.startsWith("https://") &&
+                Objects.equals(Uri.parse(url).getHost(), Uri.parse(fallbackUrl).getHost());
+    }
+
+    /**
+     * @return true if {@code url} is listed by {@link UrlReputation}, in which
+     * case the user is asked whether to open it anyway.
+     */
+    private boolean isUnsafe(@NonNull String url) {
+        UrlReputation reputation = mUrlReputation;
+        if (reputation == null || mUnsafeUrlsAllowed.contains(url) || !reputation.isListed(url)) {
+            return false;
+        }
+        new AlertDialog.Builder(getContext())
+                .setMessage(getContext().getString(R.string.unsafe_url, Uri.parse(url).getHost()))
+                .setPositiveButton(R.string.go_back, null)
+                .setNegativeButton(R.string.proceed, (dialog, which) -> {
+                    mUnsafeUrlsAllowed.add(url);
+                    loadUrl(url);
+                })
+                .show();
+        return true;
+    }
+
+    /**
+     * Registers the style sheet of the site {@code url} belongs to before the
+     * page starts loading. Scripts of recently visited sites are kept
+     * registered, so going back and forth between sites injects nothing new.
+     */
+    private void prepareCosmeticFilter(@Nullable String url) {
+        CosmeticFilter filter = mCosmeticFilter;
+        if (filter == null || mCosmeticScript == null || url == null) {
+            return;
+        }
+        String host = Uri.parse(url).getHost();
+        if (host == null || host.isEmpty() || mCosmeticSiteScripts.containsKey(host)) {
+            return;
+        }
+        String script = filter.getSiteScript(host);
+        ScriptHandler handler = null;
+        if (script != null) {
+            Set<String> origins = new ArraySet<>(2);
+            origins.add("https://" + host);
+            origins.add("http://" + host);
+            handler = WebViewCompat.addDocumentStartJavaScript(this, script, origins);
+        }
+        mCosmeticSiteScripts.put(host, handler);
     }
 
     public void onRequestPermissionsResult(
@@ -383,17 +1043,6 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
 
     public class WebChromeClient extends android.webkit.WebChromeClient {
 
-        private final Activity mActivity;
-
-        public WebChromeClient() {
-            if (getContext() instanceof Activity) {
-                mActivity = (Activity) getContext();
-            } else {
-                Context context = ((ContextThemeWrapper) getContext()).getBaseContext();
-                mActivity = (Activity) context;
-            }
-        }
-
         @Override
         public void onProgressChanged(android.webkit.WebView view, int newProgress) {
             super.onProgressChanged(view, newProgress);
@@ -405,7 +1054,12 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         @Override
         public void onShowCustomView(View view, CustomViewCallback callback) {
             super.onShowCustomView(view, callback);
-            ViewGroup decorView = (ViewGroup) mActivity.getWindow().getDecorView();
+            Activity activity = getActivity();
+            if (activity == null) {
+                callback.onCustomViewHidden();
+                return;
+            }
+            ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
             decorView.setSystemUiVisibility(View.SYSTEM_UI_FLAG_FULLSCREEN
                     | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
                     | View.SYSTEM_UI_FLAG_LAYOUT_STABLE
@@ -419,7 +1073,11 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         @Override
         public void onHideCustomView() {
             super.onHideCustomView();
-            ViewGroup decorView = (ViewGroup) mActivity.getWindow().getDecorView();
+            Activity activity = getActivity();
+            if (activity == null) {
+                return;
+            }
+            ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
             decorView.setSystemUiVisibility(View.SYSTEM_UI_FLAG_VISIBLE);
             decorView.removeViewAt(decorView.getChildCount() - 1);
         }
@@ -428,14 +1086,19 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         public void onGeolocationPermissionsShowPrompt(String origin,
                                                        GeolocationPermissions.Callback callback) {
             super.onGeolocationPermissionsShowPrompt(origin, callback);
-            new AlertDialog.Builder(getContext())
+            Activity activity = getActivity();
+            if (activity == null) {
+                callback.invoke(origin, false, false);
+                return;
+            }
+            new AlertDialog.Builder(activity)
                     .setMessage(getContext().getString(R.string.request_for_location, origin))
                     .setPositiveButton(R.string.grant, (dialog, which) ->
                     {
                         if (hasPermission(Manifest.permission.ACCESS_FINE_LOCATION)) {
                             callback.invoke(origin, true, true);
                         } else {
-                            ActivityCompat.requestPermissions(mActivity,
+                            ActivityCompat.requestPermissions(activity,
                                     new String[]{
                                             Manifest.permission.ACCESS_FINE_LOCATION,
                                             Manifest.permission.ACCESS_COARSE_LOCATION},
@@ -453,23 +1116,32 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         public void onGeolocationPermissionsHidePrompt() {
             super.onGeolocationPermissionsHidePrompt();
             mGeoPermissionCallback = null;
-            Toast.makeText(mActivity, R.string.permission_denied, Toast.LENGTH_SHORT).show();
+            Toast.makeText(getContext(), R.string.permission_denied, Toast.LENGTH_SHORT).show();
         }
 
         @Override
         public boolean onShowFileChooser(android.webkit.WebView webView,
                                          ValueCallback<Uri[]> filePathCallback,
                                          @NonNull FileChooserParams fileChooserParams) {
+            Activity activity = getActivity();
+            if (activity == null) {
+                return false;
+            }
             mFileChooserCallback = filePathCallback;
 
             Intent intent = fileChooserParams.createIntent();
-            mActivity.startActivityForResult(intent, RC_FILE_CHOOSER);
+            activity.startActivityForResult(intent, RC_FILE_CHOOSER);
 
             return true;
         }
 
         @Override
         public void onPermissionRequest(@NonNull PermissionRequest request) {
+            Activity activity = getActivity();
+            if (activity == null) {
+                request.deny();
+                return;
+            }
             Set<String> permissions = new ArraySet<>();
             for (String resource : request.getResources()) {
                 switch (resource) {
@@ -486,7 +1158,7 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
             }
             if (!permissions.isEmpty()) {
                 mPermissionRequest = request;
-                ActivityCompat.requestPermissions(mActivity,
+                ActivityCompat.requestPermissions(activity,
                         permissions.toArray(new String[]{}), RC_WEB_PERMISSIONS);
             } else {
                 request.grant(request.getResources());
@@ -499,6 +1171,22 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         @Override
         public void onPageStarted(android.webkit.WebView view, String url, Bitmap favicon) {
             super.onPageStarted(view, url, favicon);
+            mDocumentHost = url != null ? Uri.parse(url).getHost() : null;
+            // the page has responded, so HTTPS works for its host
+            mHttpsFallbackUrl = null;
+            // the error may be reported before the page starts, keep it for the failed url
+            if (url == null || !url.equals(mFailedUrl)) {
+                mFailedUrl = null;
+            }
+            if (mDocumentHost != null && url.startsWith("https://") && mFailedUrl == null) {
+                HttpsFirstCache.putHttps(mDocumentHost);
+            }
+            RequestLog log = mRequestLog;
+            if (log != null && url != null) {
+                log.onPageStarted(url);
+            }
+            // too late for this page if it was redirected, but in time for the next one
+            prepareCosmeticFilter(url);
             if (mProgressBar != null) {
                 mProgressBar.setVisibility(View.VISIBLE);
             }
@@ -508,11 +1196,98 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         @Override
         public void onPageFinished(android.webkit.WebView view, String url) {
             super.onPageFinished(view, url);
+            if (mClearHistoryOnLoad) {
+                mClearHistoryOnLoad = false;
+                clearHistory();
+            }
+            RequestLog log = mRequestLog;
+            if (log != null && url != null) {
+                log.onPageFinished(url);
+            }
+            // error pages are not archived or recorded, nor are pages that failed to load
+            boolean failed = url != null && url.equals(mFailedUrl);
+            OfflineArchive archive = mOfflineArchive;
+            if (archive != null && !failed && isHttpUrl(url)) {
+                archive.save(view, url);
+            }
+            HistoryStore history = mHistoryStore;
+            if (history != null && !failed && isHttpUrl(url)) {
+                history.addVisit(url, view.getTitle());
+            }
             if (mProgressBar != null) {
                 mProgressBar.setVisibility(View.GONE);
             }
         }
 
+        @Override
+        @SuppressWarnings("deprecation")
+        public void onReceivedError(android.webkit.WebView view, int errorCode,
+                                    String description, String failingUrl) {
+            // called for the main frame only
+            RequestLog log = mRequestLog;
+            // newer versions report errors of all requests to the other overload
+            if (log != null && failingUrl != null &&
+                    Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                log.onError(failingUrl, errorCode, description);
+            }
+            mFailedUrl = failingUrl;
+            if (isUpgradedPage(failingUrl)) {
+                switch (errorCode) {
+                    case ERROR_FAILED_SSL_HANDSHAKE:
+                    case ERROR_CONNECT:
+                        // refused connections only tell about the host while online
+                        offerHttp(errorCode == ERROR_FAILED_SSL_HANDSHAKE || isOnline());
+                        break;
+                    case ERROR_TIMEOUT:
+                        // may be a slow network or one blocking HTTPS
+                        offerHttp(false);
+                        break;
+                    default:
+                        // fails over HTTP just the same
+                        mHttpsFallbackUrl = null;
+                }
+            }
+            super.onReceivedError(view, errorCode, description, failingUrl);
+        }
+
+        @Override
+        @RequiresApi(Build.VERSION_CODES.M)
+        public void onReceivedError(android.webkit.WebView view, WebResourceRequest request,
+                                    WebResourceError error) {
+            RequestLog log = mRequestLog;
+            if (log != null) {
+                log.onError(request.getUrl().toString(), error.getErrorCode(),
+                        error.getDescription());
+            }
+            super.onReceivedError(view, request, error);
+        }
+
+        @Override
+        @RequiresApi(Build.VERSION_CODES.M)
+        public void onReceivedHttpError(android.webkit.WebView view, WebResourceRequest request,
+                                        WebResourceResponse errorResponse) {
+            RequestLog log = mRequestLog;
+            if (log != null) {
+                log.onHttpError(request.getUrl().toString(), errorResponse.getStatusCode(),
+                        errorResponse.getReasonPhrase());
+            }
+            if (request.isForMainFrame()) {
+                mFailedUrl = request.getUrl().toString();
+            }
+            super.onReceivedHttpError(view, request, errorResponse);
+        }
+
+        @Override
+        public void onReceivedSslError(android.webkit.WebView view, SslErrorHandler handler,
+                                       SslError error) {
+            if (isUpgradedPage(error.getUrl())) {
+                handler.cancel();
+                offerHttp(true);
+                return;
+            }
+            super.onReceivedSslError(view, handler, error);
+        }
+
         @Override
         public boolean shouldOverrideUrlLoading(
                 @NonNull android.webkit.WebView view,
@@ -527,6 +1302,14 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
                     e.printStackTrace();
                 }
             }
+            if (request.isForMainFrame()) {
+                String url = request.getUrl().toString();
+                if (isUnsafe(url)) {
+                    return true;
+                }
+                mFailedUrl = null;
+                prepareCosmeticFilter(url);
+            }
             return super.shouldOverrideUrlLoading(view, request);
         }
 
@@ -534,14 +1317,66 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
         @Override
         public WebResourceResponse shouldInterceptRequest(
                 android.webkit.WebView view,
-                String url
+                WebResourceRequest request
         ) {
-            if (url != null && mContentBlocker != null
-                    && mContentBlocker.isBlocked(Uri.parse(url).getHost())) {
-                return new WebResourceResponse("text/html", null, null);
+            boolean isForMainFrame = request.isForMainFrame();
+            RequestContext context = new RequestContext(request, request.getUrl().toString(),
+                    isForMainFrame ? null : mDocumentHost);
+            if (isForMainFrame && context.hasHost()) {
+                mDocumentHost = context.getHost();
+            }
+            RequestLog log = mRequestLog;
+            RequestLog.Record record = log != null ? log.begin(context) : null;
+            WebResourceResponse response = mInterceptors.intercept(context);
+            if (record != null) {
+                log.end(record, response);
+            }
+            if (response != null) {
+                return response;
             }
-            return super.shouldInterceptRequest(view, url);
+            return super.shouldInterceptRequest(view, request);
+        }
+    }
+
+    private boolean isBlocked(@NonNull RequestContext context) {
+        if (!context.hasHost()) {
+            return false;
+        }
+        boolean isForMainFrame = context.isForMainFrame();
+        ContentBlocker blocker = mContentBlocker;
+        ContentBlockerLoader loader = mContentBlockerLoader;
+        if (blocker == null && loader == null) {
+            blocker = ContentBlocker.getDefault();
+        } else if (blocker == null) {
+            blocker = loader.getNow();
+            // the loading policy applies to subresources only, pages the user opens are never held
+            if (blocker == null && !loader.isDone() && !isForMainFrame) {
+                switch (mContentBlockerLoadingPolicy) {
+                    case LOADING_POLICY_BLOCK:
+                        return true;
+                    case LOADING_POLICY_WAIT:
+                        blocker = loader.await(mContentBlockerWaitTimeout, TimeUnit.MILLISECONDS);
+                        break;
+                }
+            }
+        }
+        UrlFilter filter = mUrlFilter;
+        if (filter == null) {
+            filter = UrlFilter.getDefault();
+        }
+        return isBlocked(blocker, filter, context);
+    }
+
+    /**
+     * Decision shared by page requests and service worker requests.
+     */
+    static boolean isBlocked(@Nullable ContentBlocker blocker, @Nullable UrlFilter filter,
+                             @NonNull RequestContext context) {
+        String url = context.getUrl();
+        if (blocker != null && blocker.isBlocked(url, context.hostStart(), context.hostEnd())) {
+            return true;
         }
+        return filter != null && filter.isBlocked(context);
     }
 
     private boolean hasPermission(@NonNull String permission) {
@@ -549,4 +1384,4 @@ public class WebView extends NestedWebView implements DefaultLifecycleObserver,
                 == PackageManager.PERMISSION_GRANTED;
     }
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Ramzan Elmurzaev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.elmurzaev.webview;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps {@link WebView}s created ahead of time, so opening a tab doesn't wait
+ * for Chromium to load and the view to be set up. Views are created while the
+ * main thread is idle, with a {@link MutableContextWrapper} of the application
+ * context that is switched to the activity they are acquired for. Released
+ * views have their options, clients and common {@link android.webkit.WebSettings}
+ * reset and are reused, and the pool is emptied when the system runs low on memory.
+ * <pre>
+ * WebViewPool pool = new WebViewPool(context, 2);
+ * pool.prewarm();
+ * // when a tab is opened
+ * WebView webView = pool.acquire(activity);
+ * // when it's closed
+ * pool.release(webView);
+ * </pre>
+ * Other state, such as JavaScript interfaces, listeners set on it as a
+ * {@link android.view.View} and less common settings like font families or the
+ * text encoding, must be restored before it's released.
+ * */
+public final class WebViewPool implements ComponentCallbacks2 {
+
+    private final Context context;
+    private final int maxSize;
+    // most recently released first
+    private final ArrayDeque<WebView> views = new ArrayDeque<>();
+    private final MessageQueue.IdleHandler prewarmer = this::prewarmOne;
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong acquireTime = new AtomicLong();
+    private final AtomicLong maxAcquireTime = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+    private final AtomicLong createTime = new AtomicLong();
+    private boolean prewarming;
+    private int nightMode;
+
+    /**
+     * @param maxSize views kept ready to be acquired.
+     * */
+    public WebViewPool(@NonNull Context context, int maxSize) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+        this.nightMode = nightModeOf(this.context.getResources().getConfiguration());
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Fills the pool one view at a time whenever the main thread is idle.
+     * Called by {@link #acquire(Context)} to replace the view it takes.
+     * */
+    @MainThread
+    public void prewarm() {
+        if (!prewarming && views.size() < maxSize) {
+            prewarming = true;
+            Looper.myQueue().addIdleHandler(prewarmer);
+        }
+    }
+
+    /**
+     * @param context context the view is used with, usually an activity. The
+     *                view observes its lifecycle if it has one.
+     * @return a view from the pool, or a new one if the pool is empty.
+     * */
+    @MainThread
+    @NonNull
+    public WebView acquire(@NonNull Context context) {
+        long start = System.nanoTime();
+        WebView view = views.pollFirst();
+        if (view != null) {
+            hitCount.incrementAndGet();
+        } else {
+            view = create();
+        }
+        ((MutableContextWrapper) view.getContext()).setBaseContext(context);
+        if (context instanceof LifecycleOwner) {
+            ((LifecycleOwner) context).getLifecycle().addObserver(view);
+        }
+        long time = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        acquireCount.incrementAndGet();
+        acquireTime.addAndGet(time);
+        if (time > maxAcquireTime.get()) {
+            maxAcquireTime.set(time);
+        }
+        prewarm();
+        return view;
+    }
+
+    /**
+     * Returns {@code view} to the pool, or destroys it if the pool is full.
+     * It's removed from its parent and must not be used afterwards.
+     * */
+    @MainThread
+    public void release(@NonNull WebView view) {
+        ViewParent parent = view.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(view);
+        }
+        if (!(view.getContext() instanceof MutableContextWrapper)) {
+            // not from a pool, its context can't be replaced
+            view.destroy();
+            return;
+        }
+        MutableContextWrapper wrapper = (MutableContextWrapper) view.getContext();
+        if (wrapper.getBaseContext() instanceof LifecycleOwner) {
+            ((LifecycleOwner) wrapper.getBaseContext()).getLifecycle().removeObserver(view);
+        }
+        // the activity must not be kept alive by the pool
+        wrapper.setBaseContext(context);
+        if (view.isDestroyed()) {
+            return;
+        }
+        if (views.size() >= maxSize) {
+            view.destroy();
+            return;
+        }
+        view.onResume();
+        view.reset();
+        views.addFirst(view);
+    }
+
+    /**
+     * Destroys the views in the pool.
+     * */
+    @MainThread
+    public void clear() {
+        trimTo(0);
+    }
+
+    /**
+     * @return number of views ready to be acquired.
+     * */
+    @MainThread
+    public int size() {
+        return views.size();
+    }
+
+    /**
+     * @return number of views acquired.
+     * */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return number of views acquired from the pool rather than created.
+     * */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return {@link #getHitCount()} divided by {@link #getAcquireCount()}.
+     * */
+    public double getHitRatio() {
+        long acquires = acquireCount.get();
+        return acquires == 0 ? 0 : (double) hitCount.get() / acquires;
+    }
+
+    /**
+     * @return average time {@link #acquire(Context)} took, in microseconds.
+     * */
+    public long getAverageAcquireTime() {
+        long acquires = acquireCount.get();
+        return acquires == 0 ? 0 : acquireTime.get() / acquires;
+    }
+
+    /**
+     * @return longest time {@link #acquire(Context)} took, in microseconds.
+     * */
+    public long getMaxAcquireTime() {
+        return maxAcquireTime.get();
+    }
+
+    /**
+     * @return average time creating a view took, in microseconds, which is
+     * what each hit saves.
+     * */
+    public long getAverageCreateTime() {
+        long creates = createCount.get();
+        return creates == 0 ? 0 : createTime.get() / creates;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL && level != TRIM_MEMORY_UI_HIDDEN) {
+            clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // one view still spares the next tab most of the wait
+            trimTo(1);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        int nightMode = nightModeOf(newConfig);
+        if (nightMode != this.nightMode) {
+            this.nightMode = nightMode;
+            // dark mode is applied to views when they are set up
+            clear();
+            prewarm();
+        }
+    }
+
+    /**
+     * Creates a view while the main thread is idle.
+     *
+     * @return true to be called again when the thread is idle next.
+     * */
+    private boolean prewarmOne() {
+        if (views.size() >= maxSize || isLowOnMemory()) {
+            prewarming = false;
+            return false;
+        }
+        views.addLast(create());
+        if (views.size() >= maxSize) {
+            prewarming = false;
+            return false;
+        }
+        return true;
+    }
+
+    @NonNull
+    private WebView create() {
+        long start = System.nanoTime();
+        WebView view = new WebView(new MutableContextWrapper(context));
+        createCount.incrementAndGet();
+        createTime.addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return view;
+    }
+
+    private void trimTo(int size) {
+        while (views.size() > size) {
+            views.pollLast().destroy();
+        }
+    }
+
+    private static int nightModeOf(@NonNull Configuration configuration) {
+        return configuration.uiMode & Configuration.UI_MODE_NIGHT_MASK;
+    }
+
+    private boolean isLowOnMemory() {
+        ActivityManager manager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (manager == null) {
+            return false;
+        }
+        ActivityManager.MemoryInfo memory = new ActivityManager.MemoryInfo();
+        manager.getMemoryInfo(memory);
+        return memory.lowMemory;
+    }
+
+}
\ No newline at end of file